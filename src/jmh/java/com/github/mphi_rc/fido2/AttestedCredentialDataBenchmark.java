@@ -0,0 +1,59 @@
+package com.github.mphi_rc.fido2;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.mphi_rc.fido2.authenticator.crypto.Algorithm;
+import com.github.mphi_rc.fido2.authenticator.crypto.AttestationKeyPair;
+import com.github.mphi_rc.fido2.authenticator.crypto.Ed25519AttestationKeyPair;
+import com.github.mphi_rc.fido2.authenticator.crypto.ImmutableEd25519AttestationKeyPair;
+import com.github.mphi_rc.fido2.authenticator.crypto.ImmutableP256AttestationKeyPair;
+import com.github.mphi_rc.fido2.authenticator.crypto.P256AttestationKeyPair;
+
+/**
+ * Attested credential data for a key pair as loaded from the configuration file. {@code decoded}
+ * is a key pair without its COSE key, which has to be derived from the X.509 public key, as
+ * every stored key pair did before the configuration recorded it on load; {@code stored} has the
+ * COSE key recorded.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class AttestedCredentialDataBenchmark {
+
+	@Param({"P256_ECDSA", "Ed25519"})
+	public Algorithm algorithm;
+
+	private AttestationKeyPair keyPair;
+	private byte[] aaguid;
+	private byte[] credentialId;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		keyPair = algorithm == Algorithm.Ed25519 ? Ed25519AttestationKeyPair.generate() : P256AttestationKeyPair.generate();
+		aaguid = new byte[16];
+		credentialId = new byte[16];
+	}
+
+	@Benchmark
+	public byte[] decoded() {
+		AttestationKeyPair loaded = algorithm == Algorithm.Ed25519
+				? ImmutableEd25519AttestationKeyPair.builder().privateKey(keyPair.privateKey()).publicKey(keyPair.publicKey()).build()
+				: ImmutableP256AttestationKeyPair.builder().privateKey(keyPair.privateKey()).publicKey(keyPair.publicKey()).build();
+		return loaded.encodeAttestedCredentialData(aaguid, credentialId);
+	}
+
+	@Benchmark
+	public byte[] stored() {
+		return keyPair.encodeAttestedCredentialData(aaguid, credentialId);
+	}
+}
@@ -0,0 +1,120 @@
+package com.github.mphi_rc.fido2;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.util.BigIntegers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.mphi_rc.fido2.authenticator.crypto.Algorithm;
+import com.github.mphi_rc.fido2.authenticator.crypto.CryptoBackend;
+import com.github.mphi_rc.fido2.authenticator.crypto.CryptoBackendType;
+import com.github.mphi_rc.fido2.authenticator.crypto.CryptoBackends;
+
+/**
+ * Each primitive the authenticator uses, per backend, so the fastest one on the device can be
+ * chosen in the configuration. Sizes match what the protocol handles: a 37 byte authenticator
+ * data plus client data hash for signatures, and a 64 byte PIN protocol payload. The JDK backend
+ * needs Java 15 or later for Ed25519.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class CryptoBackendBenchmark {
+
+	@Param({"I2P", "BOUNCY_CASTLE", "JDK"})
+	public CryptoBackendType backend;
+
+	private CryptoBackend crypto;
+	private PrivateKey p256PrivateKey;
+	private PrivateKey ed25519PrivateKey;
+	private KeyPair authenticatorKeyAgreementKey;
+	private byte[] hostX;
+	private byte[] hostY;
+	private SecretKeySpec hmacKey;
+	private SecretKeySpec aesKey;
+	private byte[] message;
+	private byte[] payload;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		crypto = CryptoBackends.create(backend);
+		p256PrivateKey = crypto.generateKeyPair(Algorithm.P256_ECDSA).getPrivate();
+		ed25519PrivateKey = crypto.generateKeyPair(Algorithm.Ed25519).getPrivate();
+		authenticatorKeyAgreementKey = crypto.generateKeyAgreementKeyPair();
+		ECPublicKey hostKey = (ECPublicKey) crypto.generateKeyAgreementKeyPair().getPublic();
+		hostX = BigIntegers.asUnsignedByteArray(32, hostKey.getW().getAffineX());
+		hostY = BigIntegers.asUnsignedByteArray(32, hostKey.getW().getAffineY());
+		hmacKey = new SecretKeySpec(new byte[32], "HmacSHA256");
+		aesKey = new SecretKeySpec(new byte[32], "AES");
+		message = new byte[37 + 32];
+		payload = new byte[64];
+	}
+
+	@Benchmark
+	public KeyPair generateP256() {
+		return crypto.generateKeyPair(Algorithm.P256_ECDSA);
+	}
+
+	@Benchmark
+	public KeyPair generateEd25519() {
+		return crypto.generateKeyPair(Algorithm.Ed25519);
+	}
+
+	@Benchmark
+	public byte[] signP256() throws GeneralSecurityException {
+		return sign(Algorithm.P256_ECDSA, p256PrivateKey);
+	}
+
+	@Benchmark
+	public byte[] signEd25519() throws GeneralSecurityException {
+		return sign(Algorithm.Ed25519, ed25519PrivateKey);
+	}
+
+	@Benchmark
+	public byte[] ecdh() throws GeneralSecurityException {
+		KeyAgreement ka = crypto.newKeyAgreement();
+		ka.init(authenticatorKeyAgreementKey.getPrivate());
+		ka.doPhase(crypto.decodeKeyAgreementKey(hostX, hostY), true);
+		return ka.generateSecret();
+	}
+
+	@Benchmark
+	public byte[] hmacSha256() throws GeneralSecurityException {
+		Mac hmac = crypto.newHmacSha256();
+		hmac.init(hmacKey);
+		return hmac.doFinal(payload);
+	}
+
+	@Benchmark
+	public byte[] aesCbc() throws GeneralSecurityException {
+		Cipher aes = crypto.newAesCbc();
+		aes.init(Cipher.DECRYPT_MODE, aesKey, new IvParameterSpec(new byte[16]));
+		return aes.doFinal(payload);
+	}
+
+	private byte[] sign(Algorithm algorithm, PrivateKey privateKey) throws GeneralSecurityException {
+		Signature signature = crypto.signature(algorithm);
+		signature.initSign(privateKey);
+		signature.update(message);
+		return signature.sign();
+	}
+}
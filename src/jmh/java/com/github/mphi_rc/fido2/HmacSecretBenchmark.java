@@ -0,0 +1,133 @@
+package com.github.mphi_rc.fido2;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.util.BigIntegers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.github.mphi_rc.fido2.authenticator.AssertionSession;
+import com.github.mphi_rc.fido2.authenticator.Authenticator;
+import com.github.mphi_rc.fido2.authenticator.Result;
+import com.github.mphi_rc.fido2.authenticator.Transaction;
+import com.github.mphi_rc.fido2.authenticator.crypto.Algorithm;
+import com.github.mphi_rc.fido2.protocol.ctap2.Ctap2ResponseCode;
+import com.github.mphi_rc.fido2.protocol.ctap2.GetAssertionRequest;
+import com.github.mphi_rc.fido2.protocol.ctap2.GetAssertionResponse;
+import com.github.mphi_rc.fido2.protocol.ctap2.ImmutableGetAssertionRequest;
+import com.github.mphi_rc.fido2.protocol.ctap2.ImmutableHmacSecretInput;
+import com.github.mphi_rc.fido2.protocol.ctap2.ImmutableMakeCredentialRequest;
+import com.google.common.hash.Hashing;
+
+/**
+ * getAssertion plus the first assertion's signature for a request carrying the hmac-secret
+ * extension, as disk unlock and SSH clients send in a loop. With one host key every request
+ * after the first reuses the cached shared secret; with more host keys than the cache holds
+ * every request repeats the ECDH.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class HmacSecretBenchmark {
+
+	private static final String RP_ID = "ssh:";
+	private static final BouncyCastleProvider PROVIDER = new BouncyCastleProvider();
+
+	@Param({"P256_ECDSA", "Ed25519"})
+	public Algorithm algorithm;
+
+	@Param({"1", "64"})
+	public int hostKeys;
+
+	private TestAuthenticator fixture;
+	private Authenticator authenticator;
+	private GetAssertionRequest[] requests;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, GeneralSecurityException {
+		fixture = new TestAuthenticator();
+		authenticator = fixture.authenticator();
+		authenticator.makeCredential(ImmutableMakeCredentialRequest.builder()
+				.clientDataHash(new byte[32])
+				.relayingPartyId(RP_ID)
+				.userId(new byte[] { 1 })
+				.addSupportedAlgorithmIds(algorithm.getCoseAlgorithmId())
+				.residentKey(true)
+				.hmacSecret(true)
+				.build(), new Transaction());
+
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("EC", PROVIDER);
+		generator.initialize(new ECGenParameterSpec("P-256"));
+		byte[] salt = new byte[32];
+		new Random(42).nextBytes(salt);
+		requests = new GetAssertionRequest[hostKeys];
+		for (int i = 0; i < hostKeys; i++) {
+			KeyPair hostKeyPair = generator.generateKeyPair();
+			KeyAgreement ka = KeyAgreement.getInstance("ECDH", PROVIDER);
+			ka.init(hostKeyPair.getPrivate());
+			ka.doPhase(fixture.pinState().getKeyAgreementKey(), true);
+			byte[] sharedSecret = Hashing.sha256().hashBytes(ka.generateSecret()).asBytes();
+
+			Cipher aes = Cipher.getInstance("AES/CBC/NoPadding");
+			aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(sharedSecret, "AES"), new IvParameterSpec(new byte[16]));
+			byte[] saltEnc = aes.doFinal(salt);
+			Mac hmac = Mac.getInstance("HmacSHA256");
+			hmac.init(new SecretKeySpec(sharedSecret, "HmacSHA256"));
+
+			ECPublicKey hostKey = (ECPublicKey) hostKeyPair.getPublic();
+			requests[i] = ImmutableGetAssertionRequest.builder()
+					.relayingPartyId(RP_ID)
+					.clientDataHash(new byte[32])
+					.hmacSecret(ImmutableHmacSecretInput.builder()
+							.keyAgreementX(BigIntegers.asUnsignedByteArray(32, hostKey.getW().getAffineX()))
+							.keyAgreementY(BigIntegers.asUnsignedByteArray(32, hostKey.getW().getAffineY()))
+							.saltEnc(saltEnc)
+							.saltAuth(Arrays.copyOf(hmac.doFinal(saltEnc), 16))
+							.build())
+					.build();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		fixture.close();
+	}
+
+	@Benchmark
+	public GetAssertionResponse getAssertion() {
+		GetAssertionRequest request = requests[next];
+		next = (next + 1) % requests.length;
+		AssertionSession session = orThrow(authenticator.getAssertion(request, new Transaction()));
+		return orThrow(authenticator.getNextAssertion(session));
+	}
+
+	private static <T> T orThrow(Result<T, Ctap2ResponseCode> result) {
+		return result.<T>handleError(error -> {
+			throw new IllegalStateException("getAssertion failed with " + error);
+		}).elseGet(value -> value);
+	}
+}
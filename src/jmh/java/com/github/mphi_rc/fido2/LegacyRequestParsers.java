@@ -0,0 +1,148 @@
+package com.github.mphi_rc.fido2;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.github.mphi_rc.fido2.protocol.ctap2.GetAssertionRequest;
+import com.github.mphi_rc.fido2.protocol.ctap2.ImmutableGetAssertionRequest;
+import com.github.mphi_rc.fido2.protocol.ctap2.ImmutableMakeCredentialRequest;
+import com.github.mphi_rc.fido2.protocol.ctap2.MakeCredentialRequest;
+import com.google.common.collect.Iterables;
+
+import co.nstant.in.cbor.CborDecoder;
+import co.nstant.in.cbor.CborException;
+import co.nstant.in.cbor.model.Array;
+import co.nstant.in.cbor.model.ByteString;
+import co.nstant.in.cbor.model.DataItem;
+import co.nstant.in.cbor.model.Map;
+import co.nstant.in.cbor.model.NegativeInteger;
+import co.nstant.in.cbor.model.UnicodeString;
+import co.nstant.in.cbor.model.UnsignedInteger;
+
+/**
+ * The DataItem tree parsers that CborReader replaced, kept as a baseline for RequestParseBenchmark.
+ */
+final class LegacyRequestParsers {
+
+	private static final byte MC_CLIENT_DATA_HASH_KEY = 0x01;
+	private static final byte MC_RELAYING_PARTY_ID_KEY = 0x02;
+	private static final byte MC_USER_ID_KEY = 0x03;
+	private static final byte MC_SUPPORTED_ALGORITHMS_KEY = 0x04;
+	private static final byte MC_PIN_AUTH_KEY = 0x08;
+	private static final byte MC_PIN_PROTOCOL_VERSION_KEY = 0x09;
+
+	private static final byte GA_RELAYING_PARTY_ID_KEY = 0x01;
+	private static final byte GA_CLIENT_DATA_HASH_KEY = 0x02;
+	private static final byte GA_ALLOW_LIST_KEY = 0x03;
+	private static final byte GA_PIN_AUTH_KEY = 0x06;
+	private static final byte GA_PIN_PROTOCOL_VERSION_KEY = 0x07;
+
+	private LegacyRequestParsers() {}
+
+	static MakeCredentialRequest makeCredential(byte[] bytes, int offset, int length) throws CborException {
+		List<DataItem> values = new CborDecoder(new ByteArrayInputStream(bytes, offset, length)).decode();
+
+		Map map = (Map) Iterables.getFirst(values, null);
+		if (Objects.isNull(map)) {
+			throw new CborException("Empty CBOR request");
+		}
+		ByteString clientDataHash = (ByteString) map.get(new UnsignedInteger(MC_CLIENT_DATA_HASH_KEY));
+		if (Objects.isNull(clientDataHash)) {
+			throw new CborException("The client data hash is missing");
+		}
+
+		Map relayingParty = (Map) map.get(new UnsignedInteger(MC_RELAYING_PARTY_ID_KEY));
+		if (Objects.isNull(relayingParty)) {
+			throw new CborException("The relaying party is missing");
+		}
+		UnicodeString relayingPartyId = (UnicodeString) relayingParty.get(new UnicodeString("id"));
+		if (Objects.isNull(relayingPartyId)) {
+			throw new CborException("The relaying party ID is missing");
+		}
+
+		Map user = (Map) map.get(new UnsignedInteger(MC_USER_ID_KEY));
+		if (Objects.isNull(user)) {
+			throw new CborException("The user data is missing");
+		}
+		ByteString userId = (ByteString) user.get(new UnicodeString("id"));
+		if (Objects.isNull(userId)) {
+			throw new CborException("The user ID is missing");
+		}
+
+		Array supportedAlgs = (Array) map.get(new UnsignedInteger(MC_SUPPORTED_ALGORITHMS_KEY));
+		if (Objects.isNull(supportedAlgs)) {
+			throw new CborException("The supported algorithms field is missing");
+		}
+		Set<Integer> supportedAlgIds = supportedAlgs.getDataItems().stream()
+				.map(item -> ((Map) item).get(new UnicodeString("alg")))
+				.map(item -> ((NegativeInteger) item).getValue())
+				.map(BigInteger::intValue)
+				.collect(Collectors.toSet());
+
+		ImmutableMakeCredentialRequest.Builder builder = ImmutableMakeCredentialRequest.builder()
+				.clientDataHash(clientDataHash.getBytes())
+				.relayingPartyId(relayingPartyId.getString())
+				.userId(userId.getBytes())
+				.addAllSupportedAlgorithmIds(supportedAlgIds);
+		
+		ByteString pinAuth = (ByteString) map.get(new UnsignedInteger(MC_PIN_AUTH_KEY));
+		if (!Objects.isNull(pinAuth)) {
+			builder.pinAuth(pinAuth.getBytes());
+		}
+
+		UnsignedInteger pinProtocolVersion = (UnsignedInteger) map.get(new UnsignedInteger(MC_PIN_PROTOCOL_VERSION_KEY));
+		if (!Objects.isNull(pinProtocolVersion)) {
+			builder.pinProtocolVersion(pinProtocolVersion.getValue().intValue());
+		}
+		return builder.build();
+	}
+
+	static GetAssertionRequest getAssertion(byte[] bytes, int offset, int length) throws CborException {
+		List<DataItem> values = new CborDecoder(new ByteArrayInputStream(bytes, offset, length)).decode();
+
+		Map map = (Map) Iterables.getFirst(values, null);
+		if (Objects.isNull(map)) {
+			throw new CborException("Empty CBOR request");
+		}
+		ByteString clientDataHash = (ByteString) map.get(new UnsignedInteger(GA_CLIENT_DATA_HASH_KEY));
+		if (Objects.isNull(clientDataHash)) {
+			throw new CborException("The client data hash is missing");
+		}
+
+		UnicodeString relayingPartyId = (UnicodeString) map.get(new UnsignedInteger(GA_RELAYING_PARTY_ID_KEY));
+		if (Objects.isNull(relayingPartyId)) {
+			throw new CborException("The relaying party ID is missing");
+		}
+		
+		Array allowList = (Array) map.get(new UnsignedInteger(GA_ALLOW_LIST_KEY));
+		ArrayList<byte[]> publicKeyIds = new ArrayList<>();
+		if (!Objects.isNull(relayingPartyId)) {
+			for (DataItem item : allowList.getDataItems()) {
+				ByteString id = ((ByteString) ((Map) item).get(new UnicodeString("id")));
+				publicKeyIds.add(id.getBytes());
+			}
+		}
+		
+		ImmutableGetAssertionRequest.Builder builder = ImmutableGetAssertionRequest.builder()
+				.clientDataHash(clientDataHash.getBytes())
+				.relayingPartyId(relayingPartyId.getString())
+				.publicKeyIds(publicKeyIds);
+		
+		ByteString pinAuth = (ByteString) map.get(new UnsignedInteger(GA_PIN_AUTH_KEY));
+		if (!Objects.isNull(pinAuth)) {
+			builder.pinAuth(pinAuth.getBytes());
+		}
+
+		UnsignedInteger pinProtocolVersion = (UnsignedInteger) map.get(new UnsignedInteger(GA_PIN_PROTOCOL_VERSION_KEY));
+		if (!Objects.isNull(pinProtocolVersion)) {
+			builder.pinProtocolVersion(pinProtocolVersion.getValue().intValue());
+		}
+		
+		return builder.build();
+	}
+}
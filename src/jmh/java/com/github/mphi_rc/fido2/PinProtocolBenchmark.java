@@ -0,0 +1,114 @@
+package com.github.mphi_rc.fido2;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.util.BigIntegers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.github.mphi_rc.fido2.authenticator.PinState;
+import com.github.mphi_rc.fido2.authenticator.crypto.CoseKeyConstants;
+import com.github.mphi_rc.fido2.protocol.ctap2.Ctap2ResponseCode;
+import com.github.mphi_rc.fido2.protocol.ctap2.pin.PinRequestHandler;
+import com.google.common.hash.Hashing;
+
+import co.nstant.in.cbor.model.ByteString;
+import co.nstant.in.cbor.model.DataItem;
+import co.nstant.in.cbor.model.Map;
+import co.nstant.in.cbor.model.NegativeInteger;
+import co.nstant.in.cbor.model.UnsignedInteger;
+
+/**
+ * The authenticator's side of unlocking with a PIN: getKeyAgreement, getPinToken and checking
+ * the pinAuth of the request that follows. The host's half of the protocol is done once in
+ * setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class PinProtocolBenchmark {
+
+	private static final BouncyCastleProvider PROVIDER = new BouncyCastleProvider();
+
+	private TestAuthenticator fixture;
+	private PinState pinState;
+	private PinRequestHandler handler;
+	private Map hostCoseKey;
+	private byte[] encryptedPinHash;
+	private byte[] clientDataHash;
+	private byte[] pinAuth;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, GeneralSecurityException {
+		fixture = TestAuthenticator.withPin("1234");
+		pinState = fixture.pinState();
+		handler = new PinRequestHandler(pinState);
+
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("EC", PROVIDER);
+		generator.initialize(new ECGenParameterSpec("P-256"));
+		KeyPair hostKeyPair = generator.generateKeyPair();
+		KeyAgreement ka = KeyAgreement.getInstance("ECDH", PROVIDER);
+		ka.init(hostKeyPair.getPrivate());
+		ka.doPhase(pinState.getKeyAgreementKey(), true);
+		SecretKeySpec aesKey = new SecretKeySpec(Hashing.sha256().hashBytes(ka.generateSecret()).asBytes(), "AES");
+
+		ECPublicKey hostKey = (ECPublicKey) hostKeyPair.getPublic();
+		hostCoseKey = new Map();
+		hostCoseKey.put(new NegativeInteger(CoseKeyConstants.X_COORDINATE), new ByteString(BigIntegers.asUnsignedByteArray(32, hostKey.getW().getAffineX())));
+		hostCoseKey.put(new NegativeInteger(CoseKeyConstants.Y_COORDINATE), new ByteString(BigIntegers.asUnsignedByteArray(32, hostKey.getW().getAffineY())));
+
+		Cipher aes = Cipher.getInstance("AES/CBC/NoPadding");
+		aes.init(Cipher.ENCRYPT_MODE, aesKey, new IvParameterSpec(new byte[16]));
+		encryptedPinHash = aes.doFinal(TestAuthenticator.pinHash("1234"));
+
+		aes.init(Cipher.DECRYPT_MODE, aesKey, new IvParameterSpec(new byte[16]));
+		byte[] pinToken = aes.doFinal(getPinToken());
+		clientDataHash = new byte[32];
+		Mac hmac = Mac.getInstance("HmacSHA256");
+		hmac.init(new SecretKeySpec(pinToken, "HmacSHA256"));
+		pinAuth = Arrays.copyOf(hmac.doFinal(clientDataHash), 16);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		fixture.close();
+	}
+
+	@Benchmark
+	public Optional<Ctap2ResponseCode> unlock() {
+		handler.getKeyAgreementKey();
+		getPinToken();
+		return pinState.isPinAuthValid(clientDataHash, pinAuth);
+	}
+
+	private byte[] getPinToken() {
+		return handler.getPinToken(hostCoseKey, encryptedPinHash).<byte[]>handleError(error -> {
+			throw new IllegalStateException("getPinToken failed with " + error);
+		}).elseGet(response -> {
+			DataItem token = ((Map) response.get(0)).get(new UnsignedInteger(0x02));
+			return ((ByteString) token).getBytes();
+		});
+	}
+}
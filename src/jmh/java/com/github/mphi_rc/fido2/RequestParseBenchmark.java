@@ -0,0 +1,78 @@
+package com.github.mphi_rc.fido2;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.mphi_rc.fido2.protocol.PacketInputStream;
+import com.github.mphi_rc.fido2.protocol.RequestStream;
+import com.github.mphi_rc.fido2.protocol.ctap2.GetAssertionRequest;
+import com.github.mphi_rc.fido2.protocol.ctap2.MakeCredentialRequest;
+
+import co.nstant.in.cbor.CborException;
+
+/**
+ * Parse time for the captured makeCredential and getAssertion requests, tree decoder versus
+ * CborReader. Run with {@code -prof gc} to compare allocations as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class RequestParseBenchmark {
+
+	// channel ID, HID command and CTAP2 method precede the parameters
+	private static final int REGISTRATION_PARAMS_OFFSET = 6;
+
+	private byte[] makeCredential;
+	private byte[] getAssertion;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		makeCredential = RegistrationMessages.RSA_AND_ES256;
+
+		ByteBuffer login = ByteBuffer.allocate(5 * 64)
+				.put(LoginPackets.HOST_1)
+				.put(LoginPackets.HOST_2)
+				.put(LoginPackets.HOST_3)
+				.put(LoginPackets.HOST_4)
+				.put(LoginPackets.HOST_5);
+		RequestStream requests = new RequestStream(new PacketInputStream(new DataInputStream(new ByteArrayInputStream(login.array()))));
+		requests.readMessage();
+		requests.readMessage();
+		getAssertion = requests.readMessage().payload();
+		requests.close();
+	}
+
+	@Benchmark
+	public MakeCredentialRequest makeCredentialTree() throws CborException {
+		return LegacyRequestParsers.makeCredential(makeCredential, REGISTRATION_PARAMS_OFFSET,
+				makeCredential.length - REGISTRATION_PARAMS_OFFSET);
+	}
+
+	@Benchmark
+	public MakeCredentialRequest makeCredentialReader() throws CborException {
+		return MakeCredentialRequest.fromBytes(makeCredential, REGISTRATION_PARAMS_OFFSET,
+				makeCredential.length - REGISTRATION_PARAMS_OFFSET);
+	}
+
+	@Benchmark
+	public GetAssertionRequest getAssertionTree() throws CborException {
+		return LegacyRequestParsers.getAssertion(getAssertion, 1, getAssertion.length - 1);
+	}
+
+	@Benchmark
+	public GetAssertionRequest getAssertionReader() throws CborException {
+		return GetAssertionRequest.fromBytes(getAssertion, 1, getAssertion.length - 1);
+	}
+}
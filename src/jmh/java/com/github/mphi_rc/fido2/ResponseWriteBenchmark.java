@@ -0,0 +1,165 @@
+package com.github.mphi_rc.fido2;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.github.mphi_rc.fido2.protocol.PacketOutputStream;
+import com.github.mphi_rc.fido2.protocol.ResponseStream;
+import com.github.mphi_rc.fido2.protocol.ResponseStream.Framing;
+import com.github.mphi_rc.fido2.protocol.usbhid.ChannelId;
+import com.github.mphi_rc.fido2.protocol.usbhid.HidCommand;
+import com.github.mphi_rc.fido2.protocol.usbhid.ImmutableRawMessage;
+import com.github.mphi_rc.fido2.protocol.usbhid.RawMessage;
+
+/**
+ * Wall time and write syscalls per response for the stream stack versus the gathering
+ * FileChannel path. {@code target} stands in for /dev/hidg0; point it at a file or FIFO
+ * on the device with {@code -p target=...}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class ResponseWriteBenchmark {
+
+	private static final ChannelId CHANNEL = ChannelId.from(new byte[] {0x00, 0x08, 0x00, 0x02});
+
+	@Param({"/dev/null"})
+	public String target;
+
+	@Param({"17", "256", "1024", "4096"})
+	public int payloadSize;
+
+	private RawMessage response;
+	private CountingOutputStream streamSyscalls;
+	private CountingChannel channelSyscalls;
+	private ResponseStream streamStack;
+	private ResponseStream gatheringChannel;
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Syscalls {
+		public long responses;
+		public long writes;
+
+		@Setup(Level.Iteration)
+		public void clean() {
+			responses = 0;
+			writes = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		byte[] payload = new byte[payloadSize];
+		new Random(42).nextBytes(payload);
+		response = ImmutableRawMessage.of(CHANNEL, HidCommand.CBOR, payload);
+
+		streamSyscalls = new CountingOutputStream(new FileOutputStream(target));
+		streamStack = new ResponseStream(new PacketOutputStream(new DataOutputStream(
+				new BufferedOutputStream(streamSyscalls))), Framing.PACKETS);
+
+		channelSyscalls = new CountingChannel(FileChannel.open(Paths.get(target), StandardOpenOption.WRITE));
+		gatheringChannel = new ResponseStream(new PacketOutputStream(channelSyscalls));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		streamStack.close();
+		gatheringChannel.close();
+	}
+
+	@Benchmark
+	public void streamStack(Syscalls syscalls) {
+		long before = streamSyscalls.writes;
+		streamStack.accept(response);
+		syscalls.writes += streamSyscalls.writes - before;
+		syscalls.responses++;
+	}
+
+	@Benchmark
+	public void gatheringChannel(Syscalls syscalls) {
+		long before = channelSyscalls.writes;
+		gatheringChannel.accept(response);
+		syscalls.writes += channelSyscalls.writes - before;
+		syscalls.responses++;
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+		long writes;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			writes++;
+			out.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			writes++;
+			out.write(b, off, len);
+		}
+	}
+
+	private static class CountingChannel implements GatheringByteChannel {
+		private final FileChannel channel;
+		long writes;
+
+		CountingChannel(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			writes++;
+			return channel.write(src);
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+			writes++;
+			return channel.write(srcs, offset, length);
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs) throws IOException {
+			return write(srcs, 0, srcs.length);
+		}
+
+		@Override
+		public boolean isOpen() {
+			return channel.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.github.mphi_rc.fido2;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.mphi_rc.fido2.authenticator.crypto.Algorithm;
+import com.github.mphi_rc.fido2.authenticator.crypto.AttestationKeyPair;
+import com.github.mphi_rc.fido2.authenticator.crypto.Ed25519AttestationKeyPair;
+import com.github.mphi_rc.fido2.authenticator.crypto.P256AttestationKeyPair;
+import com.github.mphi_rc.fido2.authenticator.crypto.PrivateKeyCache;
+import com.github.mphi_rc.fido2.protocol.ctap2.AuthenticatorData;
+import com.github.mphi_rc.fido2.protocol.ctap2.ImmutableAuthenticatorData;
+
+import net.i2p.crypto.eddsa.EdDSAPrivateKey;
+import net.i2p.crypto.eddsa.EdDSASecurityProvider;
+
+/**
+ * Assertion signatures per second. {@code uncached} repeats what signing used to do for every
+ * assertion, since the store hands out a new key pair object each time: a Signature lookup (and
+ * for Ed25519 a new provider) plus a PKCS#8 parse. {@code cached} goes through the private key
+ * cache and the per-thread Signature engines.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class SignBenchmark {
+
+	private static final BouncyCastleProvider BOUNCY_CASTLE = new BouncyCastleProvider();
+
+	@Param({"P256_ECDSA", "Ed25519"})
+	public Algorithm algorithm;
+
+	private AttestationKeyPair keyPair;
+	private byte[] credentialId;
+	private PrivateKeyCache privateKeys;
+	private AuthenticatorData authData;
+	private byte[] clientDataHash;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		keyPair = algorithm == Algorithm.Ed25519 ? Ed25519AttestationKeyPair.generate() : P256AttestationKeyPair.generate();
+		credentialId = new byte[16];
+		privateKeys = new PrivateKeyCache();
+		authData = ImmutableAuthenticatorData.builder()
+				.relayingPartyId("example.com")
+				.isUserPresent(true)
+				.isUserVerified(false)
+				.signatureCount(1)
+				.build();
+		clientDataHash = new byte[32];
+	}
+
+	@Benchmark
+	public byte[] uncached() throws GeneralSecurityException {
+		Signature signature;
+		switch (algorithm) {
+		case Ed25519:
+			signature = Signature.getInstance("NONEwithEdDSA", new EdDSASecurityProvider());
+			signature.initSign(new EdDSAPrivateKey(new PKCS8EncodedKeySpec(keyPair.privateKey())));
+			break;
+		default:
+			signature = Signature.getInstance("SHA256withECDDSA", BOUNCY_CASTLE);
+			signature.initSign(KeyFactory.getInstance("EC", BOUNCY_CASTLE).generatePrivate(new PKCS8EncodedKeySpec(keyPair.privateKey())));
+			break;
+		}
+		signature.update(authData.asBytes());
+		signature.update(clientDataHash);
+		return signature.sign();
+	}
+
+	@Benchmark
+	public byte[] cached() {
+		return keyPair.sign(privateKeys.get(credentialId, keyPair), authData, clientDataHash);
+	}
+}
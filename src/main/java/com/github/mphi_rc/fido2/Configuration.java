@@ -10,6 +10,7 @@ import org.immutables.value.Value;
 
 import com.github.mphi_rc.fido2.authenticator.Credential;
 import com.github.mphi_rc.fido2.authenticator.crypto.Algorithm;
+import com.github.mphi_rc.fido2.authenticator.crypto.CryptoBackendType;
 import com.github.mphi_rc.usb.gadget.UsbDeviceController;
 import com.google.common.collect.ImmutableList;
 
@@ -53,4 +54,48 @@ public interface Configuration {
 	default String usbGadgetName() {
 		return "fido2";
 	}
+
+	@Value.Default
+	default int maxActiveChannels() {
+		return 32;
+	}
+
+	@Value.Default
+	default int maxResidentCredentials() {
+		return 10000;
+	}
+
+	/**
+	 * Which providers carry out the cryptography. Applies to the whole process.
+	 */
+	@Value.Default
+	default CryptoBackendType cryptoBackend() {
+		return CryptoBackendType.I2P;
+	}
+
+	/**
+	 * How many key pairs are generated ahead of time for each enabled algorithm.
+	 */
+	@Value.Default
+	default int keyPairPoolDepth() {
+		return 4;
+	}
+
+	/**
+	 * Whether non-resident credentials are sealed into their own IDs instead of being stored.
+	 */
+	@Value.Default
+	default boolean wrapCredentials() {
+		return false;
+	}
+
+	@Value.Default
+	default Optional<byte[]> credentialWrappingKey() {
+		return Optional.empty();
+	}
+
+	@Value.Default
+	default int wrappedSignatureCount() {
+		return 0;
+	}
 }
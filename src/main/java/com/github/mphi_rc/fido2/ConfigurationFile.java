@@ -6,20 +6,28 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.SecureRandom;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.mphi_rc.fido2.authenticator.Credential;
 import com.github.mphi_rc.fido2.authenticator.GsonAdaptersCredential;
+import com.github.mphi_rc.fido2.authenticator.ImmutableCredential;
 import com.github.mphi_rc.fido2.authenticator.crypto.Algorithm;
 import com.github.mphi_rc.fido2.authenticator.crypto.AttestationKeyPair;
+import com.github.mphi_rc.fido2.authenticator.crypto.CryptoBackendType;
 import com.github.mphi_rc.fido2.authenticator.crypto.GsonAdaptersEd25519AttestationKeyPair;
 import com.github.mphi_rc.fido2.authenticator.crypto.GsonAdaptersP256AttestationKeyPair;
 import com.github.mphi_rc.fido2.authenticator.user.AlwaysAllowUserVerifier;
@@ -40,7 +48,9 @@ public class ConfigurationFile implements Configuration {
 	private final ExecutorService executorService;
 	private final Gson gson;
 	private final Path configFile;
-	private Configuration config;
+	private final AtomicInteger settingsVersion;
+	private final AtomicBoolean isWritePending;
+	private volatile Configuration config;
 
 	public static ConfigurationFile defaultPath() {
 		return new ConfigurationFile(Paths.get("config.json"));
@@ -60,7 +70,10 @@ public class ConfigurationFile implements Configuration {
 				.create();
 		this.configFile = configFile;
 		this.executorService = Executors.newFixedThreadPool(1);
+		this.settingsVersion = new AtomicInteger();
+		this.isWritePending = new AtomicBoolean();
 		this.config = readFromDisk();
+		recordCoseKeys();
 	}
 
 	public UserVerifier userVerifier() {
@@ -75,27 +88,104 @@ public class ConfigurationFile implements Configuration {
 	}
 
 	public void updatePinHash(byte[] pinHash) {
-		config = ImmutableConfiguration.builder()
-				.from(config)
+		update(current -> ImmutableConfiguration.builder()
+				.from(current)
 				.pinHash(Optional.of(pinHash))
-				.build();
-		persistToDiskAsync();
+				.build());
 	}
 
 	public void addCredential(Credential credential) {
-		config = ImmutableConfiguration.builder()
-				.from(config)
+		update(current -> ImmutableConfiguration.builder()
+				.from(current)
 				.addCredentials(credential)
-				.build();
-		persistToDiskAsync();
+				.build());
 	}
 
-	public void updateAllStoredCredentials(List<Credential> credentials) {
-		config = ImmutableConfiguration.builder()
-				.from(config)
+	public void updateAllStoredCredentials(Collection<Credential> credentials) {
+		update(current -> ImmutableConfiguration.builder()
+				.from(current)
 				.credentials(credentials)
-				.build();
+				.build());
+	}
+
+	/**
+	 * Returns the key that seals wrapped credential IDs, generating it the first time it's needed.
+	 */
+	public byte[] getOrCreateCredentialWrappingKey() {
+		return update(current -> {
+			if (current.credentialWrappingKey().isPresent()) {
+				return current;
+			}
+			byte[] key = new byte[32];
+			new SecureRandom().nextBytes(key);
+			return ImmutableConfiguration.builder()
+					.from(current)
+					.credentialWrappingKey(Optional.of(key))
+					.build();
+		}).credentialWrappingKey().get();
+	}
+
+	public int incrementWrappedSignatureCount() {
+		return update(current -> ImmutableConfiguration.builder()
+				.from(current)
+				.wrappedSignatureCount(current.wrappedSignatureCount() + 1)
+				.build()).wrappedSignatureCount();
+	}
+
+	/**
+	 * Records the COSE key of credentials saved before key pairs kept it, once, so it isn't
+	 * derived from the X.509 public key on every use after a restart.
+	 */
+	private void recordCoseKeys() {
+		List<Credential> credentials = new ArrayList<>(config.credentials().size());
+		boolean isRecorded = false;
+		for (Credential credential : config.credentials()) {
+			if (credential.keyPair().coseKey().isPresent()) {
+				credentials.add(credential);
+			} else {
+				credentials.add(ImmutableCredential.copyOf(credential).withKeyPair(credential.keyPair().withCoseKeyRecorded()));
+				isRecorded = true;
+			}
+		}
+		if (isRecorded) {
+			updateAllStoredCredentials(credentials);
+		}
+	}
+
+	/**
+	 * Applies a change to the current configuration and returns the result. Changes are applied
+	 * one at a time, so concurrent updates never overwrite each other.
+	 */
+	private synchronized Configuration update(UnaryOperator<Configuration> change) {
+		Configuration previous = config;
+		Configuration updated = change.apply(previous);
+		if (updated == previous) {
+			return previous;
+		}
+		config = updated;
+		if (isAdvertisedDifferently(previous, updated)) {
+			settingsVersion.incrementAndGet();
+		}
 		persistToDiskAsync();
+		return updated;
+	}
+
+	/**
+	 * Compares the settings that GetInfo reports, whether directly or through the authenticator
+	 * they configure.
+	 */
+	private static boolean isAdvertisedDifferently(Configuration a, Configuration b) {
+		return !a.id().equals(b.id())
+				|| a.pinHash().isPresent() != b.pinHash().isPresent()
+				|| a.wrapCredentials() != b.wrapCredentials()
+				|| !a.enabledAlgorithms().equals(b.enabledAlgorithms());
+	}
+
+	/**
+	 * Changes whenever a setting that the authenticator advertises to hosts is updated.
+	 */
+	public int settingsVersion() {
+		return settingsVersion.get();
 	}
 
 	public byte[] getAaguid() {
@@ -139,13 +229,53 @@ public class ConfigurationFile implements Configuration {
 		return config.usbGadgetDevicePath();
 	}
 
+	@Override
+	public int maxActiveChannels() {
+		return config.maxActiveChannels();
+	}
+
+	@Override
+	public int maxResidentCredentials() {
+		return config.maxResidentCredentials();
+	}
+
+	@Override
+	public CryptoBackendType cryptoBackend() {
+		return config.cryptoBackend();
+	}
+
+	@Override
+	public int keyPairPoolDepth() {
+		return config.keyPairPoolDepth();
+	}
+
+	@Override
+	public boolean wrapCredentials() {
+		return config.wrapCredentials();
+	}
+
+	@Override
+	public Optional<byte[]> credentialWrappingKey() {
+		return config.credentialWrappingKey();
+	}
+
+	@Override
+	public int wrappedSignatureCount() {
+		return config.wrappedSignatureCount();
+	}
+
 	@Override
 	public String usbGadgetName() {
 		return config.usbGadgetName();
 	}
 
 	public void persistToDiskAsync() {
+		// a write that hasn't started yet will pick up this change too
+		if (!isWritePending.compareAndSet(false, true)) {
+			return;
+		}
 		executorService.submit(() -> {
+			isWritePending.set(false);
 			synchronized (configFile) {
 				String json = gson.toJson(config);
 				try {
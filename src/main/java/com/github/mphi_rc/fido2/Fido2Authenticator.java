@@ -1,17 +1,19 @@
 package com.github.mphi_rc.fido2;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.github.mphi_rc.fido2.authenticator.Authenticator;
 import com.github.mphi_rc.fido2.authenticator.ConfigurationCredentialStore;
 import com.github.mphi_rc.fido2.authenticator.PinState;
+import com.github.mphi_rc.fido2.authenticator.crypto.CryptoBackends;
+import com.github.mphi_rc.fido2.protocol.HidTransport;
+import com.github.mphi_rc.fido2.protocol.HidgDeviceTransport;
 import com.github.mphi_rc.fido2.protocol.PacketInputStream;
 import com.github.mphi_rc.fido2.protocol.PacketOutputStream;
 import com.github.mphi_rc.fido2.protocol.RequestStream;
@@ -23,27 +25,58 @@ import com.github.mphi_rc.fido2.protocol.usbhid.UsbHidRequestHandler;
 
 public class Fido2Authenticator {
 
+	private static final Logger log = LoggerFactory.getLogger(Fido2Authenticator.class);
+
+	private final PinState pinState;
+	private final Authenticator authenticator;
 	private final UsbHidRequestHandler usbHidHander;
 	private final ResponseStream responses;
 	private final RequestStream requests;
+	private final BlockingQueue<RawMessage> outgoing;
+
+	public Fido2Authenticator(ConfigurationFile config) throws IOException {
+		this(config, new HidgDeviceTransport(Paths.get(config.usbGadgetDevicePath())));
+	}
 
-	public Fido2Authenticator(ConfigurationFile config) throws FileNotFoundException {
-		PinState pinState = new PinState(config);
-		Authenticator authenticator = new Authenticator(config, new ConfigurationCredentialStore(config), pinState);
+	public Fido2Authenticator(ConfigurationFile config, HidTransport transport) {
+		CryptoBackends.select(config.cryptoBackend());
+		this.pinState = new PinState(config);
+		this.authenticator = new Authenticator(config, new ConfigurationCredentialStore(config), pinState);
 		AuthenticatorRequestHandler authHandler = new AuthenticatorRequestHandler(authenticator, new PinRequestHandler(pinState));
-		this.usbHidHander = new UsbHidRequestHandler(authHandler);
+		this.usbHidHander = new UsbHidRequestHandler(authHandler, config.maxActiveChannels());
 
-		this.responses = new ResponseStream(new PacketOutputStream(new DataOutputStream(new BufferedOutputStream(
-				new FileOutputStream(config.usbGadgetDevicePath())))));
-		this.requests = new RequestStream(new PacketInputStream(new DataInputStream(new BufferedInputStream(
-				new FileInputStream(config.usbGadgetDevicePath())))));
+		this.outgoing = new LinkedBlockingQueue<>();
+		this.responses = new ResponseStream(new PacketOutputStream(transport.output()));
+		this.requests = new RequestStream(new PacketInputStream(transport.input()), outgoing::add);
 	}
 
 	public void start() throws IOException {
+		Thread writer = new Thread(this::writeResponses, "hid-writer");
+		writer.setDaemon(true);
+		writer.start();
+
+		// the calling thread becomes the reader: it only reassembles messages and dispatches them
+		try {
+			while (true) {
+				RawMessage request = requests.readMessage();
+				usbHidHander.dispatch(request, outgoing::add);
+			}
+		} finally {
+			authenticator.close();
+			pinState.close();
+		}
+	}
+
+	private void writeResponses() {
 		while (true) {
-			RawMessage request = requests.readMessage();
-			RawMessage response = usbHidHander.handle(request);
-			responses.accept(response);
+			try {
+				responses.accept(outgoing.take());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (RuntimeException e) {
+				log.error("Unable to write response", e);
+			}
 		}
 	}
 }
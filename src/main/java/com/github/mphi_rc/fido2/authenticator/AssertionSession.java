@@ -0,0 +1,73 @@
+package com.github.mphi_rc.fido2.authenticator;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The credentials matched by one getAssertion request, signed in turn by the initial request and
+ * any getNextAssertion requests that follow it. A session expires if it isn't advanced for 30
+ * seconds.
+ */
+public class AssertionSession {
+
+	private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+	private final String relayingPartyId;
+	private final byte[] clientDataHash;
+	private final boolean isUserPresent;
+	private final boolean isUserVerified;
+	private final List<Credential> credentials;
+	private final Optional<HmacSecret> hmacSecret;
+	private int next;
+	private long deadline;
+
+	AssertionSession(String relayingPartyId, byte[] clientDataHash, boolean isUserPresent, boolean isUserVerified,
+			List<Credential> credentials, Optional<HmacSecret> hmacSecret) {
+		this.relayingPartyId = relayingPartyId;
+		this.clientDataHash = clientDataHash;
+		this.isUserPresent = isUserPresent;
+		this.isUserVerified = isUserVerified;
+		this.credentials = credentials;
+		this.hmacSecret = hmacSecret;
+		this.next = 0;
+		this.deadline = System.nanoTime() + TIMEOUT_NANOS;
+	}
+
+	public int numberOfCredentials() {
+		return credentials.size();
+	}
+
+	public synchronized boolean hasNext() {
+		return next < credentials.size() && System.nanoTime() - deadline < 0;
+	}
+
+	String relayingPartyId() {
+		return relayingPartyId;
+	}
+
+	byte[] clientDataHash() {
+		return clientDataHash;
+	}
+
+	boolean isUserPresent() {
+		return isUserPresent;
+	}
+
+	boolean isUserVerified() {
+		return isUserVerified;
+	}
+
+	Optional<HmacSecret> hmacSecret() {
+		return hmacSecret;
+	}
+
+	synchronized boolean isStarted() {
+		return next > 0;
+	}
+
+	synchronized Credential next() {
+		deadline = System.nanoTime() + TIMEOUT_NANOS;
+		return credentials.get(next++);
+	}
+}
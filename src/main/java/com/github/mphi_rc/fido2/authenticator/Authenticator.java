@@ -1,33 +1,45 @@
 package com.github.mphi_rc.fido2.authenticator;
 
-import java.util.Arrays;
-import java.util.Collection;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.mphi_rc.fido2.ConfigurationFile;
+import com.github.mphi_rc.fido2.authenticator.Transaction.Phase;
 import com.github.mphi_rc.fido2.authenticator.crypto.Algorithm;
 import com.github.mphi_rc.fido2.authenticator.crypto.AttestationKeyPair;
-import com.github.mphi_rc.fido2.authenticator.crypto.Ed25519AttestationKeyPair;
-import com.github.mphi_rc.fido2.authenticator.crypto.P256AttestationKeyPair;
+import com.github.mphi_rc.fido2.authenticator.crypto.KeyPairPool;
+import com.github.mphi_rc.fido2.authenticator.crypto.PrivateKeyCache;
 import com.github.mphi_rc.fido2.authenticator.user.UserVerifier;
 import com.github.mphi_rc.fido2.protocol.ctap2.AuthenticatorData;
+import com.github.mphi_rc.fido2.protocol.ctap2.CredentialManagementRequest;
+import com.github.mphi_rc.fido2.protocol.ctap2.CredentialManagementResponse;
 import com.github.mphi_rc.fido2.protocol.ctap2.Ctap2ResponseCode;
 import com.github.mphi_rc.fido2.protocol.ctap2.GetAssertionRequest;
 import com.github.mphi_rc.fido2.protocol.ctap2.GetAssertionResponse;
 import com.github.mphi_rc.fido2.protocol.ctap2.GetInfoResponse;
 import com.github.mphi_rc.fido2.protocol.ctap2.GetInfoResponse.Version;
 import com.github.mphi_rc.fido2.protocol.ctap2.ImmutableAuthenticatorData;
+import com.github.mphi_rc.fido2.protocol.ctap2.ImmutableCredentialManagementResponse;
 import com.github.mphi_rc.fido2.protocol.ctap2.ImmutableGetAssertionResponse;
 import com.github.mphi_rc.fido2.protocol.ctap2.ImmutableGetInfoResponse;
 import com.github.mphi_rc.fido2.protocol.ctap2.ImmutableMakeCredentialResponse;
+import com.github.mphi_rc.fido2.protocol.ctap2.MakeCredentialRequest;
 import com.github.mphi_rc.fido2.protocol.ctap2.MakeCredentialResponse;
+import com.google.common.hash.Hashing;
 
-public class Authenticator {
+public class Authenticator implements AutoCloseable {
 
 	private static final Logger log = LoggerFactory.getLogger(Authenticator.class);
 
@@ -35,20 +47,26 @@ public class Authenticator {
 	private final CredentialStore credentialStore;
 	private final PinState pinState;
 	private final UserVerifier userVerifier;
+	private final Optional<CredentialWrapper> credentialWrapper;
+	private final PrivateKeyCache privateKeys;
+	private final KeyPairPool keyPairPool;
 
 	public Authenticator(ConfigurationFile config, CredentialStore credentialStore, PinState pinState) {
 		this.config = config;
 		this.credentialStore = credentialStore;
 		this.pinState = pinState;
 		this.userVerifier = config.userVerifier();
+		this.credentialWrapper = config.wrapCredentials()
+				? Optional.of(new CredentialWrapper(config.getOrCreateCredentialWrappingKey()))
+				: Optional.empty();
+		this.privateKeys = new PrivateKeyCache();
+		this.keyPairPool = new KeyPairPool(config.enabledAlgorithms(), config.keyPairPoolDepth());
 	}
 
-	public Result<MakeCredentialResponse, Ctap2ResponseCode> makeCredential(byte[] clientDataHash, String relayingPartyId,
-			byte[] userId, Set<Integer> supportedAlgorithmIds, Optional<byte[]> pinAuth) {
-
+	public Result<MakeCredentialResponse, Ctap2ResponseCode> makeCredential(MakeCredentialRequest request, Transaction transaction) {
 		Algorithm algorithmToUse = null;
 		for (Algorithm algorithm : config.enabledAlgorithms()) {
-			if (supportedAlgorithmIds.contains(algorithm.getCoseAlgorithmId())) {
+			if (request.supportedAlgorithmIds().contains(algorithm.getCoseAlgorithmId())) {
 				algorithmToUse = algorithm;
 				break;
 			}
@@ -56,31 +74,28 @@ public class Authenticator {
 		if (Objects.isNull(algorithmToUse)) {
 			return Result.err(Ctap2ResponseCode.UNSUPPORTED_ALGORITHM);
 		}
-
-		if (!userVerifier.isRegistrationApproved(relayingPartyId)) {
-			return Result.err(Ctap2ResponseCode.OPERATION_DENIED);
+		if (request.userVerification()) {
+			return Result.err(Ctap2ResponseCode.UNSUPPORTED_OPTION);
 		}
 
-		AttestationKeyPair keypair = null;
-		switch (algorithmToUse) {
-		case Ed25519:
-			keypair = Ed25519AttestationKeyPair.generate();
-			break;
-		case P256_ECDSA:
-			keypair = P256AttestationKeyPair.generate();
-			break;
+		transaction.enter(Phase.USER_PRESENCE_NEEDED);
+		boolean isApproved = userVerifier.isRegistrationApproved(request.relayingPartyId(), transaction);
+		transaction.enter(Phase.PROCESSING);
+		if (transaction.isCancelled()) {
+			return Result.err(Ctap2ResponseCode.KEEPALIVE_CANCEL);
+		}
+		if (!isApproved) {
+			return Result.err(Ctap2ResponseCode.OPERATION_DENIED);
 		}
-		Credential cred = credentialStore.saveCredential(relayingPartyId, userId, keypair);
-
-		byte[] attestedCredentialData = keypair.encodeAttestedCredentialData(config.getAaguid(), cred.id());
 
 		boolean isUserVerified = false;
 		// According to the FIDO2 spec, we should return PIN_NOT_SET or PIN_INVALID if len(pinAuth) == 0. But Google Chrome doesn't
 		// appear to react to that and times out, so we work around this by returning a "successful" non-user verified response.
 		
+		Optional<byte[]> pinAuth = request.pinAuth();
 		if (pinAuth.isPresent() && pinAuth.get().length != 0) {
 			
-			Optional<Ctap2ResponseCode> maybeError = pinState.isPinAuthValid(clientDataHash, pinAuth.get());
+			Optional<Ctap2ResponseCode> maybeError = pinState.isPinAuthValid(request.clientDataHash(), pinAuth.get());
 			if (maybeError.isPresent()) {
 				log.info("pin auth was present but did not succeed, sending {}", maybeError.get());
 				return Result.err(maybeError.get());
@@ -89,15 +104,37 @@ public class Authenticator {
 			isUserVerified = true;
 		}
 
-		AuthenticatorData authData = ImmutableAuthenticatorData.builder()
-				.relayingPartyId(relayingPartyId)
+		AttestationKeyPair keypair = keyPairPool.take(algorithmToUse);
+		Optional<byte[]> credRandom = request.hmacSecret() ? Optional.of(HmacSecret.generateCredRandom()) : Optional.empty();
+		Credential cred;
+		if (request.residentKey()) {
+			// a full store still takes a credential that replaces the user's existing one
+			Optional<Credential> saved = credentialStore.saveResidentCredential(request.relayingPartyId(), request.userId(),
+					request.userName(), request.userDisplayName(), keypair, credRandom);
+			if (!saved.isPresent()) {
+				return Result.err(Ctap2ResponseCode.KEY_STORE_FULL);
+			}
+			cred = saved.get();
+		} else if (credentialWrapper.isPresent()) {
+			cred = credentialWrapper.get().wrap(request.relayingPartyId(), keypair, request.hmacSecret());
+		} else {
+			cred = credentialStore.saveCredential(request.relayingPartyId(), request.userId(), keypair, credRandom);
+		}
+
+		byte[] attestedCredentialData = keypair.encodeAttestedCredentialData(config.getAaguid(), cred.id());
+
+		ImmutableAuthenticatorData.Builder authDataBuilder = ImmutableAuthenticatorData.builder()
+				.relayingPartyId(request.relayingPartyId())
 				.attestedCredentialData(attestedCredentialData)
 				.isUserPresent(true)
 				.isUserVerified(isUserVerified)
-				.signatureCount(0)
-				.build();
+				.signatureCount(0);
+		if (request.hmacSecret()) {
+			authDataBuilder.extensions(HmacSecret.REGISTRATION_OUTPUT);
+		}
+		AuthenticatorData authData = authDataBuilder.build();
 
-		byte[] signature = keypair.sign(authData, clientDataHash);
+		byte[] signature = keypair.sign(authData, request.clientDataHash());
 		MakeCredentialResponse response = ImmutableMakeCredentialResponse.builder()
 				.format("packed")
 				.signature(signature)
@@ -107,35 +144,61 @@ public class Authenticator {
 		return Result.ok(response);
 	}
 
-	public Result<GetAssertionResponse, Ctap2ResponseCode> getAssertion(GetAssertionRequest request) {
-		Collection<Credential> creds = credentialStore.getCredentials(request.relayingPartyId());
-		if (creds.isEmpty()) {
+	/**
+	 * Checks user presence once and matches the request's credentials. The returned session is
+	 * passed to {@link #getNextAssertion} to sign each of them in turn.
+	 */
+	public Result<AssertionSession, Ctap2ResponseCode> getAssertion(GetAssertionRequest request, Transaction transaction) {
+		if (request.publicKeyIds().size() > GetAssertionRequest.MAX_ALLOW_LIST_LENGTH) {
+			return Result.err(Ctap2ResponseCode.LIMIT_EXCEEDED);
+		}
+
+		// without an allow list only discoverable credentials may be used
+		List<Credential> matchingCredentials;
+		if (request.publicKeyIds().isEmpty()) {
+			matchingCredentials = credentialStore.getResidentCredentials(request.relayingPartyId()).stream()
+					.sorted(Comparator.comparing(Credential::creation).reversed())
+					.collect(Collectors.toList());
+		} else {
+			matchingCredentials = new ArrayList<>();
+			Set<ByteBuffer> storedIds = new HashSet<>();
+			for (byte[] id : request.publicKeyIds()) {
+				Optional<Credential> unwrapped = credentialWrapper.flatMap(w -> w.unwrap(request.relayingPartyId(), id));
+				if (unwrapped.isPresent()) {
+					matchingCredentials.add(unwrapped.get());
+				} else {
+					storedIds.add(ByteBuffer.wrap(id));
+				}
+			}
+			if (!storedIds.isEmpty()) {
+				credentialStore.getCredentials(request.relayingPartyId()).stream()
+						.filter(c -> storedIds.contains(ByteBuffer.wrap(c.id())))
+						.forEach(matchingCredentials::add);
+			}
+		}
+		if (matchingCredentials.isEmpty()) {
 			return Result.err(Ctap2ResponseCode.NO_CREDENTIALS);
 		}
 
-		if (!userVerifier.isAuthenticationApproved(request.relayingPartyId())) {
-			return Result.err(Ctap2ResponseCode.OPERATION_DENIED);
+		if (request.userVerification()) {
+			return Result.err(Ctap2ResponseCode.UNSUPPORTED_OPTION);
+		}
+		// hmac-secret outputs are only released to a user who is present
+		if (request.hmacSecret().isPresent() && !request.userPresence()) {
+			return Result.err(Ctap2ResponseCode.UNSUPPORTED_OPTION);
 		}
 
-		Credential cred;
-		if (request.publicKeyIds().isEmpty()) {
-			cred = creds.iterator().next();
-		} else {
-			Optional<Credential> matchingCredential = creds.stream()
-					.filter(c -> {
-						for (byte[] validId : request.publicKeyIds()) {
-							if (Arrays.equals(validId, c.id())) {
-								return true;
-							}
-						}
-						return false;
-					})
-					.findAny();
-
-			if (!matchingCredential.isPresent()) {
-				return Result.err(Ctap2ResponseCode.NO_CREDENTIALS);
+		// up=false is a silent probe for which credentials exist, so the user isn't asked
+		if (request.userPresence()) {
+			transaction.enter(Phase.USER_PRESENCE_NEEDED);
+			boolean isApproved = userVerifier.isAuthenticationApproved(request.relayingPartyId(), transaction);
+			transaction.enter(Phase.PROCESSING);
+			if (transaction.isCancelled()) {
+				return Result.err(Ctap2ResponseCode.KEEPALIVE_CANCEL);
+			}
+			if (!isApproved) {
+				return Result.err(Ctap2ResponseCode.OPERATION_DENIED);
 			}
-			cred = matchingCredential.get();
 		}
 
 		boolean isUserVerified = false;
@@ -153,35 +216,183 @@ public class Authenticator {
 			isUserVerified = true;
 		}
 
-		AuthenticatorData authData = ImmutableAuthenticatorData.builder()
-				.isUserPresent(true)
-				.isUserVerified(isUserVerified)
-				.signatureCount(cred.signatureCount() + 1)
-				.relayingPartyId(request.relayingPartyId())
-				.build();
+		Optional<HmacSecret> hmacSecret = Optional.empty();
+		if (request.hmacSecret().isPresent()) {
+			Result<HmacSecret, Ctap2ResponseCode> salts = pinState.decryptHmacSecretSalts(request.hmacSecret().get());
+			if (salts.error().isPresent()) {
+				return Result.err(salts.error().get());
+			}
+			hmacSecret = salts.value();
+		}
+
+		if (transaction.isCancelled()) {
+			return Result.err(Ctap2ResponseCode.KEEPALIVE_CANCEL);
+		}
+
+		return Result.ok(new AssertionSession(request.relayingPartyId(), request.clientDataHash(), request.userPresence(),
+				isUserVerified, matchingCredentials, hmacSecret));
+	}
+
+	/**
+	 * Signs the session's next credential without checking user presence again.
+	 */
+	public Result<GetAssertionResponse, Ctap2ResponseCode> getNextAssertion(AssertionSession session) {
+		if (!session.hasNext()) {
+			return Result.err(Ctap2ResponseCode.NOT_ALLOWED);
+		}
+		boolean isInitial = !session.isStarted();
+		Credential cred = session.next();
+		int signatureCount = cred.isWrapped()
+				? credentialStore.incrementWrappedCredentialCounter()
+				: cred.signatureCount() + 1;
+
+		ImmutableAuthenticatorData.Builder authDataBuilder = ImmutableAuthenticatorData.builder()
+				.isUserPresent(session.isUserPresent())
+				.isUserVerified(session.isUserVerified())
+				.signatureCount(signatureCount)
+				.relayingPartyId(session.relayingPartyId());
+		// credentials made without hmac-secret just ignore the extension
+		if (session.hmacSecret().isPresent() && cred.credRandom().isPresent()) {
+			authDataBuilder.extensions(session.hmacSecret().get().output(cred.credRandom().get()));
+		}
+		AuthenticatorData authData = authDataBuilder.build();
 
 		AttestationKeyPair keyPair = cred.keyPair();
-		byte[] signature = keyPair.sign(authData, request.clientDataHash());
-		credentialStore.incrementCredentialCounter(request.relayingPartyId(), keyPair);
+		byte[] signature = keyPair.sign(privateKeys.get(cred.id(), keyPair), authData, session.clientDataHash());
+		if (!cred.isWrapped()) {
+			credentialStore.incrementCredentialCounter(session.relayingPartyId(), keyPair);
+		}
 
-		GetAssertionResponse response = ImmutableGetAssertionResponse.builder()
+		ImmutableGetAssertionResponse.Builder response = ImmutableGetAssertionResponse.builder()
 				.credentialId(cred.id())
 				.authData(authData.asBytes())
 				.signature(signature)
 				.userId(cred.userId())
-				.build();
-		return Result.ok(response);
+				// wrapped credentials don't keep the user ID, so there is nothing to return for them
+				.isUserIncluded(cred.isResident() || (session.numberOfCredentials() > 1 && cred.userId().length > 0));
+		if (isInitial && session.numberOfCredentials() > 1) {
+			response.numberOfCredentials(session.numberOfCredentials());
+		}
+		return Result.ok(response.build());
+	}
+
+	public Result<CredentialManagementResponse, Ctap2ResponseCode> getCredentialsMetadata(CredentialManagementRequest request) {
+		Optional<Ctap2ResponseCode> authError = checkManagementAuth(request);
+		if (authError.isPresent()) {
+			return Result.err(authError.get());
+		}
+		return Result.ok(ImmutableCredentialManagementResponse.builder()
+				.existingResidentCredentialsCount(credentialStore.residentCredentialCount())
+				.maxPossibleRemainingResidentCredentialsCount(credentialStore.remainingResidentCapacity())
+				.build());
+	}
+
+	public Result<EnumerationSession<String>, Ctap2ResponseCode> enumerateRelyingParties(CredentialManagementRequest request) {
+		Optional<Ctap2ResponseCode> authError = checkManagementAuth(request);
+		if (authError.isPresent()) {
+			return Result.err(authError.get());
+		}
+		List<String> relayingParties = credentialStore.residentRelayingParties();
+		if (relayingParties.isEmpty()) {
+			return Result.err(Ctap2ResponseCode.NO_CREDENTIALS);
+		}
+		return Result.ok(new EnumerationSession<>(relayingParties));
+	}
+
+	public Result<CredentialManagementResponse, Ctap2ResponseCode> getNextRelyingParty(EnumerationSession<String> session) {
+		if (!session.hasNext()) {
+			return Result.err(Ctap2ResponseCode.NOT_ALLOWED);
+		}
+		boolean isInitial = !session.isStarted();
+		String relayingPartyId = session.next();
+		ImmutableCredentialManagementResponse.Builder response = ImmutableCredentialManagementResponse.builder()
+				.relayingPartyId(relayingPartyId)
+				.relayingPartyIdHash(Hashing.sha256().hashString(relayingPartyId, StandardCharsets.UTF_8).asBytes());
+		if (isInitial) {
+			response.totalRelayingParties(session.total());
+		}
+		return Result.ok(response.build());
+	}
+
+	public Result<EnumerationSession<Credential>, Ctap2ResponseCode> enumerateCredentials(CredentialManagementRequest request) {
+		if (!request.relayingPartyIdHash().isPresent()) {
+			return Result.err(Ctap2ResponseCode.MISSING_PARAMETER);
+		}
+		Optional<Ctap2ResponseCode> authError = checkManagementAuth(request);
+		if (authError.isPresent()) {
+			return Result.err(authError.get());
+		}
+		List<Credential> credentials = credentialStore.relayingPartyForHash(request.relayingPartyIdHash().get())
+				.map(credentialStore::getResidentCredentials)
+				.orElse(Collections.emptyList());
+		if (credentials.isEmpty()) {
+			return Result.err(Ctap2ResponseCode.NO_CREDENTIALS);
+		}
+		return Result.ok(new EnumerationSession<>(credentials));
+	}
+
+	public Result<CredentialManagementResponse, Ctap2ResponseCode> getNextCredential(EnumerationSession<Credential> session) {
+		if (!session.hasNext()) {
+			return Result.err(Ctap2ResponseCode.NOT_ALLOWED);
+		}
+		boolean isInitial = !session.isStarted();
+		Credential cred = session.next();
+		ImmutableCredentialManagementResponse.Builder response = ImmutableCredentialManagementResponse.builder()
+				.userId(cred.userId())
+				.userName(cred.userName())
+				.userDisplayName(cred.userDisplayName())
+				.credentialId(cred.id())
+				.publicKey(cred.keyPair().encodeCosePublicKey());
+		if (isInitial) {
+			response.totalCredentials(session.total());
+		}
+		return Result.ok(response.build());
+	}
+
+	public Ctap2ResponseCode deleteCredential(CredentialManagementRequest request) {
+		if (!request.credentialId().isPresent()) {
+			return Ctap2ResponseCode.MISSING_PARAMETER;
+		}
+		Optional<Ctap2ResponseCode> authError = checkManagementAuth(request);
+		if (authError.isPresent()) {
+			return authError.get();
+		}
+		if (!credentialStore.deleteResidentCredential(request.credentialId().get())) {
+			return Ctap2ResponseCode.NO_CREDENTIALS;
+		}
+		privateKeys.invalidate(request.credentialId().get());
+		return Ctap2ResponseCode.OK;
+	}
+
+	private Optional<Ctap2ResponseCode> checkManagementAuth(CredentialManagementRequest request) {
+		if (!request.pinAuth().isPresent()) {
+			return Optional.of(Ctap2ResponseCode.PIN_REQUIRED);
+		}
+		return pinState.isPinAuthValid(request.authenticatedMessage(), request.pinAuth().get());
 	}
 
 	public GetInfoResponse getInfo() {
-		return ImmutableGetInfoResponse.of(Version.FIDO_2_0, config.getAaguid(), pinState.isPinSet());
+		return ImmutableGetInfoResponse.builder()
+				.version(Version.FIDO_2_0)
+				.aaguid(config.getAaguid())
+				.isPinConfigured(pinState.isPinSet())
+				.maxCredentialIdLength(credentialWrapper.isPresent() ? CredentialWrapper.MAX_ID_LENGTH : Credential.ID_LENGTH)
+				.build();
+	}
+
+	public int settingsVersion() {
+		return config.settingsVersion();
 	}
 
 	void reset() {
 		throw new UnsupportedOperationException("Reset is not implemented");
 	}
 
-	void getNextAssertion() {
-		throw new UnsupportedOperationException("GetNextAssertion is not implemented");
+	/**
+	 * Stops generating key pairs in the background.
+	 */
+	@Override
+	public void close() {
+		keyPairPool.close();
 	}
 }
@@ -1,41 +1,95 @@
 package com.github.mphi_rc.fido2.authenticator;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 import com.github.mphi_rc.fido2.ConfigurationFile;
 import com.github.mphi_rc.fido2.authenticator.crypto.AttestationKeyPair;
+import com.google.common.hash.Hashing;
 
-
+/**
+ * Keeps the credentials in the configuration file, indexed by relying party and credential ID so
+ * that lookups don't scan every stored credential. The ID index keeps the file's order and is
+ * what gets written back, so updates never search the stored list.
+ */
 public class ConfigurationCredentialStore implements CredentialStore {
 
 	private final ConfigurationFile config;
+	private final Map<String, List<Credential>> byRelayingParty;
+	private final Map<String, List<Credential>> residentByRelayingParty;
+	private final Map<ByteBuffer, String> relayingPartyByHash;
+	private final Map<ByteBuffer, Credential> byId;
+	private int residentCount;
 
 	public ConfigurationCredentialStore(ConfigurationFile config) {
 		this.config = config;
+		this.byRelayingParty = new HashMap<>();
+		this.residentByRelayingParty = new LinkedHashMap<>();
+		this.relayingPartyByHash = new HashMap<>();
+		this.byId = new LinkedHashMap<>();
+		for (Credential credential : config.credentials()) {
+			index(credential);
+		}
 	}
 
 	@Override
-	public Collection<Credential> getCredentials(String relayingPartyId) {
-		return config.credentials().stream()
-				.filter(c -> c.relayingPartyId().equals(relayingPartyId))
-				.collect(Collectors.toList());
+	public synchronized Collection<Credential> getCredentials(String relayingPartyId) {
+		return new ArrayList<>(byRelayingParty.getOrDefault(relayingPartyId, Collections.emptyList()));
 	}
 
 	@Override
-	public Credential saveCredential(String relayingPartyId, byte[] userId, AttestationKeyPair keyPair) {
-		Credential credential = ImmutableCredential.of(relayingPartyId, Instant.now(), userId, keyPair, 0);
+	public synchronized Credential saveCredential(String relayingPartyId, byte[] userId, AttestationKeyPair keyPair,
+			Optional<byte[]> credRandom) {
+		Credential credential = ImmutableCredential.of(relayingPartyId, Instant.now(), userId, keyPair, 0)
+				.withCredRandom(credRandom);
+		index(credential);
 		config.addCredential(credential);
 		return credential;
 	}
 
 	@Override
-	public void incrementCredentialCounter(String relayingPartyId, AttestationKeyPair keyPair) {
-		Optional<Credential> matchingCredential = getCredentials(relayingPartyId).stream()
+	public synchronized Optional<Credential> saveResidentCredential(String relayingPartyId, byte[] userId, Optional<String> userName,
+			Optional<String> userDisplayName, AttestationKeyPair keyPair, Optional<byte[]> credRandom) {
+		Credential credential = ImmutableCredential.builder()
+				.relayingPartyId(relayingPartyId)
+				.creation(Instant.now())
+				.userId(userId)
+				.keyPair(keyPair)
+				.signatureCount(0)
+				.isResident(true)
+				.userName(userName)
+				.userDisplayName(userDisplayName)
+				.credRandom(credRandom)
+				.build();
+
+		Optional<Credential> existing = residentByRelayingParty.getOrDefault(relayingPartyId, Collections.emptyList()).stream()
+				.filter(c -> Arrays.equals(c.userId(), userId))
+				.findFirst();
+		if (existing.isPresent()) {
+			replace(existing.get(), credential);
+		} else if (residentCount >= config.maxResidentCredentials()) {
+			return Optional.empty();
+		} else {
+			index(credential);
+			config.addCredential(credential);
+		}
+		return Optional.of(credential);
+	}
+
+	@Override
+	public synchronized void incrementCredentialCounter(String relayingPartyId, AttestationKeyPair keyPair) {
+		Optional<Credential> matchingCredential = byRelayingParty.getOrDefault(relayingPartyId, Collections.emptyList()).stream()
 				.filter(cred -> cred.keyPair().equals(keyPair))
 				.findFirst();
 
@@ -45,14 +99,91 @@ public class ConfigurationCredentialStore implements CredentialStore {
 					.from(existing)
 					.signatureCount(existing.signatureCount() + 1)
 					.build();
+			replace(existing, updated);
+		}
+	}
 
-			List<Credential> updatedCredentials = new ArrayList<>(config.credentials());
-			updatedCredentials.remove(existing);
-			updatedCredentials.add(updated);
+	@Override
+	public synchronized int residentCredentialCount() {
+		return residentCount;
+	}
+
+	@Override
+	public synchronized int remainingResidentCapacity() {
+		return Math.max(0, config.maxResidentCredentials() - residentCount);
+	}
 
-			config.updateAllStoredCredentials(updatedCredentials);
+	@Override
+	public synchronized List<String> residentRelayingParties() {
+		return new ArrayList<>(residentByRelayingParty.keySet());
+	}
+
+	@Override
+	public synchronized Optional<String> relayingPartyForHash(byte[] relayingPartyIdHash) {
+		return Optional.ofNullable(relayingPartyByHash.get(ByteBuffer.wrap(relayingPartyIdHash)));
+	}
+
+	@Override
+	public synchronized List<Credential> getResidentCredentials(String relayingPartyId) {
+		return new ArrayList<>(residentByRelayingParty.getOrDefault(relayingPartyId, Collections.emptyList()));
+	}
+
+	@Override
+	public synchronized boolean deleteResidentCredential(byte[] credentialId) {
+		Credential existing = byId.get(ByteBuffer.wrap(credentialId));
+		if (Objects.isNull(existing) || !existing.isResident()) {
+			return false;
 		}
+		unindex(existing);
+		config.updateAllStoredCredentials(byId.values());
+		return true;
 	}
 
+	@Override
+	public synchronized int incrementWrappedCredentialCounter() {
+		return config.incrementWrappedSignatureCount();
+	}
 
+	private void replace(Credential existing, Credential updated) {
+		unindex(existing);
+		index(updated);
+		config.updateAllStoredCredentials(byId.values());
+	}
+
+	private void index(Credential credential) {
+		String relayingPartyId = credential.relayingPartyId();
+		byRelayingParty.computeIfAbsent(relayingPartyId, rp -> new ArrayList<>()).add(credential);
+		byId.put(ByteBuffer.wrap(credential.id()), credential);
+		if (credential.isResident()) {
+			residentByRelayingParty.computeIfAbsent(relayingPartyId, rp -> new ArrayList<>()).add(credential);
+			relayingPartyByHash.put(hash(relayingPartyId), relayingPartyId);
+			residentCount++;
+		}
+	}
+
+	private void unindex(Credential credential) {
+		String relayingPartyId = credential.relayingPartyId();
+		removeFrom(byRelayingParty, relayingPartyId, credential);
+		byId.remove(ByteBuffer.wrap(credential.id()));
+		if (credential.isResident()) {
+			if (removeFrom(residentByRelayingParty, relayingPartyId, credential)) {
+				relayingPartyByHash.remove(hash(relayingPartyId));
+			}
+			residentCount--;
+		}
+	}
+
+	private static boolean removeFrom(Map<String, List<Credential>> index, String relayingPartyId, Credential credential) {
+		List<Credential> credentials = index.get(relayingPartyId);
+		credentials.remove(credential);
+		if (credentials.isEmpty()) {
+			index.remove(relayingPartyId);
+			return true;
+		}
+		return false;
+	}
+
+	private static ByteBuffer hash(String relayingPartyId) {
+		return ByteBuffer.wrap(Hashing.sha256().hashString(relayingPartyId, StandardCharsets.UTF_8).asBytes());
+	}
 }
@@ -2,6 +2,7 @@ package com.github.mphi_rc.fido2.authenticator;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.Optional;
 
 import org.immutables.gson.Gson;
 import org.immutables.value.Value;
@@ -15,6 +16,8 @@ import com.google.common.hash.Hashing;
 @Value.Immutable
 public interface Credential {
 
+	int ID_LENGTH = 16;
+
 	@Value.Parameter
 	String relayingPartyId();
 
@@ -29,8 +32,35 @@ public interface Credential {
 
 	@Value.Parameter
 	int signatureCount();
+
+	/**
+	 * Whether the credential is discoverable, i.e. it was created with the rk option and can be
+	 * used without the relying party naming it in an allow list.
+	 */
+	@Value.Default
+	default boolean isResident() {
+		return false;
+	}
+
+	Optional<String> userName();
+
+	Optional<String> userDisplayName();
+
+	/**
+	 * The per-credential secret behind the hmac-secret extension, present if the credential was
+	 * created with it.
+	 */
+	Optional<byte[]> credRandom();
+
+	/**
+	 * Whether the credential's key pair is sealed in its ID rather than kept in the store.
+	 */
+	@Value.Default
+	default boolean isWrapped() {
+		return false;
+	}
 	
-	@Value.Derived
+	@Value.Default
 	default byte[] id() {
 		HashFunction hf = Hashing.murmur3_128();
 		HashCode code = hf.newHasher()
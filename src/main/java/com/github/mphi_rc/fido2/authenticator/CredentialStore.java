@@ -1,12 +1,38 @@
 package com.github.mphi_rc.fido2.authenticator;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 import com.github.mphi_rc.fido2.authenticator.crypto.AttestationKeyPair;
 
 
 public interface CredentialStore {
 	Collection<Credential> getCredentials(String relayingPartyId);
-	Credential saveCredential(String relayingPartyId, byte[] userId, AttestationKeyPair keyPair);
+	Credential saveCredential(String relayingPartyId, byte[] userId, AttestationKeyPair keyPair, Optional<byte[]> credRandom);
 	void incrementCredentialCounter(String relayingPartyId, AttestationKeyPair keyPair);
+
+	/**
+	 * Saves a discoverable credential, replacing any resident credential the relying party already
+	 * holds for the same user. Returns empty if that would need more room than the store has.
+	 */
+	Optional<Credential> saveResidentCredential(String relayingPartyId, byte[] userId, Optional<String> userName,
+			Optional<String> userDisplayName, AttestationKeyPair keyPair, Optional<byte[]> credRandom);
+	int residentCredentialCount();
+	int remainingResidentCapacity();
+	List<String> residentRelayingParties();
+	Optional<String> relayingPartyForHash(byte[] relayingPartyIdHash);
+	List<Credential> getResidentCredentials(String relayingPartyId);
+
+	/**
+	 * Deletes a resident credential. Other stored credentials can't be enumerated, so they can't
+	 * be deleted either.
+	 */
+	boolean deleteResidentCredential(byte[] credentialId);
+
+	/**
+	 * Advances the counter shared by every wrapped credential, which aren't stored individually,
+	 * and returns its new value.
+	 */
+	int incrementWrappedCredentialCounter();
 }
@@ -0,0 +1,158 @@
+package com.github.mphi_rc.fido2.authenticator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Optional;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.github.mphi_rc.fido2.authenticator.crypto.Algorithm;
+import com.github.mphi_rc.fido2.authenticator.crypto.AttestationKeyPair;
+import com.github.mphi_rc.fido2.authenticator.crypto.ImmutableEd25519AttestationKeyPair;
+import com.github.mphi_rc.fido2.authenticator.crypto.ImmutableP256AttestationKeyPair;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+
+/**
+ * Seals a non-resident credential's key pair into the credential ID with AES-GCM under the
+ * device's wrapping key, so the credential needn't be stored. The relying party ID hash is the
+ * associated data, so an ID only unwraps for the relying party it was made for. The CredRandom
+ * of a wrapped hmac-secret credential is derived from its ID rather than sealed in it.
+ */
+public class CredentialWrapper {
+
+	public static final int MAX_ID_LENGTH = 256;
+
+	private static final byte VERSION = 0x01;
+	private static final int NONCE_LENGTH = 12;
+	private static final int TAG_LENGTH = 16;
+	private static final int MIN_ID_LENGTH = 1 + NONCE_LENGTH + TAG_LENGTH;
+	private static final String CIPHER = "AES/GCM/NoPadding";
+	private static final String MAC = "HmacSHA256";
+	private static final int HMAC_SECRET_FLAG = 0x80;
+	private static final int ALGORITHM_MASK = 0x7F;
+
+	private final SecretKeySpec key;
+	private final SecretKeySpec credRandomKey;
+	private final SecureRandom random;
+
+	public CredentialWrapper(byte[] key) {
+		this.key = new SecretKeySpec(key, "AES");
+		try {
+			Mac mac = Mac.getInstance(MAC);
+			mac.init(new SecretKeySpec(key, MAC));
+			this.credRandomKey = new SecretKeySpec(mac.doFinal("CredRandom".getBytes(StandardCharsets.US_ASCII)), MAC);
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+		this.random = new SecureRandom();
+	}
+
+	public Credential wrap(String relayingPartyId, AttestationKeyPair keyPair, boolean hmacSecret) {
+		byte[] privateKey = keyPair.privateKey();
+		byte[] publicKey = keyPair.publicKey();
+		ByteBuffer plaintext = ByteBuffer.allocate(3 + privateKey.length + publicKey.length);
+		plaintext.put((byte) (keyPair.namedCurve().ordinal() | (hmacSecret ? HMAC_SECRET_FLAG : 0)));
+		plaintext.putShort((short) privateKey.length);
+		plaintext.put(privateKey);
+		plaintext.put(publicKey);
+
+		byte[] id = new byte[MIN_ID_LENGTH + plaintext.capacity()];
+		Preconditions.checkState(id.length <= MAX_ID_LENGTH, "Wrapped credential ID is too long");
+		id[0] = VERSION;
+		byte[] nonce = new byte[NONCE_LENGTH];
+		random.nextBytes(nonce);
+		System.arraycopy(nonce, 0, id, 1, NONCE_LENGTH);
+		try {
+			Cipher cipher = cipher(Cipher.ENCRYPT_MODE, relayingPartyId, nonce);
+			cipher.doFinal(plaintext.array(), 0, plaintext.capacity(), id, 1 + NONCE_LENGTH);
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+		return credential(relayingPartyId, keyPair, id, hmacSecret);
+	}
+
+	/**
+	 * Returns the credential sealed in the ID, or empty if the ID wasn't made by this device for
+	 * this relying party.
+	 */
+	public Optional<Credential> unwrap(String relayingPartyId, byte[] id) {
+		if (id.length < MIN_ID_LENGTH || id.length > MAX_ID_LENGTH || id[0] != VERSION) {
+			return Optional.empty();
+		}
+		byte[] nonce = Arrays.copyOfRange(id, 1, 1 + NONCE_LENGTH);
+		ByteBuffer plaintext;
+		try {
+			Cipher cipher = cipher(Cipher.DECRYPT_MODE, relayingPartyId, nonce);
+			plaintext = ByteBuffer.wrap(cipher.doFinal(id, 1 + NONCE_LENGTH, id.length - 1 - NONCE_LENGTH));
+		} catch (AEADBadTagException e) {
+			return Optional.empty();
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+
+		int flags = plaintext.get();
+		Algorithm algorithm = Algorithm.values()[flags & ALGORITHM_MASK];
+		byte[] privateKey = new byte[plaintext.getShort()];
+		plaintext.get(privateKey);
+		byte[] publicKey = new byte[plaintext.remaining()];
+		plaintext.get(publicKey);
+
+		AttestationKeyPair keyPair = null;
+		switch (algorithm) {
+		case Ed25519:
+			keyPair = ImmutableEd25519AttestationKeyPair.builder()
+					.privateKey(privateKey)
+					.publicKey(publicKey)
+					.build();
+			break;
+		case P256_ECDSA:
+			keyPair = ImmutableP256AttestationKeyPair.builder()
+					.privateKey(privateKey)
+					.publicKey(publicKey)
+					.build();
+			break;
+		}
+		return Optional.of(credential(relayingPartyId, keyPair, id, (flags & HMAC_SECRET_FLAG) != 0));
+	}
+
+	private Cipher cipher(int mode, String relayingPartyId, byte[] nonce) throws GeneralSecurityException {
+		Cipher cipher = Cipher.getInstance(CIPHER);
+		cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+		cipher.updateAAD(new byte[] {VERSION});
+		cipher.updateAAD(Hashing.sha256().hashString(relayingPartyId, StandardCharsets.UTF_8).asBytes());
+		return cipher;
+	}
+
+	private byte[] credRandom(byte[] id) {
+		try {
+			Mac mac = Mac.getInstance(MAC);
+			mac.init(credRandomKey);
+			mac.update(id, 0, 1 + NONCE_LENGTH);
+			return mac.doFinal();
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private Credential credential(String relayingPartyId, AttestationKeyPair keyPair, byte[] id, boolean hmacSecret) {
+		return ImmutableCredential.builder()
+				.relayingPartyId(relayingPartyId)
+				.creation(Instant.EPOCH)
+				.userId(new byte[0])
+				.keyPair(keyPair)
+				.signatureCount(0)
+				.isWrapped(true)
+				.id(id)
+				.credRandom(hmacSecret ? Optional.of(credRandom(id)) : Optional.empty())
+				.build();
+	}
+}
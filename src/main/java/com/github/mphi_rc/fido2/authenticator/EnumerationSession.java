@@ -0,0 +1,41 @@
+package com.github.mphi_rc.fido2.authenticator;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of the relying parties or credentials listed by a credential management begin
+ * sub-command, handed out one at a time by the matching get-next sub-command. Like an
+ * {@link AssertionSession}, it expires if it isn't advanced for 30 seconds.
+ */
+public class EnumerationSession<T> {
+
+	private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+	private final List<T> items;
+	private int next;
+	private long deadline;
+
+	EnumerationSession(List<T> items) {
+		this.items = items;
+		this.next = 0;
+		this.deadline = System.nanoTime() + TIMEOUT_NANOS;
+	}
+
+	public int total() {
+		return items.size();
+	}
+
+	public synchronized boolean hasNext() {
+		return next < items.size() && System.nanoTime() - deadline < 0;
+	}
+
+	synchronized boolean isStarted() {
+		return next > 0;
+	}
+
+	synchronized T next() {
+		deadline = System.nanoTime() + TIMEOUT_NANOS;
+		return items.get(next++);
+	}
+}
@@ -0,0 +1,75 @@
+package com.github.mphi_rc.fido2.authenticator;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.github.mphi_rc.fido2.authenticator.crypto.CryptoBackends;
+import com.github.mphi_rc.fido2.protocol.ctap2.CborWriter;
+import com.github.mphi_rc.fido2.protocol.ctap2.HmacSecretInput;
+
+/**
+ * The decrypted salts of one getAssertion request's hmac-secret extension, applied in turn to
+ * the CredRandom of each credential the request matched.
+ */
+public class HmacSecret {
+
+	public static final int CRED_RANDOM_LENGTH = 32;
+	static final int SALT_LENGTH = 32;
+
+	/**
+	 * The extension output of a makeCredential request that enabled hmac-secret.
+	 */
+	static final byte[] REGISTRATION_OUTPUT = new CborWriter(16)
+			.writeMapHeader(1)
+			.writeTextString(HmacSecretInput.EXTENSION_ID)
+			.writeBoolean(true)
+			.toByteArray();
+
+	private static final SecureRandom random = new SecureRandom();
+
+	private final byte[] sharedSecret;
+	private final byte[] salts;
+
+	HmacSecret(byte[] sharedSecret, byte[] salts) {
+		this.sharedSecret = sharedSecret;
+		this.salts = salts;
+	}
+
+	static byte[] generateCredRandom() {
+		byte[] credRandom = new byte[CRED_RANDOM_LENGTH];
+		random.nextBytes(credRandom);
+		return credRandom;
+	}
+
+	/**
+	 * Returns the extension output for a credential: HMAC-SHA-256 of each salt under its
+	 * CredRandom, encrypted under the shared secret.
+	 */
+	byte[] output(byte[] credRandom) {
+		try {
+			Mac hmac = CryptoBackends.current().newHmacSha256();
+			hmac.init(new SecretKeySpec(credRandom, "HmacSHA256"));
+			byte[] outputs = new byte[salts.length];
+			for (int offset = 0; offset < salts.length; offset += SALT_LENGTH) {
+				hmac.update(salts, offset, SALT_LENGTH);
+				hmac.doFinal(outputs, offset);
+			}
+
+			Cipher aes = CryptoBackends.current().newAesCbc();
+			aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(sharedSecret, "AES"), new IvParameterSpec(new byte[16]));
+			byte[] encrypted = aes.doFinal(outputs);
+			return new CborWriter(16 + encrypted.length)
+					.writeMapHeader(1)
+					.writeTextString(HmacSecretInput.EXTENSION_ID)
+					.writeByteString(encrypted)
+					.toByteArray();
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
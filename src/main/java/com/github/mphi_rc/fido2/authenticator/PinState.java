@@ -1,17 +1,23 @@
 package com.github.mphi_rc.fido2.authenticator;
 
 import java.nio.ByteBuffer;
-import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.Provider;
 import java.security.PublicKey;
 import java.security.SecureRandom;
-import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyAgreement;
@@ -20,44 +26,56 @@ import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.mphi_rc.fido2.ConfigurationFile;
+import com.github.mphi_rc.fido2.authenticator.crypto.CryptoBackends;
 import com.github.mphi_rc.fido2.protocol.ctap2.Ctap2ResponseCode;
+import com.github.mphi_rc.fido2.protocol.ctap2.HmacSecretInput;
 import com.google.common.hash.Hashing;
 import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Bytes;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 
-public class PinState {
+public class PinState implements AutoCloseable {
 
 	private static final Logger log = LoggerFactory.getLogger(PinState.class);
-	private static final Provider securityProvider = new BouncyCastleProvider();
+
+	private static final int MAX_CACHED_HOST_KEYS = 8;
 
 	private final byte[] pinToken;
-	private KeyPair pinKeyPair;
+	private final Map<ByteBuffer, byte[]> sharedSecrets;
+	private final ThreadLocal<Mac> hmacs;
+	private final ThreadLocal<Cipher> aesCiphers;
+	private final ThreadLocal<KeyAgreement> keyAgreements;
+	private final ExecutorService keyGenerator;
+	private final AtomicLong inlineGenerations;
+	private volatile KeyPair pinKeyPair;
+	private Future<KeyPair> nextPinKeyPair;
 	private int retriesLeft;
 	private ConfigurationFile config;
 
-	private static KeyPair generateP256KeyPair() {
-		try {
-			AlgorithmParameters algParam = AlgorithmParameters.getInstance("EC", securityProvider);
-			algParam.init(new ECGenParameterSpec("P-256"));
-			ECGenParameterSpec parameterSpec = algParam.getParameterSpec(ECGenParameterSpec.class);
-
-			KeyPairGenerator generator = KeyPairGenerator.getInstance("EC", securityProvider);
-			generator.initialize(parameterSpec);
-			return generator.generateKeyPair();
-		} catch(Exception e) {
-			throw new RuntimeException(e);
-		}
-	}
-
 	public PinState(ConfigurationFile config) {
 		this.pinToken = new byte[32];
 		new SecureRandom().nextBytes(pinToken);
-		this.pinKeyPair = generateP256KeyPair();
+		this.sharedSecrets = new LinkedHashMap<ByteBuffer, byte[]>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ByteBuffer, byte[]> eldest) {
+				return size() > MAX_CACHED_HOST_KEYS;
+			}
+		};
+		this.hmacs = ThreadLocal.withInitial(() -> CryptoBackends.current().newHmacSha256());
+		this.aesCiphers = ThreadLocal.withInitial(() -> CryptoBackends.current().newAesCbc());
+		this.keyAgreements = ThreadLocal.withInitial(() -> CryptoBackends.current().newKeyAgreement());
+		this.keyGenerator = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("pin-key-agreement-%d")
+				.setDaemon(true)
+				.build());
+		this.inlineGenerations = new AtomicLong();
+		this.pinKeyPair = CryptoBackends.current().generateKeyAgreementKeyPair();
+		this.nextPinKeyPair = generateInBackground();
 		this.retriesLeft = 8;
 		this.config = config;
 	}
@@ -74,6 +92,30 @@ public class PinState {
 		return pinKeyPair.getPublic();
 	}
 
+	/**
+	 * Whether the key pair that replaces the current one after a wrong PIN has been generated.
+	 */
+	public synchronized boolean isNextKeyAgreementKeyReady() {
+		return nextPinKeyPair.isDone();
+	}
+
+	/**
+	 * The number of key agreement key pairs that had to be generated inline because the next one
+	 * wasn't ready.
+	 */
+	public long inlineGenerations() {
+		return inlineGenerations.get();
+	}
+
+	/**
+	 * Stops generating key agreement key pairs in the background. Later replacements are
+	 * generated inline.
+	 */
+	@Override
+	public synchronized void close() {
+		keyGenerator.shutdownNow();
+	}
+
 	public Ctap2ResponseCode setNewPin(PublicKey hostKey, byte[] encryptedPin, byte[] auth) {
 		if (isPinSet()) {
 			return Ctap2ResponseCode.PIN_AUTH_INVALID;
@@ -83,7 +125,7 @@ public class PinState {
 			byte[] sharedSecret = deriveSharedSecret(hostKey);
 			SecretKey hmacKey = new SecretKeySpec(sharedSecret, "HMACSHA256");
 
-			Mac hmac = Mac.getInstance("HMACSHA256", securityProvider);
+			Mac hmac = hmacs.get();
 			hmac.init(hmacKey);
 			byte[] mac = hmac.doFinal(encryptedPin);
 			byte[] expectedAuth = new byte[16];
@@ -96,7 +138,7 @@ public class PinState {
 
 			SecretKey aesKey = new SecretKeySpec(sharedSecret, "AES");
 			IvParameterSpec iv = new IvParameterSpec(new byte[16]); // yes, the spec really uses an all-zero IV
-			Cipher aes = Cipher.getInstance("AES/CBC/NoPadding");
+			Cipher aes = aesCiphers.get();
 			aes.init(Cipher.DECRYPT_MODE, aesKey, iv);
 			byte[] newPinPadded = aes.doFinal(encryptedPin);
 			
@@ -130,7 +172,7 @@ public class PinState {
 			byte[] sharedSecret = deriveSharedSecret(hostKey);
 			SecretKey hmacKey = new SecretKeySpec(sharedSecret, "HMACSHA256");
 
-			Mac hmac = Mac.getInstance("HMACSHA256", securityProvider);
+			Mac hmac = hmacs.get();
 			hmac.init(hmacKey);
 			hmac.update(encryptedNewPin);
 			hmac.update(encryptedPinHash);
@@ -147,14 +189,14 @@ public class PinState {
 
 			SecretKey aesKey = new SecretKeySpec(sharedSecret, "AES");
 			IvParameterSpec iv = new IvParameterSpec(new byte[16]); // yes, the spec really uses an all-zero IV
-			Cipher aes = Cipher.getInstance("AES/CBC/NoPadding");
+			Cipher aes = aesCiphers.get();
 			aes.init(Cipher.DECRYPT_MODE, aesKey, iv);
 			byte[] pinHash = aes.doFinal(encryptedPinHash);
 			
 			if (!MessageDigest.isEqual(pinHash, config.pinHash().get())) {
 				log.info("Encrypted PIN hash doesn't match stored PIN hash");
 				log.info("Generating a new key agreement keypair");
-				pinKeyPair = generateP256KeyPair();
+				regenerateKeyAgreementKey();
 				
 				if (retriesLeft == 0) {
 					return Ctap2ResponseCode.PIN_BLOCKED;
@@ -164,8 +206,7 @@ public class PinState {
 			
 			retriesLeft++;
 
-			Cipher aes2 = Cipher.getInstance("AES/CBC/NoPadding");
-			aes2.init(Cipher.DECRYPT_MODE, aesKey, iv);
+			aes.init(Cipher.DECRYPT_MODE, aesKey, iv);
 			byte[] newPinPadded = aes.doFinal(encryptedNewPin);
 			
 			int lastPinIndex = newPinPadded.length -1;
@@ -201,7 +242,7 @@ public class PinState {
 
 			SecretKey aesKey = new SecretKeySpec(sharedSecret, "AES");
 			IvParameterSpec iv = new IvParameterSpec(new byte[16]); // yes, the spec really uses an all-zero IV
-			Cipher aes = Cipher.getInstance("AES/CBC/NoPadding");
+			Cipher aes = aesCiphers.get();
 			aes.init(Cipher.DECRYPT_MODE, aesKey, iv);
 			byte[] pinHash = aes.doFinal(encryptedPinHash);
 			
@@ -212,7 +253,7 @@ public class PinState {
 			if (!MessageDigest.isEqual(pinHash, config.pinHash().get())) {
 				log.info("Encrypted PIN hash doesn't match stored PIN hash");
 				log.info("Generating a new key agreement keypair");
-				pinKeyPair = generateP256KeyPair();
+				regenerateKeyAgreementKey();
 				
 				if (retriesLeft == 0) {
 					return Result.err(Ctap2ResponseCode.PIN_BLOCKED);
@@ -222,9 +263,8 @@ public class PinState {
 			
 			retriesLeft++;
 			
-			Cipher aes2 = Cipher.getInstance("AES/CBC/NoPadding");
-			aes2.init(Cipher.ENCRYPT_MODE, aesKey, iv);
-			byte[] encryptedPinToken = aes2.doFinal(pinToken);
+			aes.init(Cipher.ENCRYPT_MODE, aesKey, iv);
+			byte[] encryptedPinToken = aes.doFinal(pinToken);
 			return Result.ok(encryptedPinToken);
 
 		} catch (Exception e) {
@@ -241,7 +281,7 @@ public class PinState {
 
 		try {
 			SecretKey hmacKey = new SecretKeySpec(pinToken, "HMACSHA256");
-			Mac hmac = Mac.getInstance("HMACSHA256", securityProvider);
+			Mac hmac = hmacs.get();
 			hmac.init(hmacKey);
 			hmac.update(clientDataHash);
 			byte[] mac = hmac.doFinal();
@@ -257,14 +297,88 @@ public class PinState {
 			retriesLeft = 8;
 			return Optional.empty();
 			
-		} catch (NoSuchAlgorithmException | InvalidKeyException e) {
+		} catch (InvalidKeyException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Decrypts the salts of an hmac-secret extension after checking saltAuth. The shared secret
+	 * is cached per host key until the key agreement key pair is replaced, so hosts that call
+	 * the extension repeatedly don't pay for ECDH each time.
+	 */
+	public Result<HmacSecret, Ctap2ResponseCode> decryptHmacSecretSalts(HmacSecretInput input) {
+		byte[] saltEnc = input.saltEnc();
+		if (saltEnc.length != HmacSecret.SALT_LENGTH && saltEnc.length != 2 * HmacSecret.SALT_LENGTH) {
+			return Result.err(Ctap2ResponseCode.INVALID_LENGTH);
+		}
+		try {
+			byte[] sharedSecret = cachedSharedSecret(input.keyAgreementX(), input.keyAgreementY());
+
+			Mac hmac = hmacs.get();
+			hmac.init(new SecretKeySpec(sharedSecret, "HMACSHA256"));
+			byte[] expectedAuth = Arrays.copyOf(hmac.doFinal(saltEnc), 16);
+			if (!MessageDigest.isEqual(expectedAuth, input.saltAuth())) {
+				log.info("hmac-secret salt auth doesn't match");
+				return Result.err(Ctap2ResponseCode.PIN_AUTH_INVALID);
+			}
+
+			IvParameterSpec iv = new IvParameterSpec(new byte[16]);
+			Cipher aes = aesCiphers.get();
+			aes.init(Cipher.DECRYPT_MODE, new SecretKeySpec(sharedSecret, "AES"), iv);
+			return Result.ok(new HmacSecret(sharedSecret, aes.doFinal(saltEnc)));
+		} catch (GeneralSecurityException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	private synchronized byte[] cachedSharedSecret(byte[] hostX, byte[] hostY) throws GeneralSecurityException {
+		ByteBuffer hostKey = ByteBuffer.wrap(Bytes.concat(hostX, hostY));
+		byte[] sharedSecret = sharedSecrets.get(hostKey);
+		if (Objects.isNull(sharedSecret)) {
+			sharedSecret = deriveSharedSecret(CryptoBackends.current().decodeKeyAgreementKey(hostX, hostY));
+			sharedSecrets.put(hostKey, sharedSecret);
+		}
+		return sharedSecret;
+	}
+
+	/**
+	 * Replaces the key agreement key pair with the one generated in the background after the
+	 * previous replacement, so the reply to a wrong PIN doesn't wait for key generation. If it
+	 * isn't ready yet, a key pair is generated inline.
+	 */
+	private synchronized void regenerateKeyAgreementKey() {
+		KeyPair keyPair = null;
+		if (nextPinKeyPair.isDone()) {
+			try {
+				keyPair = nextPinKeyPair.get();
+			} catch (ExecutionException e) {
+				log.error("Unable to pre-generate a key agreement key pair", e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			nextPinKeyPair = generateInBackground();
+		}
+		if (Objects.isNull(keyPair)) {
+			inlineGenerations.incrementAndGet();
+			log.info("No key agreement key pair ready, generating inline");
+			keyPair = CryptoBackends.current().generateKeyAgreementKeyPair();
+		}
+		pinKeyPair = keyPair;
+		sharedSecrets.clear();
+	}
+
+	private Future<KeyPair> generateInBackground() {
+		if (keyGenerator.isShutdown()) {
+			// never completes, so every later replacement is generated inline
+			return new CompletableFuture<>();
+		}
+		return keyGenerator.submit(() -> CryptoBackends.current().generateKeyAgreementKeyPair());
+	}
+
 	private byte[] deriveSharedSecret(PublicKey hostKey) {
 		try {
-			KeyAgreement ka = KeyAgreement.getInstance("ECDH", securityProvider);
+			KeyAgreement ka = keyAgreements.get();
 			ka.init(pinKeyPair.getPrivate());
 			ka.doPhase(hostKey, true);
 			byte[] secret = ka.generateSecret();
@@ -0,0 +1,43 @@
+package com.github.mphi_rc.fido2.authenticator;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class Transaction {
+
+	public enum Phase {
+		PROCESSING,
+		USER_PRESENCE_NEEDED;
+	}
+
+	private final CountDownLatch cancellation;
+	private volatile Phase phase;
+
+	public Transaction() {
+		this.cancellation = new CountDownLatch(1);
+		this.phase = Phase.PROCESSING;
+	}
+
+	public Phase phase() {
+		return phase;
+	}
+
+	public void enter(Phase phase) {
+		this.phase = phase;
+	}
+
+	public void cancel() {
+		cancellation.countDown();
+	}
+
+	public boolean isCancelled() {
+		return cancellation.getCount() == 0;
+	}
+
+	/**
+	 * Waits up to the given time for the transaction to be cancelled, returning early if it is.
+	 */
+	public boolean awaitCancellation(long millis) throws InterruptedException {
+		return cancellation.await(millis, TimeUnit.MILLISECONDS);
+	}
+}
@@ -1,7 +1,9 @@
 package com.github.mphi_rc.fido2.authenticator.crypto;
 
 import java.io.ByteArrayOutputStream;
+import java.security.PrivateKey;
 import java.util.List;
+import java.util.Optional;
 
 import com.github.mphi_rc.fido2.protocol.ctap2.AuthenticatorData;
 
@@ -13,21 +15,55 @@ public interface AttestationKeyPair {
 	byte[] publicKey();
 	byte[] privateKey();
 	List<DataItem> getCborEncodedPublicKey();
-	byte[] sign(AuthenticatorData authData, byte[] clientDataHash);
 
-	default byte[] encodeAttestedCredentialData(byte[] aaguid, byte[] credentialId) {
+	/**
+	 * The public key as an encoded COSE key, recorded when the key pair is generated. Key pairs
+	 * stored before it was recorded fall back to {@link #getCborEncodedPublicKey()}.
+	 */
+	Optional<byte[]> coseKey();
+
+	/**
+	 * Returns this key pair with {@link #coseKey()} recorded, deriving it if it's missing.
+	 */
+	AttestationKeyPair withCoseKeyRecorded();
+
+	/**
+	 * Parses the encoded private key into a key object that {@link #sign(PrivateKey, AuthenticatorData, byte[])}
+	 * accepts. Callers that sign repeatedly with the same credential should keep the result.
+	 */
+	PrivateKey decodePrivateKey();
+
+	byte[] sign(PrivateKey privateKey, AuthenticatorData authData, byte[] clientDataHash);
+
+	default byte[] sign(AuthenticatorData authData, byte[] clientDataHash) {
+		return sign(decodePrivateKey(), authData, clientDataHash);
+	}
+
+	/**
+	 * Returns the encoded COSE key in a new array that the caller may keep or modify.
+	 */
+	default byte[] encodeCosePublicKey() {
+		if (coseKey().isPresent()) {
+			return coseKey().get().clone();
+		}
 		try {
-			byte credIdLengthHigh = (byte) (credentialId.length & 0xFF00);
-			byte credIdLengthLow = (byte) (credentialId.length & 0x00FF);
 			ByteArrayOutputStream encoded = new ByteArrayOutputStream();
-			encoded.write(aaguid);
-			encoded.write(credIdLengthHigh);
-			encoded.write(credIdLengthLow);
-			encoded.write(credentialId);
 			new CborEncoder(encoded).encode(getCborEncodedPublicKey());
 			return encoded.toByteArray();
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
 	}
+
+	default byte[] encodeAttestedCredentialData(byte[] aaguid, byte[] credentialId) {
+		// only read here, so the recorded key isn't copied first
+		byte[] coseKey = coseKey().orElseGet(this::encodeCosePublicKey);
+		byte[] encoded = new byte[aaguid.length + 2 + credentialId.length + coseKey.length];
+		System.arraycopy(aaguid, 0, encoded, 0, aaguid.length);
+		encoded[aaguid.length] = (byte) (credentialId.length >> 8);
+		encoded[aaguid.length + 1] = (byte) (credentialId.length & 0x00FF);
+		System.arraycopy(credentialId, 0, encoded, aaguid.length + 2, credentialId.length);
+		System.arraycopy(coseKey, 0, encoded, aaguid.length + 2 + credentialId.length, coseKey.length);
+		return encoded;
+	}
 }
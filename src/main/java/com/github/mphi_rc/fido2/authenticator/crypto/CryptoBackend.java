@@ -0,0 +1,42 @@
+package com.github.mphi_rc.fido2.authenticator.crypto;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+
+/**
+ * The primitives the authenticator needs: credential key generation and signing, the P-256 key
+ * agreement of the PIN protocol, HMAC-SHA-256 and AES-CBC. Keys are exchanged in their standard
+ * PKCS#8 and X.509 encodings, so credentials created under one backend can be used by another.
+ * Failures of the underlying provider are rethrown as runtime exceptions.
+ */
+public interface CryptoBackend {
+
+	KeyPair generateKeyPair(Algorithm algorithm);
+
+	PrivateKey decodePrivateKey(Algorithm algorithm, byte[] pkcs8);
+
+	/**
+	 * Returns this thread's signing engine for the algorithm. It is reused by later calls on the
+	 * same thread, so callers initialise it before each signature.
+	 */
+	Signature signature(Algorithm algorithm);
+
+	KeyPair generateKeyAgreementKeyPair();
+
+	/**
+	 * Builds a P-256 public key from the affine coordinates a host sends in a COSE key.
+	 */
+	PublicKey decodeKeyAgreementKey(byte[] x, byte[] y);
+
+	KeyAgreement newKeyAgreement();
+
+	Mac newHmacSha256();
+
+	Cipher newAesCbc();
+}
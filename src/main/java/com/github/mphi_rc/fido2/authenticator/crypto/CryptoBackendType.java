@@ -0,0 +1,22 @@
+package com.github.mphi_rc.fido2.authenticator.crypto;
+
+public enum CryptoBackendType {
+
+	/**
+	 * BouncyCastle for everything, including Ed25519.
+	 */
+	BOUNCY_CASTLE,
+
+	/**
+	 * The JDK's built-in providers: SunEC for P-256, SunJCE for HMAC and AES, and the EdDSA
+	 * provider for Ed25519. The code still builds for Java 8, but Ed25519 keys can only be used
+	 * on a Java 15 or later runtime.
+	 */
+	JDK,
+
+	/**
+	 * net.i2p.crypto eddsa for Ed25519 and BouncyCastle for the rest, as the authenticator has
+	 * always done.
+	 */
+	I2P;
+}
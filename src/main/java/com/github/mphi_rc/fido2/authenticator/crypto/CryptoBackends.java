@@ -0,0 +1,44 @@
+package com.github.mphi_rc.fido2.authenticator.crypto;
+
+import java.util.Optional;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import net.i2p.crypto.eddsa.EdDSASecurityProvider;
+
+/**
+ * Creates the backends and holds the one in use. Key pairs are deserialised without any context,
+ * so the selection is process-wide and made once at startup from the configuration.
+ */
+public class CryptoBackends {
+
+	private static volatile CryptoBackend current = create(CryptoBackendType.I2P);
+
+	private CryptoBackends() {}
+
+	public static CryptoBackend current() {
+		return current;
+	}
+
+	public static void select(CryptoBackendType type) {
+		current = create(type);
+	}
+
+	public static CryptoBackend create(CryptoBackendType type) {
+		switch (type) {
+		case BOUNCY_CASTLE:
+			BouncyCastleProvider bouncyCastle = new BouncyCastleProvider();
+			return new JcaCryptoBackend(Optional.of(bouncyCastle), "Ed25519", "Ed25519",
+					Optional.of(bouncyCastle), "SHA256withECDDSA", Optional.of(bouncyCastle));
+		case JDK:
+			return new JcaCryptoBackend(Optional.empty(), "Ed25519", "Ed25519",
+					Optional.empty(), "SHA256withECDSA", Optional.empty());
+		case I2P:
+			BouncyCastleProvider rest = new BouncyCastleProvider();
+			return new JcaCryptoBackend(Optional.of(new EdDSASecurityProvider()), "EdDSA", "NONEwithEdDSA",
+					Optional.of(rest), "SHA256withECDDSA", Optional.of(rest));
+		default:
+			throw new IllegalArgumentException("Unknown crypto backend " + type);
+		}
+	}
+}
@@ -2,10 +2,12 @@ package com.github.mphi_rc.fido2.authenticator.crypto;
 
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
+import java.security.PrivateKey;
 import java.security.Signature;
-import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 
 import org.immutables.gson.Gson;
 import org.immutables.value.Value;
@@ -13,31 +15,40 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.mphi_rc.fido2.protocol.ctap2.AuthenticatorData;
+import com.github.mphi_rc.fido2.protocol.ctap2.CborWriter;
 
 import co.nstant.in.cbor.CborBuilder;
 import co.nstant.in.cbor.model.DataItem;
-import net.i2p.crypto.eddsa.EdDSAPrivateKey;
 import net.i2p.crypto.eddsa.EdDSAPublicKey;
-import net.i2p.crypto.eddsa.EdDSASecurityProvider;
 
 @Gson.TypeAdapters
 @Value.Immutable
 public abstract class Ed25519AttestationKeyPair implements AttestationKeyPair {
 
 	private static final Logger log = LoggerFactory.getLogger(Ed25519AttestationKeyPair.class);
-	
+	private static final int PUBLIC_KEY_LENGTH = 32;
+	private static final byte[] COSE_KEY_PREFIX = new CborWriter(16)
+			.writeMapHeader(4)
+			.writeInteger(CoseKeyConstants.KEY_TYPE).writeInteger(CoseKeyConstants.OCTET_KEY_PAIR)
+			.writeInteger(CoseKeyConstants.ALGORITHM).writeInteger(CoseKeyConstants.EDDSA)
+			.writeInteger(CoseKeyConstants.CURVE).writeInteger(CoseKeyConstants.ED25519)
+			.writeInteger(CoseKeyConstants.X_COORDINATE)
+			.toByteArray();
+
 	public static Ed25519AttestationKeyPair generate() {
 		log.trace("Generating new Ed25519 key pair");
-		try {
-			java.security.KeyPairGenerator gen = java.security.KeyPairGenerator.getInstance("EdDSA", new EdDSASecurityProvider());
-			KeyPair keyPair = gen.generateKeyPair();
-			return ImmutableEd25519AttestationKeyPair.builder()
-					.privateKey(keyPair.getPrivate().getEncoded())
-					.publicKey(keyPair.getPublic().getEncoded())
-					.build();
-		} catch (GeneralSecurityException e) {
-			throw new RuntimeException(e);
-		}
+		KeyPair keyPair = CryptoBackends.current().generateKeyPair(Algorithm.Ed25519);
+		byte[] publicKey = keyPair.getPublic().getEncoded();
+		// every X.509 encoding of an Ed25519 key ends with the raw 32 byte key
+		byte[] rawPublicKey = Arrays.copyOfRange(publicKey, publicKey.length - PUBLIC_KEY_LENGTH, publicKey.length);
+		return ImmutableEd25519AttestationKeyPair.builder()
+				.privateKey(keyPair.getPrivate().getEncoded())
+				.publicKey(publicKey)
+				.coseKey(new CborWriter(COSE_KEY_PREFIX.length + 2 + PUBLIC_KEY_LENGTH)
+						.writeRaw(COSE_KEY_PREFIX)
+						.writeByteString(rawPublicKey)
+						.toByteArray())
+				.build();
 	}
 
 	@Value.Derived
@@ -52,6 +63,15 @@ public abstract class Ed25519AttestationKeyPair implements AttestationKeyPair {
 	@Override
 	public abstract byte[] privateKey();
 
+	@Value.Auxiliary
+	@Override
+	public abstract Optional<byte[]> coseKey();
+
+	@Override
+	public Ed25519AttestationKeyPair withCoseKeyRecorded() {
+		return coseKey().isPresent() ? this : ImmutableEd25519AttestationKeyPair.copyOf(this).withCoseKey(encodeCosePublicKey());
+	}
+
 	@Value.Lazy
 	@Override
 	public List<DataItem> getCborEncodedPublicKey() {
@@ -74,11 +94,15 @@ public abstract class Ed25519AttestationKeyPair implements AttestationKeyPair {
 	}
 
 	@Override
-	public byte[] sign(AuthenticatorData authData, byte[] clientDataHash) {
+	public PrivateKey decodePrivateKey() {
+		return CryptoBackends.current().decodePrivateKey(Algorithm.Ed25519, privateKey());
+	}
+
+	@Override
+	public byte[] sign(PrivateKey privateKey, AuthenticatorData authData, byte[] clientDataHash) {
 		log.trace("Creating raw EdDSA signature for authenticator data {} and client data hash {}", authData, clientDataHash);
 		try {
-			Signature signature = Signature.getInstance("NONEwithEdDSA", new EdDSASecurityProvider());
-			EdDSAPrivateKey privateKey = new EdDSAPrivateKey(new PKCS8EncodedKeySpec(privateKey()));
+			Signature signature = CryptoBackends.current().signature(Algorithm.Ed25519);
 			signature.initSign(privateKey);
 			signature.update(authData.asBytes());
 			signature.update(clientDataHash);
@@ -0,0 +1,185 @@
+package com.github.mphi_rc.fido2.authenticator.crypto;
+
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+
+/**
+ * A backend built on JCA providers. Each group of operations uses the given provider, or the
+ * JDK's preferred one when it's empty.
+ */
+public class JcaCryptoBackend implements CryptoBackend {
+
+	private static final String EC_KEY_ALGORITHM = "EC";
+	private static final String EC_CURVE = "secp256r1";
+
+	private final Optional<Provider> ed25519Provider;
+	private final String ed25519KeyAlgorithm;
+	private final String ed25519SignatureAlgorithm;
+	private final Optional<Provider> ecProvider;
+	private final String ecdsaSignatureAlgorithm;
+	private final Optional<Provider> symmetricProvider;
+	private final ThreadLocal<Map<Algorithm, Signature>> signatures;
+	private final ThreadLocal<KeyFactory> ecKeyFactories;
+	private final ECParameterSpec p256;
+
+	public JcaCryptoBackend(Optional<Provider> ed25519Provider, String ed25519KeyAlgorithm, String ed25519SignatureAlgorithm,
+			Optional<Provider> ecProvider, String ecdsaSignatureAlgorithm, Optional<Provider> symmetricProvider) {
+		this.ed25519Provider = ed25519Provider;
+		this.ed25519KeyAlgorithm = ed25519KeyAlgorithm;
+		this.ed25519SignatureAlgorithm = ed25519SignatureAlgorithm;
+		this.ecProvider = ecProvider;
+		this.ecdsaSignatureAlgorithm = ecdsaSignatureAlgorithm;
+		this.symmetricProvider = symmetricProvider;
+		this.signatures = ThreadLocal.withInitial(() -> new EnumMap<>(Algorithm.class));
+		this.ecKeyFactories = ThreadLocal.withInitial(() -> {
+			try {
+				return keyFactory(EC_KEY_ALGORITHM, ecProvider);
+			} catch (GeneralSecurityException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		try {
+			AlgorithmParameters parameters = ecProvider.isPresent()
+					? AlgorithmParameters.getInstance(EC_KEY_ALGORITHM, ecProvider.get())
+					: AlgorithmParameters.getInstance(EC_KEY_ALGORITHM);
+			parameters.init(new ECGenParameterSpec(EC_CURVE));
+			this.p256 = parameters.getParameterSpec(ECParameterSpec.class);
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public KeyPair generateKeyPair(Algorithm algorithm) {
+		try {
+			switch (algorithm) {
+			case Ed25519:
+				return keyPairGenerator(ed25519KeyAlgorithm, ed25519Provider).generateKeyPair();
+			default:
+				return generateKeyAgreementKeyPair();
+			}
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public PrivateKey decodePrivateKey(Algorithm algorithm, byte[] pkcs8) {
+		try {
+			switch (algorithm) {
+			case Ed25519:
+				return keyFactory(ed25519KeyAlgorithm, ed25519Provider).generatePrivate(new PKCS8EncodedKeySpec(pkcs8));
+			default:
+				return ecKeyFactories.get().generatePrivate(new PKCS8EncodedKeySpec(pkcs8));
+			}
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public Signature signature(Algorithm algorithm) {
+		return signatures.get().computeIfAbsent(algorithm, a -> {
+			try {
+				switch (a) {
+				case Ed25519:
+					return ed25519Provider.isPresent()
+							? Signature.getInstance(ed25519SignatureAlgorithm, ed25519Provider.get())
+							: Signature.getInstance(ed25519SignatureAlgorithm);
+				default:
+					return ecProvider.isPresent()
+							? Signature.getInstance(ecdsaSignatureAlgorithm, ecProvider.get())
+							: Signature.getInstance(ecdsaSignatureAlgorithm);
+				}
+			} catch (GeneralSecurityException e) {
+				throw new RuntimeException(e);
+			}
+		});
+	}
+
+	@Override
+	public KeyPair generateKeyAgreementKeyPair() {
+		try {
+			KeyPairGenerator generator = keyPairGenerator(EC_KEY_ALGORITHM, ecProvider);
+			generator.initialize(p256);
+			return generator.generateKeyPair();
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public PublicKey decodeKeyAgreementKey(byte[] x, byte[] y) {
+		try {
+			ECPoint point = new ECPoint(new BigInteger(1, x), new BigInteger(1, y));
+			return ecKeyFactories.get().generatePublic(new ECPublicKeySpec(point, p256));
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public KeyAgreement newKeyAgreement() {
+		try {
+			return ecProvider.isPresent()
+					? KeyAgreement.getInstance("ECDH", ecProvider.get())
+					: KeyAgreement.getInstance("ECDH");
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public Mac newHmacSha256() {
+		try {
+			return symmetricProvider.isPresent()
+					? Mac.getInstance("HmacSHA256", symmetricProvider.get())
+					: Mac.getInstance("HmacSHA256");
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public Cipher newAesCbc() {
+		try {
+			return symmetricProvider.isPresent()
+					? Cipher.getInstance("AES/CBC/NoPadding", symmetricProvider.get())
+					: Cipher.getInstance("AES/CBC/NoPadding");
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static KeyPairGenerator keyPairGenerator(String algorithm, Optional<Provider> provider) throws GeneralSecurityException {
+		return provider.isPresent()
+				? KeyPairGenerator.getInstance(algorithm, provider.get())
+				: KeyPairGenerator.getInstance(algorithm);
+	}
+
+	private static KeyFactory keyFactory(String algorithm, Optional<Provider> provider) throws GeneralSecurityException {
+		return provider.isPresent()
+				? KeyFactory.getInstance(algorithm, provider.get())
+				: KeyFactory.getInstance(algorithm);
+	}
+}
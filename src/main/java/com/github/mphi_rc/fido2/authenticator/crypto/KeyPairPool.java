@@ -0,0 +1,128 @@
+package com.github.mphi_rc.fido2.authenticator.crypto;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Holds key pairs generated ahead of time for each enabled algorithm, so registration doesn't
+ * wait for key generation. A background thread fills the pools up to their depth, then tops them
+ * up once no key has been taken for a moment, so a burst of registrations isn't slowed down by
+ * generation competing for the CPU. The thread asks for minimum priority, but that is only a
+ * hint: Linux JVMs ignore it by default. If a pool is empty the key is generated inline and
+ * counted in {@link #inlineGenerations()}.
+ */
+public class KeyPairPool implements AutoCloseable {
+
+	private static final Logger log = LoggerFactory.getLogger(KeyPairPool.class);
+	private static final long IDLE_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+	private final Map<Algorithm, BlockingQueue<AttestationKeyPair>> pools;
+	private final AtomicLong inlineGenerations;
+	private final Optional<ScheduledExecutorService> filler;
+	private ScheduledFuture<?> pendingRefill;
+
+	public static AttestationKeyPair generate(Algorithm algorithm) {
+		switch (algorithm) {
+		case Ed25519:
+			return Ed25519AttestationKeyPair.generate();
+		case P256_ECDSA:
+			return P256AttestationKeyPair.generate();
+		default:
+			throw new IllegalArgumentException("Unknown algorithm " + algorithm);
+		}
+	}
+
+	public KeyPairPool(Collection<Algorithm> algorithms, int depth) {
+		this.pools = new EnumMap<>(Algorithm.class);
+		this.inlineGenerations = new AtomicLong();
+		if (depth > 0) {
+			for (Algorithm algorithm : algorithms) {
+				pools.put(algorithm, new ArrayBlockingQueue<>(depth));
+			}
+			ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+					.setNameFormat("keypair-pool-%d")
+					.setDaemon(true)
+					.setPriority(Thread.MIN_PRIORITY)
+					.build());
+			executor.execute(this::topUp);
+			this.filler = Optional.of(executor);
+		} else {
+			this.filler = Optional.empty();
+		}
+	}
+
+	public AttestationKeyPair take(Algorithm algorithm) {
+		BlockingQueue<AttestationKeyPair> pool = pools.get(algorithm);
+		AttestationKeyPair keyPair = Objects.isNull(pool) ? null : pool.poll();
+		if (Objects.isNull(keyPair)) {
+			long count = inlineGenerations.incrementAndGet();
+			log.info("Key pair pool for {} is empty, generating inline ({} times so far)", algorithm, count);
+			keyPair = generate(algorithm);
+		}
+		scheduleRefill();
+		return keyPair;
+	}
+
+	/**
+	 * The number of key pairs that had to be generated inline because their pool was empty.
+	 */
+	public long inlineGenerations() {
+		return inlineGenerations.get();
+	}
+
+	/**
+	 * The number of pre-generated key pairs ready for an algorithm.
+	 */
+	public int available(Algorithm algorithm) {
+		BlockingQueue<AttestationKeyPair> pool = pools.get(algorithm);
+		return Objects.isNull(pool) ? 0 : pool.size();
+	}
+
+	/**
+	 * Stops the background thread. Keys can still be taken, but are generated inline once the
+	 * pools run dry.
+	 */
+	@Override
+	public synchronized void close() {
+		filler.ifPresent(ExecutorService::shutdownNow);
+	}
+
+	private synchronized void scheduleRefill() {
+		if (!filler.isPresent() || filler.get().isShutdown()) {
+			return;
+		}
+		// every take pushes the refill back, so it only runs once registrations have paused
+		if (Objects.nonNull(pendingRefill)) {
+			pendingRefill.cancel(false);
+		}
+		pendingRefill = filler.get().schedule(this::topUp, IDLE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	private void topUp() {
+		try {
+			for (Map.Entry<Algorithm, BlockingQueue<AttestationKeyPair>> pool : pools.entrySet()) {
+				while (pool.getValue().remainingCapacity() > 0 && !Thread.currentThread().isInterrupted()) {
+					pool.getValue().offer(generate(pool.getKey()));
+				}
+			}
+		} catch (RuntimeException e) {
+			log.error("Unable to pre-generate key pairs", e);
+		}
+	}
+}
@@ -1,19 +1,16 @@
 package com.github.mphi_rc.fido2.authenticator.crypto;
 
-import java.security.AlgorithmParameters;
 import java.security.KeyFactory;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
-import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.Provider;
 import java.security.PublicKey;
 import java.security.Signature;
-import java.security.spec.ECGenParameterSpec;
-import java.security.spec.InvalidKeySpecException;
-import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECPoint;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.List;
+import java.util.Optional;
 import java.util.function.Supplier;
 
 import org.bouncycastle.crypto.params.ECPublicKeyParameters;
@@ -21,12 +18,14 @@ import org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPublicKey;
 import org.bouncycastle.jcajce.provider.asymmetric.util.ECUtil;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.math.ec.ECFieldElement;
+import org.bouncycastle.util.BigIntegers;
 import org.immutables.gson.Gson;
 import org.immutables.value.Value;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.mphi_rc.fido2.protocol.ctap2.AuthenticatorData;
+import com.github.mphi_rc.fido2.protocol.ctap2.CborWriter;
 import com.google.common.base.Suppliers;
 
 import co.nstant.in.cbor.CborBuilder;
@@ -37,42 +36,40 @@ import co.nstant.in.cbor.model.DataItem;
 public abstract class P256AttestationKeyPair implements AttestationKeyPair {
 
 	private static final Logger log = LoggerFactory.getLogger(P256AttestationKeyPair.class);
+	// stored public keys may use compressed points, which only BouncyCastle decodes
 	private static final Provider securityProvider = new BouncyCastleProvider();
-	private static final String JCE_SIGNATURE_ALGORITHM = "SHA256withECDDSA";
-	private static final String JCE_NAMED_CURVE = "P-256";
 	private static final String JCE_KEY_ALGORITHM = "EC";
-
-	private Supplier<PrivateKey> jcePrivateKey = Suppliers.memoize(() -> {
-		try {
-			KeyFactory kf = KeyFactory.getInstance(JCE_KEY_ALGORITHM, securityProvider);
-			return kf.generatePrivate(new PKCS8EncodedKeySpec(privateKey()));
-		} catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
-			throw new RuntimeException(e);
-		}
-	});
+	private static final int COORDINATE_LENGTH = 32;
+	private static final byte[] COSE_KEY_PREFIX = new CborWriter(16)
+			.writeMapHeader(5)
+			.writeInteger(CoseKeyConstants.KEY_TYPE).writeInteger(CoseKeyConstants.ELLIPTIC_CURVE_X_Y_COORDS)
+			.writeInteger(CoseKeyConstants.ALGORITHM).writeInteger(CoseKeyConstants.ES256)
+			.writeInteger(CoseKeyConstants.CURVE).writeInteger(CoseKeyConstants.P256)
+			.writeInteger(CoseKeyConstants.X_COORDINATE)
+			.toByteArray();
+
+	private Supplier<PrivateKey> jcePrivateKey = Suppliers.memoize(() ->
+			CryptoBackends.current().decodePrivateKey(Algorithm.P256_ECDSA, privateKey()));
 	
 	public static P256AttestationKeyPair generate() {
-		try {
-			log.trace("Generating new P-256 key pair");
-			AlgorithmParameters algParam = AlgorithmParameters.getInstance(JCE_KEY_ALGORITHM, securityProvider);
-			algParam.init(new ECGenParameterSpec(JCE_NAMED_CURVE));
-			ECGenParameterSpec parameterSpec = algParam.getParameterSpec(ECGenParameterSpec.class);
-
-			KeyPairGenerator generator = KeyPairGenerator.getInstance(JCE_KEY_ALGORITHM, securityProvider);
-			generator.initialize(parameterSpec);
-			KeyPair keyPair = generator.generateKeyPair();
-
-			PrivateKey privateKey = keyPair.getPrivate();
-			BCECPublicKey publicKey = (BCECPublicKey) keyPair.getPublic();
-			publicKey.setPointFormat("COMPRESSED");
-
-			return ImmutableP256AttestationKeyPair.builder()
-					.privateKey(privateKey.getEncoded())
-					.publicKey(publicKey.getEncoded())
-					.build();
-		} catch(Exception e) {
-			throw new RuntimeException(e);
+		log.trace("Generating new P-256 key pair");
+		KeyPair keyPair = CryptoBackends.current().generateKeyPair(Algorithm.P256_ECDSA);
+		PublicKey publicKey = keyPair.getPublic();
+		ECPoint w = ((ECPublicKey) publicKey).getW();
+		if (publicKey instanceof BCECPublicKey) {
+			((BCECPublicKey) publicKey).setPointFormat("COMPRESSED");
 		}
+
+		return ImmutableP256AttestationKeyPair.builder()
+				.privateKey(keyPair.getPrivate().getEncoded())
+				.publicKey(publicKey.getEncoded())
+				.coseKey(new CborWriter(COSE_KEY_PREFIX.length + 4 + 2 * COORDINATE_LENGTH)
+						.writeRaw(COSE_KEY_PREFIX)
+						.writeByteString(BigIntegers.asUnsignedByteArray(COORDINATE_LENGTH, w.getAffineX()))
+						.writeInteger(CoseKeyConstants.Y_COORDINATE)
+						.writeByteString(BigIntegers.asUnsignedByteArray(COORDINATE_LENGTH, w.getAffineY()))
+						.toByteArray())
+				.build();
 	}
 
 	@Value.Derived
@@ -87,6 +84,15 @@ public abstract class P256AttestationKeyPair implements AttestationKeyPair {
 	@Override
 	public abstract byte[] privateKey();
 
+	@Value.Auxiliary
+	@Override
+	public abstract Optional<byte[]> coseKey();
+
+	@Override
+	public P256AttestationKeyPair withCoseKeyRecorded() {
+		return coseKey().isPresent() ? this : ImmutableP256AttestationKeyPair.copyOf(this).withCoseKey(encodeCosePublicKey());
+	}
+
 	@Value.Lazy
 	@Override
 	public List<DataItem> getCborEncodedPublicKey() {
@@ -114,11 +120,16 @@ public abstract class P256AttestationKeyPair implements AttestationKeyPair {
 	}
 
 	@Override
-	public byte[] sign(AuthenticatorData authData, byte[] clientDataHash) {
+	public PrivateKey decodePrivateKey() {
+		return jcePrivateKey.get();
+	}
+
+	@Override
+	public byte[] sign(PrivateKey privateKey, AuthenticatorData authData, byte[] clientDataHash) {
 		log.trace("Creating ECDSA signature for authenticator data {} and client data hash {}", authData, clientDataHash);
 		try {
-			Signature signature = Signature.getInstance(JCE_SIGNATURE_ALGORITHM, securityProvider);
-			signature.initSign(jcePrivateKey.get());
+			Signature signature = CryptoBackends.current().signature(Algorithm.P256_ECDSA);
+			signature.initSign(privateKey);
 			signature.update(authData.asBytes());
 			signature.update(clientDataHash);
 			return signature.sign();
@@ -0,0 +1,46 @@
+package com.github.mphi_rc.fido2.authenticator.crypto;
+
+import java.nio.ByteBuffer;
+import java.security.PrivateKey;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps the decoded private keys of recently used credentials, keyed by credential ID, so that
+ * repeated assertions don't parse PKCS#8 or expand the Ed25519 seed again. The least recently
+ * used key is dropped once the cache is full.
+ */
+public class PrivateKeyCache {
+
+	public static final int DEFAULT_CAPACITY = 64;
+
+	private final Map<ByteBuffer, PrivateKey> keys;
+
+	public PrivateKeyCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public PrivateKeyCache(int capacity) {
+		this.keys = new LinkedHashMap<ByteBuffer, PrivateKey>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ByteBuffer, PrivateKey> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	public synchronized PrivateKey get(byte[] credentialId, AttestationKeyPair keyPair) {
+		ByteBuffer id = ByteBuffer.wrap(credentialId);
+		PrivateKey privateKey = keys.get(id);
+		if (Objects.isNull(privateKey)) {
+			privateKey = keyPair.decodePrivateKey();
+			keys.put(id, privateKey);
+		}
+		return privateKey;
+	}
+
+	public synchronized void invalidate(byte[] credentialId) {
+		keys.remove(ByteBuffer.wrap(credentialId));
+	}
+}
@@ -1,14 +1,16 @@
 package com.github.mphi_rc.fido2.authenticator.user;
 
+import com.github.mphi_rc.fido2.authenticator.Transaction;
+
 public class AlwaysAllowUserVerifier implements UserVerifier {
 
 	@Override
-	public boolean isRegistrationApproved(String relayingPartyId) {
+	public boolean isRegistrationApproved(String relayingPartyId, Transaction transaction) {
 		return true;
 	}
 
 	@Override
-	public boolean isAuthenticationApproved(String relayingPartyId) {
+	public boolean isAuthenticationApproved(String relayingPartyId, Transaction transaction) {
 		return true;
 	}
 
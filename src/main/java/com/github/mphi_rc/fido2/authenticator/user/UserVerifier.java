@@ -1,6 +1,8 @@
 package com.github.mphi_rc.fido2.authenticator.user;
 
+import com.github.mphi_rc.fido2.authenticator.Transaction;
+
 public interface UserVerifier {
-	boolean isRegistrationApproved(String relayingPartyId);
-	boolean isAuthenticationApproved(String relayingPartyId);
+	boolean isRegistrationApproved(String relayingPartyId, Transaction transaction);
+	boolean isAuthenticationApproved(String relayingPartyId, Transaction transaction);
 }
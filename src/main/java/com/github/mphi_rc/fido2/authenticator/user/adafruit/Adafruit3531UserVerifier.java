@@ -8,6 +8,7 @@ import static com.pi4j.io.i2c.I2CBus.BUS_1;
 
 import java.util.Arrays;
 
+import com.github.mphi_rc.fido2.authenticator.Transaction;
 import com.github.mphi_rc.fido2.authenticator.user.UserVerifier;
 import com.pi4j.io.gpio.GpioFactory;
 import com.pi4j.io.gpio.GpioPinDigitalInput;
@@ -36,16 +37,19 @@ public class Adafruit3531UserVerifier implements UserVerifier {
 		}
 	}
 
-	private boolean isApproved(String relayingPartyId, Operation operation) {
+	private boolean isApproved(String relayingPartyId, Operation operation, Transaction transaction) {
 		synchronized (stateMachine) {
 			try {
 				stateMachine.start(operation);
 
 				stateMachine.renderDisplay(display, relayingPartyId);
-				for (int second = 0; second < 5; second++) {
+				waiting: for (int second = 0; second < 5; second++) {
 					for (int crank = 0; crank < 10; crank++) {
 						stateMachine.renderDisplay(display, relayingPartyId);
-						Thread.sleep(100);
+						if (transaction.awaitCancellation(100)) {
+							stateMachine.setDecision(UserDecision.CANCELLED);
+							break waiting;
+						}
 					}
 					stateMachine.advanceTimeByASecond();
 				}
@@ -64,13 +68,13 @@ public class Adafruit3531UserVerifier implements UserVerifier {
 	}
 
 	@Override
-	public boolean isRegistrationApproved(String relayingPartyId) {
-		return isApproved(relayingPartyId, Operation.REGISTER);
+	public boolean isRegistrationApproved(String relayingPartyId, Transaction transaction) {
+		return isApproved(relayingPartyId, Operation.REGISTER, transaction);
 	}
 
 	@Override
-	public boolean isAuthenticationApproved(String relayingPartyId) {
-		return isApproved(relayingPartyId, Operation.AUTHENTICATE);
+	public boolean isAuthenticationApproved(String relayingPartyId, Transaction transaction) {
+		return isApproved(relayingPartyId, Operation.AUTHENTICATE, transaction);
 	}
 
 }
@@ -4,7 +4,8 @@ enum UserDecision {
 
 	TIMEOUT("DENIED (timed out)"),
 	ALLOW("ALLOWED"),
-	DENY("DENIED");
+	DENY("DENIED"),
+	CANCELLED("CANCELLED");
 
 	private String text;
 
@@ -0,0 +1,76 @@
+package com.github.mphi_rc.fido2.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.github.mphi_rc.fido2.protocol.usbhid.PacketView;
+import com.github.mphi_rc.fido2.protocol.usbhid.RawMessage;
+import com.google.common.base.Preconditions;
+
+/**
+ * Writes the init and continuation frames of a message straight into one reusable
+ * buffer. The returned buffer is only valid until the next call to {@link #encode}.
+ */
+public class FrameEncoder {
+
+	private static final int INIT_HEADER_SIZE = 7;
+	private static final int CONT_HEADER_SIZE = 5;
+	private static final int MAX_CONT_PACKETS = 128;
+	private static final int PACKET_TYPE_FLAG = 0x80;
+
+	private final int packetSize;
+	private final int initSpace;
+	private final int contSpace;
+	private final byte[] frames;
+	private final ByteBuffer buffer;
+
+	public FrameEncoder() {
+		this.packetSize = PacketView.PACKET_SIZE;
+		this.initSpace = packetSize - INIT_HEADER_SIZE;
+		this.contSpace = packetSize - CONT_HEADER_SIZE;
+		this.frames = new byte[packetSize * (1 + MAX_CONT_PACKETS)];
+		this.buffer = ByteBuffer.wrap(frames);
+	}
+
+	public int maxMessageLength() {
+		return initSpace + MAX_CONT_PACKETS * contSpace;
+	}
+
+	public int numPacketsRequired(int payloadSize) {
+		if (initSpace >= payloadSize) {
+			return 1;
+		}
+		int remainingPayloadLength = payloadSize - initSpace;
+		return 1 + (remainingPayloadLength + contSpace - 1) / contSpace;
+	}
+
+	public ByteBuffer encode(RawMessage m) {
+		byte[] channel = m.channelId().id();
+		byte[] payload = m.payload();
+		Preconditions.checkArgument(payload.length <= maxMessageLength(), "Message length too big");
+
+		int numPackets = numPacketsRequired(payload.length);
+		int end = numPackets * packetSize;
+		Arrays.fill(frames, 0, end, (byte) 0);
+
+		System.arraycopy(channel, 0, frames, 0, 4);
+		frames[4] = (byte) (m.command().asByte() | PACKET_TYPE_FLAG);
+		frames[5] = (byte) (payload.length >> 8);
+		frames[6] = (byte) payload.length;
+		int payloadOffset = Math.min(payload.length, initSpace);
+		System.arraycopy(payload, 0, frames, INIT_HEADER_SIZE, payloadOffset);
+
+		for (int seq = 0; seq < numPackets - 1; seq++) {
+			int frameOffset = (seq + 1) * packetSize;
+			int length = Math.min(payload.length - payloadOffset, contSpace);
+			System.arraycopy(channel, 0, frames, frameOffset, 4);
+			frames[frameOffset + 4] = (byte) seq;
+			System.arraycopy(payload, payloadOffset, frames, frameOffset + CONT_HEADER_SIZE, length);
+			payloadOffset += length;
+		}
+
+		buffer.clear();
+		buffer.limit(end);
+		return buffer;
+	}
+}
@@ -0,0 +1,56 @@
+package com.github.mphi_rc.fido2.protocol;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import com.github.mphi_rc.fido2.protocol.usbhid.PacketView;
+
+/**
+ * A fixed ring of 64-byte HID frames backed by a single array. Reports are read
+ * straight into the next slot and handed out as a {@link PacketView}; a view stays
+ * valid until the ring wraps around to its slot again.
+ */
+public class FrameRing {
+
+	private final byte[] frames;
+	private final ByteBuffer[] slots;
+	private final PacketView[] views;
+	private int next;
+
+	public FrameRing(int capacity) {
+		this.frames = new byte[capacity * PacketView.PACKET_SIZE];
+		this.slots = new ByteBuffer[capacity];
+		this.views = new PacketView[capacity];
+		for (int i = 0; i < capacity; i++) {
+			int offset = i * PacketView.PACKET_SIZE;
+			slots[i] = ByteBuffer.wrap(frames, offset, PacketView.PACKET_SIZE).slice();
+			views[i] = new PacketView(frames, offset);
+		}
+		this.next = 0;
+	}
+
+	public PacketView fill(ReadableByteChannel channel) throws IOException {
+		ByteBuffer slot = slots[next];
+		slot.clear();
+		while (slot.hasRemaining()) {
+			if (channel.read(slot) < 0) {
+				throw new EOFException();
+			}
+		}
+		return advance();
+	}
+
+	public PacketView fill(DataInputStream inputStream) throws IOException {
+		inputStream.readFully(frames, next * PacketView.PACKET_SIZE, PacketView.PACKET_SIZE);
+		return advance();
+	}
+
+	private PacketView advance() {
+		PacketView view = views[next];
+		next = (next + 1) % views.length;
+		return view;
+	}
+}
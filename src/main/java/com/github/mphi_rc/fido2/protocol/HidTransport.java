@@ -0,0 +1,18 @@
+package com.github.mphi_rc.fido2.protocol;
+
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A source and sink of 64-byte HID reports. Every buffer written to the output carries exactly
+ * one report, which transports that don't preserve write boundaries can rely on.
+ */
+public interface HidTransport extends AutoCloseable {
+
+	ReadableByteChannel input();
+
+	GatheringByteChannel output();
+
+	@Override
+	void close();
+}
@@ -0,0 +1,42 @@
+package com.github.mphi_rc.fido2.protocol;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The character device exposed by the Linux f_hid USB gadget function, such as /dev/hidg0.
+ */
+public class HidgDeviceTransport implements HidTransport {
+
+	private final FileChannel input;
+	private final FileChannel output;
+
+	public HidgDeviceTransport(Path device) throws IOException {
+		this.input = FileChannel.open(device, StandardOpenOption.READ);
+		this.output = FileChannel.open(device, StandardOpenOption.WRITE);
+	}
+
+	@Override
+	public ReadableByteChannel input() {
+		return input;
+	}
+
+	@Override
+	public GatheringByteChannel output() {
+		return output;
+	}
+
+	@Override
+	public void close() {
+		try {
+			input.close();
+			output.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+}
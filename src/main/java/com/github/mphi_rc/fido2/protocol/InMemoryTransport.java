@@ -0,0 +1,146 @@
+package com.github.mphi_rc.fido2.protocol;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.github.mphi_rc.fido2.protocol.usbhid.PacketView;
+import com.google.common.base.Preconditions;
+
+/**
+ * One end of a pair of report queues, for driving the stack without a USB gadget. The device
+ * side is created first and the host side obtained from {@link #peer()}.
+ */
+public class InMemoryTransport implements HidTransport {
+
+	private static final byte[] CLOSED = new byte[0];
+
+	private final BlockingQueue<byte[]> incoming;
+	private final BlockingQueue<byte[]> outgoing;
+	private final ReportInput input;
+	private final ReportOutput output;
+
+	public InMemoryTransport() {
+		this(new LinkedBlockingQueue<>(), new LinkedBlockingQueue<>());
+	}
+
+	private InMemoryTransport(BlockingQueue<byte[]> incoming, BlockingQueue<byte[]> outgoing) {
+		this.incoming = incoming;
+		this.outgoing = outgoing;
+		this.input = new ReportInput();
+		this.output = new ReportOutput();
+	}
+
+	/**
+	 * Returns the other end: reports written to one side are read from the other.
+	 */
+	public InMemoryTransport peer() {
+		return new InMemoryTransport(outgoing, incoming);
+	}
+
+	@Override
+	public ReadableByteChannel input() {
+		return input;
+	}
+
+	@Override
+	public GatheringByteChannel output() {
+		return output;
+	}
+
+	@Override
+	public void close() {
+		input.open = false;
+		output.open = false;
+		// wake a reader blocked on either side
+		incoming.add(CLOSED);
+		outgoing.add(CLOSED);
+	}
+
+	private class ReportInput implements ReadableByteChannel {
+
+		private volatile boolean open = true;
+		private ByteBuffer partial;
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			if (Objects.isNull(partial) || !partial.hasRemaining()) {
+				byte[] report;
+				try {
+					report = incoming.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+				if (report == CLOSED) {
+					incoming.add(CLOSED);
+					return -1;
+				}
+				partial = ByteBuffer.wrap(report);
+			}
+			int length = Math.min(dst.remaining(), partial.remaining());
+			int limit = partial.limit();
+			partial.limit(partial.position() + length);
+			dst.put(partial);
+			partial.limit(limit);
+			return length;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public void close() {
+			InMemoryTransport.this.close();
+		}
+	}
+
+	private class ReportOutput implements GatheringByteChannel {
+
+		private volatile boolean open = true;
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			if (!open) {
+				throw new ClosedChannelException();
+			}
+			Preconditions.checkArgument(src.remaining() == PacketView.PACKET_SIZE, "Each write must carry one report");
+			byte[] report = new byte[PacketView.PACKET_SIZE];
+			src.get(report);
+			outgoing.add(report);
+			return report.length;
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+			long written = 0;
+			for (int i = offset; i < offset + length; i++) {
+				written += write(srcs[i]);
+			}
+			return written;
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs) throws IOException {
+			return write(srcs, 0, srcs.length);
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public void close() {
+			InMemoryTransport.this.close();
+		}
+	}
+}
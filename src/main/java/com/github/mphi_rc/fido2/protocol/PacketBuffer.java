@@ -1,35 +1,49 @@
 package com.github.mphi_rc.fido2.protocol;
 
-import java.util.ArrayList;
 import java.util.Optional;
 
-import com.github.mphi_rc.fido2.protocol.usbhid.ContinuationPacket;
-import com.github.mphi_rc.fido2.protocol.usbhid.InitializationPacket;
+import com.github.mphi_rc.fido2.protocol.usbhid.ChannelId;
+import com.github.mphi_rc.fido2.protocol.usbhid.HidCommand;
+import com.github.mphi_rc.fido2.protocol.usbhid.ImmutableRawMessage;
+import com.github.mphi_rc.fido2.protocol.usbhid.PacketView;
 import com.github.mphi_rc.fido2.protocol.usbhid.RawMessage;
+import com.google.common.base.Preconditions;
 
 public class PacketBuffer {
-	
-	private InitializationPacket firstFragment;
-	private ArrayList<ContinuationPacket> nextFragments;
-	private int remainingBytes;
-	
-	public PacketBuffer(InitializationPacket firstFragment) {
-		this.firstFragment = firstFragment;
-		this.nextFragments = new ArrayList<>();
-		this.remainingBytes = firstFragment.messageLength() - firstFragment.data().length;
+
+	private final ChannelId channelId;
+	private final HidCommand command;
+	private final byte[] payload;
+	private int receivedBytes;
+	private int nextSequenceNumber;
+
+	public PacketBuffer(PacketView firstFragment) {
+		Preconditions.checkArgument(firstFragment.isInitializationPacket(), "Message must start with an initialization packet");
+		this.channelId = firstFragment.channelId();
+		this.command = firstFragment.command();
+		this.payload = new byte[firstFragment.messageLength()];
+		this.receivedBytes = Math.min(payload.length, firstFragment.dataLength());
+		this.nextSequenceNumber = 0;
+		firstFragment.copyData(0, payload, 0, receivedBytes);
 	}
-	
-	public void enqueueFragment(ContinuationPacket nextFragment) {
-		this.nextFragments.add(nextFragment);
-		this.remainingBytes -= nextFragment.data().length;
+
+	public boolean isNextInSequence(PacketView fragment) {
+		return fragment.sequenceNumber() == nextSequenceNumber;
 	}
-	
-	public Optional<RawMessage> constructIfPossible() {
-		if (remainingBytes >= 0) {
+
+	/**
+	 * Copies the fragment's data into place, returning the message if this fragment completed it.
+	 */
+	public Optional<RawMessage> append(PacketView nextFragment) {
+		Preconditions.checkArgument(isNextInSequence(nextFragment), "Continuation packet received out of sequence");
+		int usableLength = Math.min(payload.length - receivedBytes, nextFragment.dataLength());
+		nextFragment.copyData(0, payload, receivedBytes, usableLength);
+		receivedBytes += usableLength;
+		nextSequenceNumber++;
+
+		if (receivedBytes < payload.length) {
 			return Optional.empty();
 		}
-		ContinuationPacket[] rest = new ContinuationPacket[nextFragments.size()];
-		RawMessage message = RawMessage.from(firstFragment, nextFragments.toArray(rest));
-		return Optional.of(message);
+		return Optional.of(ImmutableRawMessage.of(channelId, command, payload));
 	}
 }
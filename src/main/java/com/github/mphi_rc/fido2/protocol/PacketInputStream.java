@@ -2,33 +2,54 @@ package com.github.mphi_rc.fido2.protocol;
 
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Objects;
 
-import com.github.mphi_rc.fido2.protocol.usbhid.ImmutablePacket;
 import com.github.mphi_rc.fido2.protocol.usbhid.Packet;
+import com.github.mphi_rc.fido2.protocol.usbhid.PacketView;
 
 public class PacketInputStream implements AutoCloseable {
 
+	private static final int RING_CAPACITY = 16;
+
 	private final DataInputStream inputStream;
-	private final int usbPacketSizeBytes;
+	private final ReadableByteChannel channel;
+	private final FrameRing ring;
 
 	public PacketInputStream(DataInputStream inputStream) {
 		this.inputStream = inputStream;
-		this.usbPacketSizeBytes = 64;
+		this.channel = null;
+		this.ring = new FrameRing(RING_CAPACITY);
+	}
+
+	public PacketInputStream(ReadableByteChannel channel) {
+		this.inputStream = null;
+		this.channel = channel;
+		this.ring = new FrameRing(RING_CAPACITY);
 	}
 
 	@Override
 	public void close() {
 		try {
-			this.inputStream.close();
+			if (Objects.isNull(channel)) {
+				this.inputStream.close();
+			} else {
+				this.channel.close();
+			}
 		} catch (IOException e) {
 			// ignore
 		}
 	}
 
+	public PacketView readFrame() throws IOException {
+		if (Objects.isNull(channel)) {
+			return ring.fill(inputStream);
+		}
+		return ring.fill(channel);
+	}
+
 	public Packet readPacket() throws IOException {
-		byte[] buf = new byte[usbPacketSizeBytes];
-		this.inputStream.readFully(buf);
-		return ImmutablePacket.of(buf);
+		return readFrame().toPacket();
 	}
 
 }
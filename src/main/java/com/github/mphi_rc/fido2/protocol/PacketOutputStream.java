@@ -2,32 +2,105 @@ package com.github.mphi_rc.fido2.protocol;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Objects;
 import java.util.function.Consumer;
 
 import com.github.mphi_rc.fido2.protocol.usbhid.Packet;
+import com.github.mphi_rc.fido2.protocol.usbhid.PacketView;
 
 public class PacketOutputStream implements Consumer<Packet>, AutoCloseable {
 
 	private final DataOutputStream outputStream;
-	
+	private final GatheringByteChannel channel;
+	private ByteBuffer[] reports;
+	private byte[] reportsBackingArray;
+
 	public PacketOutputStream(DataOutputStream outputStream) {
 		this.outputStream = outputStream;
+		this.channel = null;
 	}
-	
+
+	public PacketOutputStream(GatheringByteChannel channel) {
+		this.outputStream = null;
+		this.channel = channel;
+	}
+
 	@Override
 	public void accept(Packet packet) {
 		try {
-			outputStream.write(packet.rawPayload());
-			outputStream.flush();
+			if (Objects.isNull(channel)) {
+				outputStream.write(packet.rawPayload());
+				outputStream.flush();
+			} else {
+				ByteBuffer report = ByteBuffer.wrap(packet.rawPayload());
+				while (report.hasRemaining()) {
+					channel.write(report);
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public void writeFrames(ByteBuffer frames) {
+		try {
+			if (Objects.isNull(channel)) {
+				writeFramesToStream(frames);
+			} else {
+				gatherFramesToChannel(frames);
+			}
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	private void writeFramesToStream(ByteBuffer frames) throws IOException {
+		while (frames.hasRemaining()) {
+			outputStream.write(frames.array(), frames.arrayOffset() + frames.position(), PacketView.PACKET_SIZE);
+			outputStream.flush();
+			frames.position(frames.position() + PacketView.PACKET_SIZE);
+		}
+	}
+
+	// f_hid has no write_iter, so the kernel services writev() by calling write() once per iovec: every
+	// 64-byte buffer below still becomes exactly one report, but the whole message costs a single syscall.
+	private void gatherFramesToChannel(ByteBuffer frames) throws IOException {
+		ByteBuffer[] views = reportViewsOver(frames);
+		int first = frames.position() / PacketView.PACKET_SIZE;
+		int count = frames.remaining() / PacketView.PACKET_SIZE;
+		for (int i = first; i < first + count; i++) {
+			views[i].clear();
+		}
+		long remaining = frames.remaining();
+		while (remaining > 0) {
+			remaining -= channel.write(views, first, count);
+		}
+		frames.position(frames.limit());
+	}
+
+	private ByteBuffer[] reportViewsOver(ByteBuffer frames) {
+		if (Objects.isNull(reports) || reportsBackingArray != frames.array()) {
+			int numReports = frames.capacity() / PacketView.PACKET_SIZE;
+			reports = new ByteBuffer[numReports];
+			for (int i = 0; i < numReports; i++) {
+				int offset = frames.arrayOffset() + i * PacketView.PACKET_SIZE;
+				reports[i] = ByteBuffer.wrap(frames.array(), offset, PacketView.PACKET_SIZE).slice();
+			}
+			reportsBackingArray = frames.array();
+		}
+		return reports;
+	}
+
 	@Override
 	public void close() {
 		try {
-			outputStream.close();
+			if (Objects.isNull(channel)) {
+				outputStream.close();
+			} else {
+				channel.close();
+			}
 		} catch (IOException e) {
 			// ignore
 		}
@@ -0,0 +1,151 @@
+package com.github.mphi_rc.fido2.protocol;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.IntConsumer;
+
+/**
+ * Fixed-capacity table of partially received messages, keyed by channel. An entry expires when no
+ * continuation packet arrives for it within the timeout. Deadlines live on a timer wheel with one
+ * bucket per tick, linked through the table's own slot arrays, so {@link #tick(IntConsumer)} only
+ * visits the entries that are actually due.
+ */
+public class ReassemblyTable {
+
+	private static final int NONE = -1;
+
+	private final int[] channels;
+	private final PacketBuffer[] buffers;
+	private final int[] bucketOf;
+	private final int[] next;
+	private final int[] prev;
+	private final int[] wheel;
+	private int cursor;
+
+	public ReassemblyTable(int capacity, int timeoutTicks) {
+		this.channels = new int[capacity];
+		this.buffers = new PacketBuffer[capacity];
+		this.bucketOf = new int[capacity];
+		this.next = new int[capacity];
+		this.prev = new int[capacity];
+		this.wheel = new int[timeoutTicks + 1];
+		Arrays.fill(wheel, NONE);
+		this.cursor = 0;
+	}
+
+	/**
+	 * Starts reassembling a message, replacing any partial message already pending on the channel.
+	 * Returns false if the channel is new and every slot is taken.
+	 */
+	public synchronized boolean put(int channel, PacketBuffer buffer) {
+		int slot = find(channel);
+		if (slot == NONE) {
+			slot = freeSlot();
+			if (slot == NONE) {
+				return false;
+			}
+		} else {
+			unlink(slot);
+		}
+		channels[slot] = channel;
+		buffers[slot] = buffer;
+		link(slot);
+		return true;
+	}
+
+	/**
+	 * Returns the partial message pending on the channel and restarts its timeout.
+	 */
+	public synchronized Optional<PacketBuffer> touch(int channel) {
+		int slot = find(channel);
+		if (slot == NONE) {
+			return Optional.empty();
+		}
+		unlink(slot);
+		link(slot);
+		return Optional.of(buffers[slot]);
+	}
+
+	public synchronized boolean contains(int channel) {
+		return find(channel) != NONE;
+	}
+
+	public synchronized void remove(int channel) {
+		int slot = find(channel);
+		if (slot != NONE) {
+			clear(slot);
+		}
+	}
+
+	/**
+	 * Advances the wheel by one tick, dropping every entry that has timed out and passing its
+	 * channel to the given consumer.
+	 */
+	public synchronized void tick(IntConsumer expired) {
+		cursor = (cursor + 1) % wheel.length;
+		while (wheel[cursor] != NONE) {
+			int slot = wheel[cursor];
+			int channel = channels[slot];
+			clear(slot);
+			expired.accept(channel);
+		}
+	}
+
+	public synchronized int size() {
+		int size = 0;
+		for (PacketBuffer buffer : buffers) {
+			if (Objects.nonNull(buffer)) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	private int find(int channel) {
+		for (int slot = 0; slot < buffers.length; slot++) {
+			if (Objects.nonNull(buffers[slot]) && channels[slot] == channel) {
+				return slot;
+			}
+		}
+		return NONE;
+	}
+
+	private int freeSlot() {
+		for (int slot = 0; slot < buffers.length; slot++) {
+			if (Objects.isNull(buffers[slot])) {
+				return slot;
+			}
+		}
+		return NONE;
+	}
+
+	private void clear(int slot) {
+		unlink(slot);
+		buffers[slot] = null;
+	}
+
+	private void link(int slot) {
+		int bucket = (cursor + wheel.length - 1) % wheel.length;
+		bucketOf[slot] = bucket;
+		prev[slot] = NONE;
+		next[slot] = wheel[bucket];
+		if (wheel[bucket] != NONE) {
+			prev[wheel[bucket]] = slot;
+		}
+		wheel[bucket] = slot;
+	}
+
+	private void unlink(int slot) {
+		if (prev[slot] == NONE) {
+			wheel[bucketOf[slot]] = next[slot];
+		} else {
+			next[prev[slot]] = next[slot];
+		}
+		if (next[slot] != NONE) {
+			prev[next[slot]] = prev[slot];
+		}
+		prev[slot] = NONE;
+		next[slot] = NONE;
+	}
+}
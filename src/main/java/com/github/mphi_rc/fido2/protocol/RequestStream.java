@@ -1,75 +1,110 @@
 package com.github.mphi_rc.fido2.protocol;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.mphi_rc.fido2.protocol.usbhid.ChannelId;
-import com.github.mphi_rc.fido2.protocol.usbhid.ContinuationPacket;
-import com.github.mphi_rc.fido2.protocol.usbhid.InitializationPacket;
-import com.github.mphi_rc.fido2.protocol.usbhid.Packet;
+import com.github.mphi_rc.fido2.protocol.usbhid.HidError;
+import com.github.mphi_rc.fido2.protocol.usbhid.PacketView;
 import com.github.mphi_rc.fido2.protocol.usbhid.RawMessage;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class RequestStream implements AutoCloseable {
 
 	private static final Logger log = LoggerFactory.getLogger(RequestStream.class);
-	
+
+	private static final int MAX_PENDING_MESSAGES = 8;
+	private static final long CONTINUATION_TIMEOUT_MILLIS = 500;
+	private static final long TICK_MILLIS = 100;
+	// one extra tick, as an entry may be scheduled at any point within the current one
+	private static final int TIMEOUT_TICKS = (int) (CONTINUATION_TIMEOUT_MILLIS / TICK_MILLIS) + 1;
+	// shared by every stream, each of which only adds a periodic tick
+	private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+			.setNameFormat("ctaphid-reassembly-%d")
+			.setDaemon(true)
+			.build());
+
 	private final PacketInputStream inputStream;
-	private final Map<ChannelId, PacketBuffer> bufferByChannel;
+	private final Consumer<RawMessage> errors;
+	private final ReassemblyTable reassembly;
+	private final ScheduledFuture<?> ticks;
 
 	public RequestStream(PacketInputStream inputStream) {
+		this(inputStream, error -> log.info("Dropping transport error {}", error));
+	}
+
+	/**
+	 * Errors that aren't a reply to a complete request, such as MSG_TIMEOUT for a message whose
+	 * continuation packets never arrived, are passed to the given consumer.
+	 */
+	public RequestStream(PacketInputStream inputStream, Consumer<RawMessage> errors) {
 		this.inputStream = inputStream;
-		this.bufferByChannel = new HashMap<>();
+		this.errors = errors;
+		this.reassembly = new ReassemblyTable(MAX_PENDING_MESSAGES, TIMEOUT_TICKS);
+		this.ticks = TIMER.scheduleAtFixedRate(() -> reassembly.tick(this::timeOut), TICK_MILLIS, TICK_MILLIS,
+				TimeUnit.MILLISECONDS);
 	}
 
 	@Override
 	public void close() {
+		ticks.cancel(false);
 		inputStream.close();
 	}
 
 	public RawMessage readMessage() throws IOException {
 		while(true) {
-			Optional<RawMessage> maybeBuffered = consumeBufferedMessage();
-			if (maybeBuffered.isPresent()) {
-				return maybeBuffered.get();
-			}
-			Packet packet = inputStream.readPacket();
+			PacketView frame = inputStream.readFrame();
+			int channel = frame.channel();
 
-			if (packet.asInitializationPacket().isPresent()) {
-				InitializationPacket initPacket = packet.asInitializationPacket().get();
-				if (!initPacket.isFragmented()) {
-					return RawMessage.from(initPacket);
+			if (frame.isInitializationPacket()) {
+				if (reassembly.contains(channel)) {
+					log.debug("Initialization packet on {} aborts its partial message", frame.channelId());
+					reassembly.remove(channel);
+				}
+				if (!frame.isFragmented()) {
+					return RawMessage.from(frame);
 				}
-				bufferByChannel.put(packet.channelId(), new PacketBuffer(initPacket));
-			} else {
-				ContinuationPacket contPacket = packet.asContinuationPacket().get();
-				PacketBuffer buf = bufferByChannel.get(packet.channelId());
-				if (Objects.isNull(buf)) {
-					log.info("Ignoring spurious continuation packet");
-				} else {
-					buf.enqueueFragment(contPacket);
+				if (frame.messageLength() > PacketView.MAX_MESSAGE_LENGTH) {
+					errors.accept(RawMessage.error(frame.channelId(), HidError.INVALID_LEN));
+				} else if (!reassembly.put(channel, new PacketBuffer(frame))) {
+					log.debug("Too many partial messages, rejecting message on {}", frame.channelId());
+					errors.accept(RawMessage.error(frame.channelId(), HidError.CHANNEL_BUSY));
 				}
+				continue;
 			}
-		}
-	}
 
-	private Optional<RawMessage> consumeBufferedMessage() {
-		for (Entry<ChannelId, PacketBuffer> entry : bufferByChannel.entrySet()) {
-			PacketBuffer buffer = entry.getValue();
-			Optional<RawMessage> maybeQueuedMessage = buffer.constructIfPossible();
-			if (maybeQueuedMessage.isPresent()) {
-				log.trace("Message {} was reconstructed from several fragments", maybeQueuedMessage.get());
-				bufferByChannel.remove(entry.getKey());
-				return maybeQueuedMessage;
+			Optional<PacketBuffer> maybeBuffer = reassembly.touch(channel);
+			if (!maybeBuffer.isPresent()) {
+				log.info("Ignoring spurious continuation packet");
+				continue;
+			}
+			PacketBuffer buffer = maybeBuffer.get();
+			if (!buffer.isNextInSequence(frame)) {
+				log.debug("Continuation packet {} on {} is out of sequence", frame.sequenceNumber(), frame.channelId());
+				reassembly.remove(channel);
+				errors.accept(RawMessage.error(frame.channelId(), HidError.INVALID_SEQ));
+				continue;
+			}
+			Optional<RawMessage> maybeMessage = buffer.append(frame);
+			if (maybeMessage.isPresent()) {
+				reassembly.remove(channel);
+				log.trace("Message {} was reconstructed from several fragments", maybeMessage.get());
+				return maybeMessage.get();
 			}
 		}
-		return Optional.empty();
+	}
+
+	private void timeOut(int channel) {
+		log.debug("Timed out waiting for continuation packets on channel {}", channel);
+		errors.accept(RawMessage.error(ChannelId.from(channel), HidError.MSG_TIMEOUT));
 	}
 
 }
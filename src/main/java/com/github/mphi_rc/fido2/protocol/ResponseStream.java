@@ -19,14 +19,31 @@ public class ResponseStream implements Consumer<RawMessage>, AutoCloseable {
 	private static final Logger log = LoggerFactory.getLogger(ResponseStream.class);
 	private static final int INIT_HEADER_SIZE = 7;
 	private static final int CONT_HEADER_SIZE = 5;
+	private static final int PACKET_TYPE_FLAG = 0x80;
+
+	public enum Framing {
+		/** Builds one {@link Packet} per frame */
+		PACKETS,
+
+		/** Writes all frames into a single reusable buffer */
+		DIRECT;
+	}
 
 	private final PacketOutputStream outputStream;
+	private final Framing framing;
+	private final FrameEncoder encoder;
 	private final int usbPacketSizeBytes;
 	private final int initSpace;
 	private final int contSpace;
 
-	public ResponseStream(PacketOutputStream inputStream) {
-		this.outputStream = inputStream;
+	public ResponseStream(PacketOutputStream outputStream) {
+		this(outputStream, Framing.DIRECT);
+	}
+
+	public ResponseStream(PacketOutputStream outputStream, Framing framing) {
+		this.outputStream = outputStream;
+		this.framing = framing;
+		this.encoder = new FrameEncoder();
 		this.usbPacketSizeBytes = 64;
 		this.initSpace = usbPacketSizeBytes - INIT_HEADER_SIZE;
 		this.contSpace = usbPacketSizeBytes - CONT_HEADER_SIZE;
@@ -41,17 +58,24 @@ public class ResponseStream implements Consumer<RawMessage>, AutoCloseable {
 	public void accept(RawMessage message) {
 		log.trace("Sending response {}", message);
 
-		for (Packet packet : serializeToPackets(message)) {
-			outputStream.accept(packet);
+		switch (framing) {
+		case PACKETS:
+			for (Packet packet : serializeToPackets(message)) {
+				outputStream.accept(packet);
+			}
+			break;
+		case DIRECT:
+			outputStream.writeFrames(encoder.encode(message));
+			break;
 		}
 	}
 
 	private Packet serializeToInitPacket(RawMessage m) {
 		try {
 			byte[] channel = m.channelId().id();
-			byte command = m.command().asByte();
+			byte command = (byte) (m.command().asByte() | PACKET_TYPE_FLAG);
 			byte[] payload = m.payload();
-			int lengthHigh = payload.length & 0xFF00;
+			int lengthHigh = (payload.length & 0xFF00) >> 8;
 			int lengthLow = payload.length & 0x00FF;
 			int payloadReadLength = Math.min(payload.length, initSpace);
 
@@ -62,7 +86,7 @@ public class ResponseStream implements Consumer<RawMessage>, AutoCloseable {
 			packet.write(lengthLow);
 			packet.write(payload, 0, payloadReadLength);
 
-			while (usbPacketSizeBytes < packet.size()) {
+			while (packet.size() < usbPacketSizeBytes) {
 				packet.write(0);
 			}
 			return ImmutablePacket.of(packet.toByteArray());
@@ -83,7 +107,7 @@ public class ResponseStream implements Consumer<RawMessage>, AutoCloseable {
 			packet.write(seq);
 			packet.write(payload, payloadOffset, packetPayloadLength);
 
-			while (usbPacketSizeBytes < packet.size()) {
+			while (packet.size() < usbPacketSizeBytes) {
 				packet.write(0);
 			}
 			return ImmutablePacket.of(packet.toByteArray());
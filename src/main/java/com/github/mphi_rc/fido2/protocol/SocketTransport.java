@@ -0,0 +1,63 @@
+package com.github.mphi_rc.fido2.protocol;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Carries reports over a loopback TCP connection. The stream has no message boundaries, but
+ * reports are fixed at 64 bytes, so the reader simply consumes them 64 bytes at a time.
+ */
+public class SocketTransport implements HidTransport {
+
+	private final SocketChannel socket;
+
+	private SocketTransport(SocketChannel socket) throws IOException {
+		this.socket = socket;
+		socket.socket().setTcpNoDelay(true);
+	}
+
+	/**
+	 * Waits for a single host to connect to the given loopback port.
+	 */
+	public static SocketTransport accept(int port) throws IOException {
+		try (ServerSocketChannel server = ServerSocketChannel.open()) {
+			server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+			return accept(server);
+		}
+	}
+
+	/**
+	 * Waits for the next host to connect to an already bound server channel.
+	 */
+	public static SocketTransport accept(ServerSocketChannel server) throws IOException {
+		return new SocketTransport(server.accept());
+	}
+
+	public static SocketTransport connect(int port) throws IOException {
+		return new SocketTransport(SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port)));
+	}
+
+	@Override
+	public ReadableByteChannel input() {
+		return socket;
+	}
+
+	@Override
+	public GatheringByteChannel output() {
+		return socket;
+	}
+
+	@Override
+	public void close() {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+}
@@ -1,7 +1,6 @@
 package com.github.mphi_rc.fido2.protocol.ctap2;
 
 import java.nio.charset.StandardCharsets;
-import java.util.BitSet;
 import java.util.Optional;
 
 import org.immutables.value.Value;
@@ -16,29 +15,40 @@ public abstract class AuthenticatorData {
 	public abstract boolean isUserPresent();
 	public abstract boolean isUserVerified();
 	public abstract Optional<byte[]> attestedCredentialData(); 
+
+	/**
+	 * The CBOR-encoded map of extension outputs.
+	 */
+	public abstract Optional<byte[]> extensions();
 	
 	public byte[] asBytes() {
 		byte[] rpIdHash = Hashing.sha256()
 				.hashString(relayingPartyId(), StandardCharsets.UTF_8)
 				.asBytes();
 		
-		int size = rpIdHash.length + 1 + 4 + attestedCredentialData()
+		int attestedLength = attestedCredentialData()
+				.map(bytes -> bytes.length)
+				.orElse(0);
+		int size = rpIdHash.length + 1 + 4 + attestedLength + extensions()
 				.map(bytes -> bytes.length)
 				.orElse(0);
 		byte[] bytes = new byte[size];
 		System.arraycopy(rpIdHash, 0, bytes, 0, 32);
 		
-		BitSet flags = new BitSet(7);
+		byte flags = 0;
 		if (isUserPresent()) {
-			flags.set(0);
+			flags |= 0x01;
 		}
 		if (isUserVerified()) {
-			flags.set(2);
+			flags |= 0x04;
 		}
 		if (attestedCredentialData().isPresent()) {
-			flags.set(6);
+			flags |= 0x40;
 		}
-		bytes[32] = flags.toByteArray()[0];
+		if (extensions().isPresent()) {
+			flags |= 0x80;
+		}
+		bytes[32] = flags;
 		bytes[33] = (byte) ((0xFF000000 & signatureCount()) >> 24);
 		bytes[34] = (byte) ((0x00FF0000 & signatureCount()) >> 16);
 		bytes[35] = (byte) ((0x0000FF00 & signatureCount()) >> 8);
@@ -46,6 +56,9 @@ public abstract class AuthenticatorData {
 		attestedCredentialData().ifPresent(d -> {
 			System.arraycopy(d, 0, bytes, 37, d.length);
 		});
+		extensions().ifPresent(e -> {
+			System.arraycopy(e, 0, bytes, 37 + attestedLength, e.length);
+		});
 		return bytes;
 	}
 }
@@ -1,14 +1,20 @@
 package com.github.mphi_rc.fido2.protocol.ctap2;
 
 import java.io.ByteArrayOutputStream;
-import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.mphi_rc.fido2.authenticator.AssertionSession;
 import com.github.mphi_rc.fido2.authenticator.Authenticator;
+import com.github.mphi_rc.fido2.authenticator.Credential;
+import com.github.mphi_rc.fido2.authenticator.EnumerationSession;
 import com.github.mphi_rc.fido2.authenticator.Result;
+import com.github.mphi_rc.fido2.authenticator.Transaction;
 import com.github.mphi_rc.fido2.protocol.ctap2.pin.PinRequestHandler;
 import com.github.mphi_rc.fido2.protocol.usbhid.ChannelId;
 import com.github.mphi_rc.fido2.protocol.usbhid.HidCommand;
@@ -16,25 +22,30 @@ import com.github.mphi_rc.fido2.protocol.usbhid.HidError;
 import com.github.mphi_rc.fido2.protocol.usbhid.ImmutableRawMessage;
 import com.github.mphi_rc.fido2.protocol.usbhid.RawMessage;
 
-import co.nstant.in.cbor.CborBuilder;
-import co.nstant.in.cbor.CborDecoder;
 import co.nstant.in.cbor.CborEncoder;
 import co.nstant.in.cbor.CborException;
-import co.nstant.in.cbor.model.ByteString;
 import co.nstant.in.cbor.model.DataItem;
-import co.nstant.in.cbor.model.Map;
-import co.nstant.in.cbor.model.UnsignedInteger;
 
 public class AuthenticatorRequestHandler {
 
 	private static final Logger log = LoggerFactory.getLogger(AuthenticatorRequestHandler.class);
 
+	private static final ThreadLocal<CborWriter> WRITER = ThreadLocal.withInitial(CborWriter::new);
+
 	private final PinRequestHandler pinRequestHandler;
 	private final Authenticator authenticator;
+	private final ResponseCache responseCache;
+	private final AtomicReference<Pending<AssertionSession>> pendingAssertion;
+	private final AtomicReference<Pending<EnumerationSession<String>>> pendingRelyingParties;
+	private final AtomicReference<Pending<EnumerationSession<Credential>>> pendingCredentials;
 
 	public AuthenticatorRequestHandler(Authenticator authenticator, PinRequestHandler pinRequestHandler) {
 		this.authenticator = authenticator;
 		this.pinRequestHandler = pinRequestHandler;
+		this.responseCache = new ResponseCache(authenticator::getInfo, authenticator::settingsVersion);
+		this.pendingAssertion = new AtomicReference<>();
+		this.pendingRelyingParties = new AtomicReference<>();
+		this.pendingCredentials = new AtomicReference<>();
 	}
 
 	private RawMessage failure(ChannelId channelId, Ctap2ResponseCode errorCode) {
@@ -45,55 +56,143 @@ public class AuthenticatorRequestHandler {
 				.build();
 	}
 
+	private byte[] asPayload(Ctap2ResponseCode code, CborEncodable body) {
+		CborWriter writer = WRITER.get().reset();
+		writer.writeStatus(code);
+		body.encode(writer);
+		return writer.toByteArray();
+	}
+
 	private byte[] asPayload(Ctap2ResponseCode code, List<DataItem> parameterMap) {
 		ByteArrayOutputStream payload = new ByteArrayOutputStream();
-		CborEncoder encoder = new CborEncoder(payload);
-		CborBuilder builder = new CborBuilder()
-				.add(code.asBytes()[0]);
-		for (DataItem i : parameterMap) {
-			builder = builder.add(i);
-		}
+		payload.write(code.asBytes()[0]);
 		try {
-			encoder.encode(builder.build());
+			new CborEncoder(payload).encode(parameterMap);
 		} catch (CborException e) {
 			throw new RuntimeException(e);
 		}
 		return payload.toByteArray();
 	}
 
+	private byte[] nextAssertion(ChannelId channelId, AssertionSession session) {
+		byte[] assertion = authenticator.getNextAssertion(session)
+				.handleError(Ctap2ResponseCode::asBytes)
+				.elseGet(value -> asPayload(Ctap2ResponseCode.OK, value));
+		if (session.hasNext()) {
+			pendingAssertion.set(new Pending<>(channelId, session));
+		}
+		return assertion;
+	}
+
+	private byte[] nextRelyingParty(ChannelId channelId, EnumerationSession<String> session) {
+		byte[] relayingParty = authenticator.getNextRelyingParty(session)
+				.handleError(Ctap2ResponseCode::asBytes)
+				.elseGet(value -> asPayload(Ctap2ResponseCode.OK, value));
+		if (session.hasNext()) {
+			pendingRelyingParties.set(new Pending<>(channelId, session));
+		}
+		return relayingParty;
+	}
+
+	private byte[] nextCredential(ChannelId channelId, EnumerationSession<Credential> session) {
+		byte[] credential = authenticator.getNextCredential(session)
+				.handleError(Ctap2ResponseCode::asBytes)
+				.elseGet(value -> asPayload(Ctap2ResponseCode.OK, value));
+		if (session.hasNext()) {
+			pendingCredentials.set(new Pending<>(channelId, session));
+		}
+		return credential;
+	}
+
+	private static <T> Optional<T> pendingOn(ChannelId channelId, Pending<T> pending) {
+		if (Objects.isNull(pending) || !pending.channelId.equals(channelId)) {
+			return Optional.empty();
+		}
+		return Optional.of(pending.session);
+	}
+
+	private byte[] manageCredentials(ChannelId channelId, CredentialManagementRequest request,
+			Pending<EnumerationSession<String>> relayingParties, Pending<EnumerationSession<Credential>> credentials) {
+		switch (request.subCommand()) {
+		case CredentialManagementRequest.GET_CREDS_METADATA:
+			return authenticator.getCredentialsMetadata(request)
+					.handleError(Ctap2ResponseCode::asBytes)
+					.elseGet(value -> asPayload(Ctap2ResponseCode.OK, value));
+
+		case CredentialManagementRequest.ENUMERATE_RPS_BEGIN:
+			return authenticator.enumerateRelyingParties(request)
+					.handleError(Ctap2ResponseCode::asBytes)
+					.elseGet(session -> nextRelyingParty(channelId, session));
+
+		case CredentialManagementRequest.ENUMERATE_RPS_GET_NEXT_RP:
+			return pendingOn(channelId, relayingParties)
+					.map(session -> nextRelyingParty(channelId, session))
+					.orElseGet(Ctap2ResponseCode.NOT_ALLOWED::asBytes);
+
+		case CredentialManagementRequest.ENUMERATE_CREDENTIALS_BEGIN:
+			return authenticator.enumerateCredentials(request)
+					.handleError(Ctap2ResponseCode::asBytes)
+					.elseGet(session -> nextCredential(channelId, session));
+
+		case CredentialManagementRequest.ENUMERATE_CREDENTIALS_GET_NEXT_CREDENTIAL:
+			return pendingOn(channelId, credentials)
+					.map(session -> nextCredential(channelId, session))
+					.orElseGet(Ctap2ResponseCode.NOT_ALLOWED::asBytes);
+
+		case CredentialManagementRequest.DELETE_CREDENTIAL:
+			return authenticator.deleteCredential(request).asBytes();
+
+		default:
+			return Ctap2ResponseCode.INVALID_SUBCOMMAND.asBytes();
+		}
+	}
+
 	public RawMessage handleCborRequest(ChannelId channelId, byte[] payload) {
+		return handleCborRequest(channelId, payload, new Transaction());
+	}
+
+	public RawMessage handleCborRequest(ChannelId channelId, byte[] payload, Transaction transaction) {
 		if (payload.length == 0) {
 			return RawMessage.error(channelId, HidError.INVALID_LEN);
 		}
 
 		Ctap2Method method = Ctap2Method.from(payload[0]);
-
-		byte[] params = new byte[payload.length - 1];
-		System.arraycopy(payload, 1, params, 0, payload.length - 1);
-		try {
-			log.debug("Received CBOR request with method {} and body {}", method, CborDecoder.decode(params));
-		} catch (CborException e) {
-			log.error("Unable to deserialize CBOR parameters", e);
-			return failure(channelId, Ctap2ResponseCode.INVALID_CBOR);
-		}
+		int paramsOffset = 1;
+		int paramsLength = payload.length - 1;
+		// any request other than a get-next ends the previous assertion or enumeration
+		Pending<AssertionSession> assertion = pendingAssertion.getAndSet(null);
+		Pending<EnumerationSession<String>> relayingParties = pendingRelyingParties.getAndSet(null);
+		Pending<EnumerationSession<Credential>> credentials = pendingCredentials.getAndSet(null);
 
 		try {
 			switch (method) {
 			case GET_ASSERTION:
-				GetAssertionRequest gar = GetAssertionRequest.fromBytes(params);
-				byte[] assertion = authenticator.getAssertion(gar)
-						.handleError(err -> asPayload(err, Collections.emptyList()))
-						.elseGet(value -> asPayload(Ctap2ResponseCode.OK, value.asCborMap()));
+				GetAssertionRequest gar = GetAssertionRequest.fromBytes(payload, paramsOffset, paramsLength);
+				log.debug("Received CBOR request with method {} and body {}", method, gar);
+				byte[] firstAssertion = authenticator.getAssertion(gar, transaction)
+						.handleError(Ctap2ResponseCode::asBytes)
+						.elseGet(session -> nextAssertion(channelId, session));
 				return ImmutableRawMessage.builder()
 						.channelId(channelId)
 						.command(HidCommand.CBOR)
-						.payload(assertion)
+						.payload(firstAssertion)
+						.build();
+
+			case GET_NEXT_ASSERTION:
+				log.debug("Received CBOR request with method {}", method);
+				Optional<AssertionSession> assertionSession = pendingOn(channelId, assertion);
+				if (!assertionSession.isPresent()) {
+					return failure(channelId, Ctap2ResponseCode.NOT_ALLOWED);
+				}
+				return ImmutableRawMessage.builder()
+						.channelId(channelId)
+						.command(HidCommand.CBOR)
+						.payload(nextAssertion(channelId, assertionSession.get()))
 						.build();
 
 			case GET_INFO:
-				GetInfoResponse response = authenticator.getInfo();
-				log.trace("Authenticator supports options {}", response);
-				byte[] info = asPayload(Ctap2ResponseCode.OK, response.asCborMap());
+				log.debug("Received CBOR request with method {}", method);
+				byte[] info = responseCache.getInfo();
 				return ImmutableRawMessage.builder()
 						.channelId(channelId)
 						.command(HidCommand.CBOR)
@@ -101,12 +200,12 @@ public class AuthenticatorRequestHandler {
 						.build();
 
 			case MAKE_CREDENTIAL:
-				MakeCredentialRequest request = MakeCredentialRequest.fromBytes(params);
-				Result<MakeCredentialResponse, Ctap2ResponseCode> result = authenticator.makeCredential(request.clientDataHash(),
-						request.relayingPartyId(), request.userId(), request.supportedAlgorithmIds(), request.pinAuth());
+				MakeCredentialRequest request = MakeCredentialRequest.fromBytes(payload, paramsOffset, paramsLength);
+				log.debug("Received CBOR request with method {} and body {}", method, request);
+				Result<MakeCredentialResponse, Ctap2ResponseCode> result = authenticator.makeCredential(request, transaction);
 				byte[] credential = result
-						.handleError(err -> asPayload(err, Collections.emptyList()))
-						.elseGet(value -> asPayload(Ctap2ResponseCode.OK, value.asCborMap()));
+						.handleError(Ctap2ResponseCode::asBytes)
+						.elseGet(value -> asPayload(Ctap2ResponseCode.OK, value));
 				return ImmutableRawMessage.builder()
 						.channelId(channelId)
 						.command(HidCommand.CBOR)
@@ -114,14 +213,12 @@ public class AuthenticatorRequestHandler {
 						.build();
 
 			case CLIENT_PIN:
-
-				Map pinParams = (Map) CborDecoder.decode(params).get(0);
-				UnsignedInteger pinProtocol = (UnsignedInteger) pinParams.get(new UnsignedInteger(0x01));
+				ClientPinRequest pinRequest = ClientPinRequest.fromBytes(payload, paramsOffset, paramsLength);
+				log.debug("Received CBOR request with method {} and body {}", method, pinRequest);
 				// TODO: handle pinProtocol != 1 somehow
-				
-				UnsignedInteger subCommand = (UnsignedInteger) pinParams.get(new UnsignedInteger(0x02));
-				switch(subCommand.getValue().intValue()) {
-				case 0x01: // get retries
+
+				switch(pinRequest.subCommand()) {
+				case ClientPinRequest.GET_RETRIES:
 					List<DataItem> retries = pinRequestHandler.getRetries();
 					return ImmutableRawMessage.builder()
 							.channelId(channelId)
@@ -129,7 +226,7 @@ public class AuthenticatorRequestHandler {
 							.payload(asPayload(Ctap2ResponseCode.OK, retries))
 							.build();
 					
-				case 0x02: // get key
+				case ClientPinRequest.GET_KEY_AGREEMENT:
 					List<DataItem> key = pinRequestHandler.getKeyAgreementKey();
 					return ImmutableRawMessage.builder()
 							.channelId(channelId)
@@ -137,34 +234,38 @@ public class AuthenticatorRequestHandler {
 							.payload(asPayload(Ctap2ResponseCode.OK, key))
 							.build();
 					
-				case 0x03: // set pin
-					Map hostCoseKey = (Map) pinParams.get(new UnsignedInteger(0x03));
-					ByteString pinAuth = (ByteString) pinParams.get(new UnsignedInteger(0x04));
-					ByteString newPinEnc = (ByteString) pinParams.get(new UnsignedInteger(0x05));
-					Ctap2ResponseCode code = pinRequestHandler.setPin(hostCoseKey, newPinEnc.getBytes(), pinAuth.getBytes());
+				case ClientPinRequest.SET_PIN:
+					if (!pinRequest.keyAgreement().isPresent() || !pinRequest.pinAuth().isPresent() || !pinRequest.newPinEnc().isPresent()) {
+						return failure(channelId, Ctap2ResponseCode.MISSING_PARAMETER);
+					}
+					Ctap2ResponseCode code = pinRequestHandler.setPin(pinRequest.keyAgreement().get(),
+							pinRequest.newPinEnc().get(), pinRequest.pinAuth().get());
 					return ImmutableRawMessage.builder()
 							.channelId(channelId)
 							.command(HidCommand.CBOR)
-							.payload(asPayload(code, Collections.emptyList()))
+							.payload(code.asBytes())
 							.build();
 					
-				case 0x04: // change pin
-					Map hostCoseKey2 = (Map) pinParams.get(new UnsignedInteger(0x03));
-					ByteString pinAuth2 = (ByteString) pinParams.get(new UnsignedInteger(0x04));
-					ByteString newPinEnc2 = (ByteString) pinParams.get(new UnsignedInteger(0x05));
-					ByteString PinHashEnc = (ByteString) pinParams.get(new UnsignedInteger(0x06));
-					Ctap2ResponseCode code2 = pinRequestHandler.changePin(hostCoseKey2, PinHashEnc.getBytes(), newPinEnc2.getBytes(), pinAuth2.getBytes());
+				case ClientPinRequest.CHANGE_PIN:
+					if (!pinRequest.keyAgreement().isPresent() || !pinRequest.pinAuth().isPresent() || !pinRequest.newPinEnc().isPresent()
+							|| !pinRequest.pinHashEnc().isPresent()) {
+						return failure(channelId, Ctap2ResponseCode.MISSING_PARAMETER);
+					}
+					Ctap2ResponseCode code2 = pinRequestHandler.changePin(pinRequest.keyAgreement().get(), pinRequest.pinHashEnc().get(),
+							pinRequest.newPinEnc().get(), pinRequest.pinAuth().get());
 					return ImmutableRawMessage.builder()
 							.channelId(channelId)
 							.command(HidCommand.CBOR)
-							.payload(asPayload(code2, Collections.emptyList()))
+							.payload(code2.asBytes())
 							.build();
 					
-				case 0x05: // get pin token
-					Map hostCoseKey3 = (Map) pinParams.get(new UnsignedInteger(0x03));
-					ByteString pinHashEnc2 = (ByteString) pinParams.get(new UnsignedInteger(0x06));
-					Result<List<DataItem>, Ctap2ResponseCode> pinToken = pinRequestHandler.getPinToken(hostCoseKey3, pinHashEnc2.getBytes());
-					byte[] pinTokenPayload = pinToken.handleError(err -> asPayload(err, Collections.emptyList()))
+				case ClientPinRequest.GET_PIN_TOKEN:
+					if (!pinRequest.keyAgreement().isPresent() || !pinRequest.pinHashEnc().isPresent()) {
+						return failure(channelId, Ctap2ResponseCode.MISSING_PARAMETER);
+					}
+					Result<List<DataItem>, Ctap2ResponseCode> pinToken = pinRequestHandler.getPinToken(pinRequest.keyAgreement().get(),
+							pinRequest.pinHashEnc().get());
+					byte[] pinTokenPayload = pinToken.handleError(Ctap2ResponseCode::asBytes)
 							.elseGet(val -> asPayload(Ctap2ResponseCode.OK, val));
 					return ImmutableRawMessage.builder()
 							.channelId(channelId)
@@ -173,8 +274,17 @@ public class AuthenticatorRequestHandler {
 							.build();
 				}
 				break;
+			case CREDENTIAL_MANAGEMENT:
+			case CREDENTIAL_MANAGEMENT_PREVIEW:
+				CredentialManagementRequest managementRequest = CredentialManagementRequest.fromBytes(payload, paramsOffset, paramsLength);
+				log.debug("Received CBOR request with method {} and body {}", method, managementRequest);
+				return ImmutableRawMessage.builder()
+						.channelId(channelId)
+						.command(HidCommand.CBOR)
+						.payload(manageCredentials(channelId, managementRequest, relayingParties, credentials))
+						.build();
+
 			case RESET:
-			case GET_NEXT_ASSERTION:
 			default:
 				return RawMessage.error(channelId, HidError.INVALID_CMD);
 			}
@@ -185,4 +295,15 @@ public class AuthenticatorRequestHandler {
 		return failure(channelId, Ctap2ResponseCode.INVALID_CBOR);
 
 	}
+
+	private static final class Pending<T> {
+
+		private final ChannelId channelId;
+		private final T session;
+
+		private Pending(ChannelId channelId, T session) {
+			this.channelId = channelId;
+			this.session = session;
+		}
+	}
 }
@@ -0,0 +1,5 @@
+package com.github.mphi_rc.fido2.protocol.ctap2;
+
+public interface CborEncodable {
+	void encode(CborWriter writer);
+}
@@ -0,0 +1,254 @@
+package com.github.mphi_rc.fido2.protocol.ctap2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import co.nstant.in.cbor.CborException;
+
+/**
+ * A pull parser over a byte range holding CTAP2 canonical CBOR. Items are read one at a time
+ * straight from the range, and values nobody asks for are skipped without being decoded. Only
+ * definite lengths are accepted, nesting is limited and every length is checked against the
+ * bytes remaining, so malformed input is rejected before anything is allocated for it.
+ */
+public class CborReader {
+
+	public static final int UNSIGNED_INTEGER = 0;
+	public static final int NEGATIVE_INTEGER = 1;
+	public static final int BYTE_STRING = 2;
+	public static final int TEXT_STRING = 3;
+	public static final int ARRAY = 4;
+	public static final int MAP = 5;
+	public static final int TAG = 6;
+	public static final int SIMPLE_VALUE = 7;
+
+	private static final int MAX_DEPTH = 8;
+	private static final int INDEFINITE_LENGTH = 31;
+	private static final int FALSE = 20;
+	private static final int TRUE = 21;
+
+	private final byte[] bytes;
+	private final int end;
+	private int position;
+
+	public CborReader(byte[] bytes, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > bytes.length) {
+			throw new IndexOutOfBoundsException("Range is outside the array");
+		}
+		this.bytes = bytes;
+		this.position = offset;
+		this.end = offset + length;
+	}
+
+	/**
+	 * The offset of the next item in the underlying array.
+	 */
+	public int position() {
+		return position;
+	}
+
+	public boolean hasRemaining() {
+		return position < end;
+	}
+
+	/**
+	 * Fails if anything follows the item just read, as a request is a single CBOR map.
+	 */
+	public void requireEnd() throws CborException {
+		if (hasRemaining()) {
+			throw new CborException((end - position) + " trailing bytes after the CBOR request");
+		}
+	}
+
+	public int peekMajorType() throws CborException {
+		require(1);
+		return (bytes[position] & 0xFF) >>> 5;
+	}
+
+	public long readUnsignedInteger() throws CborException {
+		return readArgument(UNSIGNED_INTEGER);
+	}
+
+	/**
+	 * Reads an unsigned or negative integer that fits in a long.
+	 */
+	public long readInteger() throws CborException {
+		if (peekMajorType() == NEGATIVE_INTEGER) {
+			return -1 - readArgument(NEGATIVE_INTEGER);
+		}
+		return readArgument(UNSIGNED_INTEGER);
+	}
+
+	public byte[] readByteString() throws CborException {
+		int length = readLength(BYTE_STRING);
+		byte[] value = Arrays.copyOfRange(bytes, position, position + length);
+		position += length;
+		return value;
+	}
+
+	public String readTextString() throws CborException {
+		int length = readLength(TEXT_STRING);
+		String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+		position += length;
+		return value;
+	}
+
+	public boolean readBoolean() throws CborException {
+		require(1);
+		int initial = bytes[position] & 0xFF;
+		if (initial != ((SIMPLE_VALUE << 5) | FALSE) && initial != ((SIMPLE_VALUE << 5) | TRUE)) {
+			throw new CborException("Expected a boolean");
+		}
+		position++;
+		return (initial & 0x1F) == TRUE;
+	}
+
+	public int readMapLength() throws CborException {
+		return readLength(MAP);
+	}
+
+	public int readArrayLength() throws CborException {
+		return readLength(ARRAY);
+	}
+
+	/**
+	 * Reads a map key that is expected to be a small unsigned integer, as CTAP2 uses for its
+	 * top-level parameters. Any other key is skipped and -1 is returned.
+	 */
+	public int readIntegerKey() throws CborException {
+		if (peekMajorType() != UNSIGNED_INTEGER) {
+			skip();
+			return -1;
+		}
+		long key = readUnsignedInteger();
+		return key > Integer.MAX_VALUE ? -1 : (int) key;
+	}
+
+	/**
+	 * Reads a text map key and returns the index of the candidate it equals, or -1 if it equals
+	 * none of them or isn't text. The key is compared in place, never decoded.
+	 */
+	public int readTextKey(byte[]... candidates) throws CborException {
+		if (peekMajorType() != TEXT_STRING) {
+			skip();
+			return -1;
+		}
+		int length = readLength(TEXT_STRING);
+		int start = position;
+		position += length;
+		for (int i = 0; i < candidates.length; i++) {
+			if (candidates[i].length == length && regionEquals(start, candidates[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Skips over the next data item, including everything nested in it.
+	 */
+	public void skip() throws CborException {
+		skip(0);
+	}
+
+	private void skip(int depth) throws CborException {
+		if (depth > MAX_DEPTH) {
+			throw new CborException("CBOR is nested too deeply");
+		}
+		int majorType = peekMajorType();
+		switch (majorType) {
+		case UNSIGNED_INTEGER:
+		case NEGATIVE_INTEGER:
+			readArgument(majorType);
+			break;
+		case BYTE_STRING:
+		case TEXT_STRING:
+			int length = readLength(majorType);
+			position += length;
+			break;
+		case ARRAY:
+			for (int i = readLength(ARRAY); i > 0; i--) {
+				skip(depth + 1);
+			}
+			break;
+		case MAP:
+			for (int i = readLength(MAP); i > 0; i--) {
+				skip(depth + 1);
+				skip(depth + 1);
+			}
+			break;
+		case TAG:
+			throw new CborException("Tags are not used by CTAP2");
+		default:
+			skipSimpleValue();
+			break;
+		}
+	}
+
+	private void skipSimpleValue() throws CborException {
+		int additionalInfo = bytes[position] & 0x1F;
+		int size;
+		if (additionalInfo < 24) {
+			size = 0;
+		} else if (additionalInfo <= 27) {
+			size = 1 << (additionalInfo - 24);
+		} else {
+			throw new CborException("Unsupported simple value");
+		}
+		require(1 + size);
+		position += 1 + size;
+	}
+
+	private int readLength(int majorType) throws CborException {
+		long length = readArgument(majorType);
+		if (length > end - position) {
+			throw new CborException("Length exceeds the bytes available");
+		}
+		return (int) length;
+	}
+
+	private long readArgument(int majorType) throws CborException {
+		require(1);
+		int initial = bytes[position] & 0xFF;
+		if (initial >>> 5 != majorType) {
+			throw new CborException("Expected major type " + majorType + " but found " + (initial >>> 5));
+		}
+		int additionalInfo = initial & 0x1F;
+		if (additionalInfo < 24) {
+			position++;
+			return additionalInfo;
+		}
+		if (additionalInfo == INDEFINITE_LENGTH) {
+			throw new CborException("Indefinite lengths are not canonical");
+		}
+		if (additionalInfo > 27) {
+			throw new CborException("Reserved additional information " + additionalInfo);
+		}
+		int size = 1 << (additionalInfo - 24);
+		require(1 + size);
+		long value = 0;
+		for (int i = 1; i <= size; i++) {
+			value = (value << 8) | (bytes[position + i] & 0xFF);
+		}
+		if (value < 0) {
+			throw new CborException("Integer is too large");
+		}
+		position += 1 + size;
+		return value;
+	}
+
+	private boolean regionEquals(int start, byte[] expected) {
+		for (int i = 0; i < expected.length; i++) {
+			if (bytes[start + i] != expected[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void require(int count) throws CborException {
+		if (end - position < count) {
+			throw new CborException("Unexpected end of CBOR input");
+		}
+	}
+}
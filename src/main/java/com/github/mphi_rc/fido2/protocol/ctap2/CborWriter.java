@@ -0,0 +1,136 @@
+package com.github.mphi_rc.fido2.protocol.ctap2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes CTAP2 canonical CBOR into a growable buffer that is reused between responses. Callers
+ * emit map entries in canonical key order themselves; the writer only produces minimal-length
+ * headers and definite lengths.
+ */
+public class CborWriter {
+
+	private static final int UNSIGNED_INTEGER = 0;
+	private static final int NEGATIVE_INTEGER = 1;
+	private static final int BYTE_STRING = 2;
+	private static final int TEXT_STRING = 3;
+	private static final int ARRAY = 4;
+	private static final int MAP = 5;
+	private static final int FALSE = 0xF4;
+	private static final int TRUE = 0xF5;
+
+	private byte[] buffer;
+	private int position;
+
+	public CborWriter() {
+		this(1024);
+	}
+
+	public CborWriter(int initialCapacity) {
+		this.buffer = new byte[initialCapacity];
+		this.position = 0;
+	}
+
+	public CborWriter reset() {
+		position = 0;
+		return this;
+	}
+
+	/**
+	 * Writes the CTAP2 status byte that precedes every response body. It is a raw byte, not a
+	 * CBOR item.
+	 */
+	public CborWriter writeStatus(Ctap2ResponseCode code) {
+		ensureCapacity(1);
+		buffer[position++] = code.asBytes()[0];
+		return this;
+	}
+
+	public CborWriter writeMapHeader(int entries) {
+		writeHeader(MAP, entries);
+		return this;
+	}
+
+	public CborWriter writeArrayHeader(int items) {
+		writeHeader(ARRAY, items);
+		return this;
+	}
+
+	public CborWriter writeInteger(long value) {
+		if (value < 0) {
+			writeHeader(NEGATIVE_INTEGER, -1 - value);
+		} else {
+			writeHeader(UNSIGNED_INTEGER, value);
+		}
+		return this;
+	}
+
+	public CborWriter writeByteString(byte[] value) {
+		writeHeader(BYTE_STRING, value.length);
+		writeRaw(value);
+		return this;
+	}
+
+	public CborWriter writeTextString(String value) {
+		byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+		writeHeader(TEXT_STRING, utf8.length);
+		writeRaw(utf8);
+		return this;
+	}
+
+	public CborWriter writeBoolean(boolean value) {
+		ensureCapacity(1);
+		buffer[position++] = (byte) (value ? TRUE : FALSE);
+		return this;
+	}
+
+	/**
+	 * Copies bytes that are already valid CBOR, such as a pre-encoded map, into the output.
+	 */
+	public CborWriter writeRaw(byte[] encoded) {
+		ensureCapacity(encoded.length);
+		System.arraycopy(encoded, 0, buffer, position, encoded.length);
+		position += encoded.length;
+		return this;
+	}
+
+	public int length() {
+		return position;
+	}
+
+	public byte[] toByteArray() {
+		return Arrays.copyOf(buffer, position);
+	}
+
+	private void writeHeader(int majorType, long argument) {
+		ensureCapacity(9);
+		int type = majorType << 5;
+		if (argument < 24) {
+			buffer[position++] = (byte) (type | argument);
+		} else if (argument < 0x100) {
+			buffer[position++] = (byte) (type | 24);
+			buffer[position++] = (byte) argument;
+		} else if (argument < 0x10000) {
+			buffer[position++] = (byte) (type | 25);
+			writeBigEndian(argument, 2);
+		} else if (argument < 0x100000000L) {
+			buffer[position++] = (byte) (type | 26);
+			writeBigEndian(argument, 4);
+		} else {
+			buffer[position++] = (byte) (type | 27);
+			writeBigEndian(argument, 8);
+		}
+	}
+
+	private void writeBigEndian(long value, int size) {
+		for (int shift = (size - 1) * 8; shift >= 0; shift -= 8) {
+			buffer[position++] = (byte) (value >>> shift);
+		}
+	}
+
+	private void ensureCapacity(int additional) {
+		if (position + additional > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + additional));
+		}
+	}
+}
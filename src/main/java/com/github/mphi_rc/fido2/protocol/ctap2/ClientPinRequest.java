@@ -0,0 +1,84 @@
+package com.github.mphi_rc.fido2.protocol.ctap2;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.immutables.value.Value;
+
+import com.google.common.collect.Iterables;
+
+import co.nstant.in.cbor.CborDecoder;
+import co.nstant.in.cbor.CborException;
+import co.nstant.in.cbor.model.ByteString;
+import co.nstant.in.cbor.model.DataItem;
+import co.nstant.in.cbor.model.Map;
+import co.nstant.in.cbor.model.UnsignedInteger;
+
+@Value.Immutable
+public abstract class ClientPinRequest {
+
+	public static final int GET_RETRIES = 0x01;
+	public static final int GET_KEY_AGREEMENT = 0x02;
+	public static final int SET_PIN = 0x03;
+	public static final int CHANGE_PIN = 0x04;
+	public static final int GET_PIN_TOKEN = 0x05;
+
+	private static final byte PIN_PROTOCOL_VERSION_KEY = 0x01;
+	private static final byte SUB_COMMAND_KEY = 0x02;
+	private static final byte KEY_AGREEMENT_KEY = 0x03;
+	private static final byte PIN_AUTH_KEY = 0x04;
+	private static final byte NEW_PIN_ENC_KEY = 0x05;
+	private static final byte PIN_HASH_ENC_KEY = 0x06;
+
+	public static ClientPinRequest fromBytes(byte[] bytes, int offset, int length) throws CborException {
+		List<DataItem> values = new CborDecoder(new ByteArrayInputStream(bytes, offset, length)).decode();
+
+		Map map = (Map) Iterables.getFirst(values, null);
+		if (Objects.isNull(map)) {
+			throw new CborException("Empty CBOR request");
+		}
+		UnsignedInteger subCommand = (UnsignedInteger) map.get(new UnsignedInteger(SUB_COMMAND_KEY));
+		if (Objects.isNull(subCommand)) {
+			throw new CborException("The sub-command is missing");
+		}
+
+		ImmutableClientPinRequest.Builder builder = ImmutableClientPinRequest.builder()
+				.subCommand(subCommand.getValue().intValue());
+
+		UnsignedInteger pinProtocolVersion = (UnsignedInteger) map.get(new UnsignedInteger(PIN_PROTOCOL_VERSION_KEY));
+		if (!Objects.isNull(pinProtocolVersion)) {
+			builder.pinProtocolVersion(pinProtocolVersion.getValue().intValue());
+		}
+
+		Map keyAgreement = (Map) map.get(new UnsignedInteger(KEY_AGREEMENT_KEY));
+		if (!Objects.isNull(keyAgreement)) {
+			builder.keyAgreement(keyAgreement);
+		}
+
+		ByteString pinAuth = (ByteString) map.get(new UnsignedInteger(PIN_AUTH_KEY));
+		if (!Objects.isNull(pinAuth)) {
+			builder.pinAuth(pinAuth.getBytes());
+		}
+
+		ByteString newPinEnc = (ByteString) map.get(new UnsignedInteger(NEW_PIN_ENC_KEY));
+		if (!Objects.isNull(newPinEnc)) {
+			builder.newPinEnc(newPinEnc.getBytes());
+		}
+
+		ByteString pinHashEnc = (ByteString) map.get(new UnsignedInteger(PIN_HASH_ENC_KEY));
+		if (!Objects.isNull(pinHashEnc)) {
+			builder.pinHashEnc(pinHashEnc.getBytes());
+		}
+		return builder.build();
+	}
+
+	public abstract int subCommand();
+	public abstract Optional<Integer> pinProtocolVersion();
+	public abstract Optional<Map> keyAgreement();
+	public abstract Optional<byte[]> pinAuth();
+	public abstract Optional<byte[]> newPinEnc();
+	public abstract Optional<byte[]> pinHashEnc();
+
+}
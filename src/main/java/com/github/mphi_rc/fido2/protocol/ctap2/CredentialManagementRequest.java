@@ -0,0 +1,110 @@
+package com.github.mphi_rc.fido2.protocol.ctap2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+
+import org.immutables.value.Value;
+
+import co.nstant.in.cbor.CborException;
+
+@Value.Immutable
+public abstract class CredentialManagementRequest {
+
+	public static final int GET_CREDS_METADATA = 0x01;
+	public static final int ENUMERATE_RPS_BEGIN = 0x02;
+	public static final int ENUMERATE_RPS_GET_NEXT_RP = 0x03;
+	public static final int ENUMERATE_CREDENTIALS_BEGIN = 0x04;
+	public static final int ENUMERATE_CREDENTIALS_GET_NEXT_CREDENTIAL = 0x05;
+	public static final int DELETE_CREDENTIAL = 0x06;
+
+	private static final byte SUB_COMMAND_KEY = 0x01;
+	private static final byte SUB_COMMAND_PARAMS_KEY = 0x02;
+	private static final byte PIN_PROTOCOL_VERSION_KEY = 0x03;
+	private static final byte PIN_AUTH_KEY = 0x04;
+	private static final byte RELAYING_PARTY_ID_HASH_KEY = 0x01;
+	private static final byte CREDENTIAL_ID_KEY = 0x02;
+	private static final byte[] ID = "id".getBytes(StandardCharsets.US_ASCII);
+
+	public static CredentialManagementRequest fromBytes(byte[] bytes, int offset, int length) throws CborException {
+		CborReader reader = new CborReader(bytes, offset, length);
+		if (!reader.hasRemaining()) {
+			throw new CborException("Empty CBOR request");
+		}
+
+		ImmutableCredentialManagementRequest.Builder builder = ImmutableCredentialManagementRequest.builder();
+		boolean hasSubCommand = false;
+		int paramsStart = 0;
+		int paramsEnd = 0;
+		for (int entries = reader.readMapLength(); entries > 0; entries--) {
+			switch (reader.readIntegerKey()) {
+			case SUB_COMMAND_KEY:
+				builder.subCommand((int) reader.readUnsignedInteger());
+				hasSubCommand = true;
+				break;
+			case SUB_COMMAND_PARAMS_KEY:
+				paramsStart = reader.position();
+				for (int params = reader.readMapLength(); params > 0; params--) {
+					switch (reader.readIntegerKey()) {
+					case RELAYING_PARTY_ID_HASH_KEY:
+						builder.relayingPartyIdHash(reader.readByteString());
+						break;
+					case CREDENTIAL_ID_KEY:
+						for (int fields = reader.readMapLength(); fields > 0; fields--) {
+							if (reader.readTextKey(ID) == 0) {
+								builder.credentialId(reader.readByteString());
+							} else {
+								reader.skip();
+							}
+						}
+						break;
+					default:
+						reader.skip();
+						break;
+					}
+				}
+				paramsEnd = reader.position();
+				break;
+			case PIN_PROTOCOL_VERSION_KEY:
+				builder.pinProtocolVersion((int) reader.readUnsignedInteger());
+				break;
+			case PIN_AUTH_KEY:
+				builder.pinAuth(reader.readByteString());
+				break;
+			default:
+				reader.skip();
+				break;
+			}
+		}
+		reader.requireEnd();
+
+		if (!hasSubCommand) {
+			throw new CborException("The sub-command is missing");
+		}
+		builder.subCommandParams(Arrays.copyOfRange(bytes, paramsStart, paramsEnd));
+		return builder.build();
+	}
+
+	public abstract int subCommand();
+
+	/**
+	 * The encoded sub-command parameters exactly as the host sent them, which pinAuth covers.
+	 */
+	public abstract byte[] subCommandParams();
+
+	public abstract Optional<byte[]> relayingPartyIdHash();
+	public abstract Optional<byte[]> credentialId();
+	public abstract Optional<Integer> pinProtocolVersion();
+	public abstract Optional<byte[]> pinAuth();
+
+	/**
+	 * The message pinAuth is computed over: the sub-command followed by its parameters.
+	 */
+	public byte[] authenticatedMessage() {
+		byte[] params = subCommandParams();
+		byte[] message = new byte[1 + params.length];
+		message[0] = (byte) subCommand();
+		System.arraycopy(params, 0, message, 1, params.length);
+		return message;
+	}
+}
@@ -0,0 +1,100 @@
+package com.github.mphi_rc.fido2.protocol.ctap2;
+
+import java.util.Optional;
+
+import org.immutables.value.Value;
+
+@Value.Immutable
+public abstract class CredentialManagementResponse implements CborEncodable {
+
+	private static final byte EXISTING_RESIDENT_CREDENTIALS_COUNT_KEY = 0x01;
+	private static final byte MAX_POSSIBLE_REMAINING_RESIDENT_CREDENTIALS_COUNT_KEY = 0x02;
+	private static final byte RELAYING_PARTY_KEY = 0x03;
+	private static final byte RELAYING_PARTY_ID_HASH_KEY = 0x04;
+	private static final byte TOTAL_RELAYING_PARTIES_KEY = 0x05;
+	private static final byte USER_KEY = 0x06;
+	private static final byte CREDENTIAL_ID_KEY = 0x07;
+	private static final byte PUBLIC_KEY_KEY = 0x08;
+	private static final byte TOTAL_CREDENTIALS_KEY = 0x09;
+
+	public abstract Optional<Integer> existingResidentCredentialsCount();
+	public abstract Optional<Integer> maxPossibleRemainingResidentCredentialsCount();
+	public abstract Optional<String> relayingPartyId();
+	public abstract Optional<byte[]> relayingPartyIdHash();
+	public abstract Optional<Integer> totalRelayingParties();
+	public abstract Optional<byte[]> userId();
+	public abstract Optional<String> userName();
+	public abstract Optional<String> userDisplayName();
+	public abstract Optional<byte[]> credentialId();
+
+	/**
+	 * The credential's public key, already encoded as a COSE key.
+	 */
+	public abstract Optional<byte[]> publicKey();
+
+	public abstract Optional<Integer> totalCredentials();
+
+	@Override
+	public void encode(CborWriter writer) {
+		int entries = count(existingResidentCredentialsCount(), maxPossibleRemainingResidentCredentialsCount(),
+				relayingPartyId(), relayingPartyIdHash(), totalRelayingParties(), userId(), credentialId(), publicKey(),
+				totalCredentials());
+		writer.writeMapHeader(entries);
+		if (existingResidentCredentialsCount().isPresent()) {
+			writer.writeInteger(EXISTING_RESIDENT_CREDENTIALS_COUNT_KEY)
+					.writeInteger(existingResidentCredentialsCount().get());
+		}
+		if (maxPossibleRemainingResidentCredentialsCount().isPresent()) {
+			writer.writeInteger(MAX_POSSIBLE_REMAINING_RESIDENT_CREDENTIALS_COUNT_KEY)
+					.writeInteger(maxPossibleRemainingResidentCredentialsCount().get());
+		}
+		if (relayingPartyId().isPresent()) {
+			writer.writeInteger(RELAYING_PARTY_KEY)
+					.writeMapHeader(1)
+					.writeTextString("id").writeTextString(relayingPartyId().get());
+		}
+		if (relayingPartyIdHash().isPresent()) {
+			writer.writeInteger(RELAYING_PARTY_ID_HASH_KEY)
+					.writeByteString(relayingPartyIdHash().get());
+		}
+		if (totalRelayingParties().isPresent()) {
+			writer.writeInteger(TOTAL_RELAYING_PARTIES_KEY)
+					.writeInteger(totalRelayingParties().get());
+		}
+		if (userId().isPresent()) {
+			writer.writeInteger(USER_KEY)
+					.writeMapHeader(count(userId(), userName(), userDisplayName()))
+					.writeTextString("id").writeByteString(userId().get());
+			if (userName().isPresent()) {
+				writer.writeTextString("name").writeTextString(userName().get());
+			}
+			if (userDisplayName().isPresent()) {
+				writer.writeTextString("displayName").writeTextString(userDisplayName().get());
+			}
+		}
+		if (credentialId().isPresent()) {
+			writer.writeInteger(CREDENTIAL_ID_KEY)
+					.writeMapHeader(2)
+					.writeTextString("id").writeByteString(credentialId().get())
+					.writeTextString("type").writeTextString("public-key");
+		}
+		if (publicKey().isPresent()) {
+			writer.writeInteger(PUBLIC_KEY_KEY)
+					.writeRaw(publicKey().get());
+		}
+		if (totalCredentials().isPresent()) {
+			writer.writeInteger(TOTAL_CREDENTIALS_KEY)
+					.writeInteger(totalCredentials().get());
+		}
+	}
+
+	private static int count(Optional<?>... fields) {
+		int present = 0;
+		for (Optional<?> field : fields) {
+			if (field.isPresent()) {
+				present++;
+			}
+		}
+		return present;
+	}
+}
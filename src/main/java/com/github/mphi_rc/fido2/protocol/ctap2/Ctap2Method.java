@@ -10,6 +10,8 @@ public enum Ctap2Method {
 	CLIENT_PIN(0x06),
 	RESET(0x07),
 	GET_NEXT_ASSERTION(0x08),
+	CREDENTIAL_MANAGEMENT(0x0A),
+	CREDENTIAL_MANAGEMENT_PREVIEW(0x41),
 	UNKNOWN();
 
 	private Byte id;
@@ -5,6 +5,7 @@ import java.util.EnumSet;
 public enum Ctap2ResponseCode {
 
 	OK(0x00),
+	INVALID_LENGTH(0x03),
 	CBOR_UNEXPECTED_TYPE(0x11),
 	INVALID_CBOR(0x12),
 	MISSING_PARAMETER(0x14),
@@ -37,6 +38,7 @@ public enum Ctap2ResponseCode {
 	REQUEST_TOO_LARGE(0x39),
 	ACTION_TIMEOUT(0x3A),
 	USER_PRESENCE_REQUIRED(0x3B),
+	INVALID_SUBCOMMAND(0x3E),
 	OTHER(0x7F);
 
 	private Byte id;
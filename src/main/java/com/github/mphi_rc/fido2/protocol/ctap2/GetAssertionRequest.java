@@ -1,81 +1,124 @@
 package com.github.mphi_rc.fido2.protocol.ctap2;
 
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.Objects;
 import java.util.Optional;
-import java.util.Set;
 
 import org.immutables.value.Value;
 
-import com.google.common.collect.Iterables;
-
-import co.nstant.in.cbor.CborDecoder;
 import co.nstant.in.cbor.CborException;
-import co.nstant.in.cbor.model.Array;
-import co.nstant.in.cbor.model.ByteString;
-import co.nstant.in.cbor.model.DataItem;
-import co.nstant.in.cbor.model.Map;
-import co.nstant.in.cbor.model.UnicodeString;
-import co.nstant.in.cbor.model.UnsignedInteger;
 
 @Value.Immutable
 public abstract class GetAssertionRequest {
 
+	public static final int MAX_ALLOW_LIST_LENGTH = 64;
+
 	private static final byte RELAYING_PARTY_ID_KEY = 0x01;
 	private static final byte CLIENT_DATA_HASH_KEY = 0x02;
 	private static final byte ALLOW_LIST_KEY = 0x03;
+	private static final byte EXTENSIONS_KEY = 0x04;
+	private static final byte OPTIONS_KEY = 0x05;
 	private static final byte PIN_AUTH_KEY = 0x06;
 	private static final byte PIN_PROTOCOL_VERSION_KEY = 0x07;
+	private static final byte[] ID = "id".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] UP = "up".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] UV = "uv".getBytes(StandardCharsets.US_ASCII);
 
 	public static GetAssertionRequest fromBytes(byte[] bytes) throws CborException {
-		List<DataItem> values = CborDecoder.decode(bytes);
+		return fromBytes(bytes, 0, bytes.length);
+	}
 
-		Map map = (Map) Iterables.getFirst(values, null);
-		if (Objects.isNull(map)) {
+	public static GetAssertionRequest fromBytes(byte[] bytes, int offset, int length) throws CborException {
+		CborReader reader = new CborReader(bytes, offset, length);
+		if (!reader.hasRemaining()) {
 			throw new CborException("Empty CBOR request");
 		}
-		ByteString clientDataHash = (ByteString) map.get(new UnsignedInteger(CLIENT_DATA_HASH_KEY));
-		if (Objects.isNull(clientDataHash)) {
-			throw new CborException("The client data hash is missing");
-		}
 
-		UnicodeString relayingPartyId = (UnicodeString) map.get(new UnsignedInteger(RELAYING_PARTY_ID_KEY));
-		if (Objects.isNull(relayingPartyId)) {
-			throw new CborException("The relaying party ID is missing");
-		}
-		
-		Array allowList = (Array) map.get(new UnsignedInteger(ALLOW_LIST_KEY));
-		ArrayList<byte[]> publicKeyIds = new ArrayList<>();
-		if (!Objects.isNull(relayingPartyId)) {
-			for (DataItem item : allowList.getDataItems()) {
-				ByteString id = ((ByteString) ((Map) item).get(new UnicodeString("id")));
-				publicKeyIds.add(id.getBytes());
+		ImmutableGetAssertionRequest.Builder builder = ImmutableGetAssertionRequest.builder();
+		boolean hasClientDataHash = false;
+		boolean hasRelayingPartyId = false;
+		for (int entries = reader.readMapLength(); entries > 0; entries--) {
+			switch (reader.readIntegerKey()) {
+			case RELAYING_PARTY_ID_KEY:
+				builder.relayingPartyId(reader.readTextString());
+				hasRelayingPartyId = true;
+				break;
+			case CLIENT_DATA_HASH_KEY:
+				builder.clientDataHash(reader.readByteString());
+				hasClientDataHash = true;
+				break;
+			case ALLOW_LIST_KEY:
+				for (int descriptors = reader.readArrayLength(); descriptors > 0; descriptors--) {
+					for (int fields = reader.readMapLength(); fields > 0; fields--) {
+						if (reader.readTextKey(ID) == 0) {
+							builder.addPublicKeyIds(reader.readByteString());
+						} else {
+							reader.skip();
+						}
+					}
+				}
+				break;
+			case EXTENSIONS_KEY:
+				for (int extensions = reader.readMapLength(); extensions > 0; extensions--) {
+					if (reader.readTextKey(HmacSecretInput.EXTENSION_KEY) == 0) {
+						builder.hmacSecret(HmacSecretInput.read(reader));
+					} else {
+						reader.skip();
+					}
+				}
+				break;
+			case OPTIONS_KEY:
+				for (int options = reader.readMapLength(); options > 0; options--) {
+					switch (reader.readTextKey(UP, UV)) {
+					case 0:
+						builder.userPresence(reader.readBoolean());
+						break;
+					case 1:
+						builder.userVerification(reader.readBoolean());
+						break;
+					default:
+						reader.skip();
+						break;
+					}
+				}
+				break;
+			case PIN_AUTH_KEY:
+				builder.pinAuth(reader.readByteString());
+				break;
+			case PIN_PROTOCOL_VERSION_KEY:
+				builder.pinProtocolVersion((int) reader.readUnsignedInteger());
+				break;
+			default:
+				reader.skip();
+				break;
 			}
 		}
-		
-		ImmutableGetAssertionRequest.Builder builder = ImmutableGetAssertionRequest.builder()
-				.clientDataHash(clientDataHash.getBytes())
-				.relayingPartyId(relayingPartyId.getString())
-				.publicKeyIds(publicKeyIds);
-		
-		ByteString pinAuth = (ByteString) map.get(new UnsignedInteger(PIN_AUTH_KEY));
-		if (!Objects.isNull(pinAuth)) {
-			builder.pinAuth(pinAuth.getBytes());
-		}
+		reader.requireEnd();
 
-		UnsignedInteger pinProtocolVersion = (UnsignedInteger) map.get(new UnsignedInteger(PIN_PROTOCOL_VERSION_KEY));
-		if (!Objects.isNull(pinProtocolVersion)) {
-			builder.pinProtocolVersion(pinProtocolVersion.getValue().intValue());
+		if (!hasClientDataHash) {
+			throw new CborException("The client data hash is missing");
+		}
+		if (!hasRelayingPartyId) {
+			throw new CborException("The relaying party ID is missing");
 		}
-		
 		return builder.build();
 	}
 
 	public abstract String relayingPartyId();
 	public abstract byte[] clientDataHash();
-	public abstract Set<byte[]> publicKeyIds();
+	public abstract List<byte[]> publicKeyIds();
 	public abstract Optional<byte[]> pinAuth();
 	public abstract Optional<Integer> pinProtocolVersion();
+	public abstract Optional<HmacSecretInput> hmacSecret();
+
+	@Value.Default
+	public boolean userPresence() {
+		return true;
+	}
+
+	@Value.Default
+	public boolean userVerification() {
+		return false;
+	}
 
 }
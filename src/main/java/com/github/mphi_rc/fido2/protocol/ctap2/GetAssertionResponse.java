@@ -1,34 +1,88 @@
 package com.github.mphi_rc.fido2.protocol.ctap2;
 
 import java.util.List;
+import java.util.Optional;
 
 import org.immutables.value.Value;
 
 import co.nstant.in.cbor.CborBuilder;
+import co.nstant.in.cbor.builder.MapBuilder;
 import co.nstant.in.cbor.model.DataItem;
 
 @Value.Immutable
-public abstract class GetAssertionResponse {
+public abstract class GetAssertionResponse implements CborEncodable {
 
 	private static final byte CREDENTIAL_KEY = 0x01;
 	private static final byte AUTH_DATA_KEY = 0x02;
 	private static final byte SIGNATURE_KEY = 0x03;
+	private static final byte USER_KEY = 0x04;
+	private static final byte NUMBER_OF_CREDENTIALS_KEY = 0x05;
 
 	public abstract byte[] credentialId();
 	public abstract byte[] authData();
 	public abstract byte[] signature();
 	public abstract byte[] userId();
 
+	/**
+	 * Set on the first response of a getAssertion request that matched more than one credential.
+	 */
+	public abstract Optional<Integer> numberOfCredentials();
+
+	/**
+	 * Whether the response names the user (0x04). It does on every response for a resident
+	 * credential, and for any credential of a session that matched more than one.
+	 */
+	@Value.Default
+	public boolean isUserIncluded() {
+		return false;
+	}
+
+	@Override
+	public void encode(CborWriter writer) {
+		int entries = 3;
+		if (isUserIncluded()) {
+			entries++;
+		}
+		if (numberOfCredentials().isPresent()) {
+			entries++;
+		}
+		writer.writeMapHeader(entries)
+				.writeInteger(CREDENTIAL_KEY)
+				.writeMapHeader(2)
+				.writeTextString("id").writeByteString(credentialId())
+				.writeTextString("type").writeTextString("public-key")
+				.writeInteger(AUTH_DATA_KEY)
+				.writeByteString(authData())
+				.writeInteger(SIGNATURE_KEY)
+				.writeByteString(signature());
+		if (isUserIncluded()) {
+			writer.writeInteger(USER_KEY)
+					.writeMapHeader(1)
+					.writeTextString("id").writeByteString(userId());
+		}
+		if (numberOfCredentials().isPresent()) {
+			writer.writeInteger(NUMBER_OF_CREDENTIALS_KEY)
+					.writeInteger(numberOfCredentials().get());
+		}
+	}
+
 	public List<DataItem> asCborMap() {
-		return new CborBuilder()
+		MapBuilder<CborBuilder> map = new CborBuilder()
 				.addMap()
 					.putMap(CREDENTIAL_KEY)
 						.put("id", credentialId())
 						.put("type", "public-key")
 					.end()
 					.put(AUTH_DATA_KEY, authData())
-					.put(SIGNATURE_KEY, signature())
-				.end()
-				.build();
+					.put(SIGNATURE_KEY, signature());
+		if (isUserIncluded()) {
+			map = map.putMap(USER_KEY)
+						.put("id", userId())
+					.end();
+		}
+		if (numberOfCredentials().isPresent()) {
+			map = map.put(NUMBER_OF_CREDENTIALS_KEY, numberOfCredentials().get());
+		}
+		return map.end().build();
 	}
 }
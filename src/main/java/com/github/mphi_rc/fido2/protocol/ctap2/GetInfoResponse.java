@@ -4,19 +4,27 @@ import java.util.List;
 
 import org.immutables.value.Value;
 
+import com.github.mphi_rc.fido2.authenticator.Credential;
+import com.github.mphi_rc.fido2.protocol.usbhid.PacketView;
+
 import co.nstant.in.cbor.CborBuilder;
 import co.nstant.in.cbor.model.DataItem;
 
 @Value.Immutable
-public abstract class GetInfoResponse {
+public abstract class GetInfoResponse implements CborEncodable {
 	
 	private static final byte VERSIONS_KEY = 0x01;
+	private static final byte EXTENSIONS_KEY = 0x02;
 	private static final byte AAGUID_KEY = 0x03;
 	private static final byte OPTIONS_KEY = 0x04;
+	private static final byte MAX_MSG_SIZE_KEY = 0x05;
+	private static final byte MAX_CREDENTIAL_COUNT_IN_LIST_KEY = 0x07;
+	private static final byte MAX_CREDENTIAL_ID_LENGTH_KEY = 0x08;
 	private static final String PLATFORM_OPTION = "plat";
 	private static final String RESIDENT_KEY_OPTION = "rk";
 	private static final String USER_PRESENCE_OPTION = "up";
 	private static final String CLIENT_PIN_OPTION = "clientPin";
+	private static final String CREDENTIAL_MANAGEMENT_OPTION = "credentialMgmtPreview";
 	
 	public static enum Version {
 		FIDO_2_0, U2F_V2;
@@ -30,20 +38,68 @@ public abstract class GetInfoResponse {
 	
 	@Value.Parameter
 	public abstract boolean isPinConfigured();
+
+	@Value.Default
+	public int maxMsgSize() {
+		return PacketView.MAX_MESSAGE_LENGTH;
+	}
+
+	@Value.Default
+	public int maxCredentialCountInList() {
+		return GetAssertionRequest.MAX_ALLOW_LIST_LENGTH;
+	}
+
+	@Value.Default
+	public int maxCredentialIdLength() {
+		return Credential.ID_LENGTH;
+	}
 	
+	@Override
+	public void encode(CborWriter writer) {
+		writer.writeMapHeader(7)
+				.writeInteger(VERSIONS_KEY)
+				.writeArrayHeader(1)
+				.writeTextString(version().name())
+				.writeInteger(EXTENSIONS_KEY)
+				.writeArrayHeader(1)
+				.writeTextString(HmacSecretInput.EXTENSION_ID)
+				.writeInteger(AAGUID_KEY)
+				.writeByteString(aaguid())
+				.writeInteger(OPTIONS_KEY)
+				.writeMapHeader(5)
+				.writeTextString(PLATFORM_OPTION).writeBoolean(false)
+				.writeTextString(RESIDENT_KEY_OPTION).writeBoolean(true)
+				.writeTextString(USER_PRESENCE_OPTION).writeBoolean(true)
+				.writeTextString(CLIENT_PIN_OPTION).writeBoolean(isPinConfigured())
+				.writeTextString(CREDENTIAL_MANAGEMENT_OPTION).writeBoolean(true)
+				.writeInteger(MAX_MSG_SIZE_KEY)
+				.writeInteger(maxMsgSize())
+				.writeInteger(MAX_CREDENTIAL_COUNT_IN_LIST_KEY)
+				.writeInteger(maxCredentialCountInList())
+				.writeInteger(MAX_CREDENTIAL_ID_LENGTH_KEY)
+				.writeInteger(maxCredentialIdLength());
+	}
+
 	public List<DataItem> asCborMap() {
 		return new CborBuilder()
 				.addMap()
 					.putArray(VERSIONS_KEY)
 						.add(version().name())
 					.end()
+					.putArray(EXTENSIONS_KEY)
+						.add(HmacSecretInput.EXTENSION_ID)
+					.end()
 					.put(AAGUID_KEY, aaguid())
 					.putMap(OPTIONS_KEY)
 						.put(PLATFORM_OPTION, false)
-						.put(RESIDENT_KEY_OPTION, false)
+						.put(RESIDENT_KEY_OPTION, true)
 						.put(USER_PRESENCE_OPTION, true)
 						.put(CLIENT_PIN_OPTION, isPinConfigured())
+						.put(CREDENTIAL_MANAGEMENT_OPTION, true)
 					.end()
+					.put(MAX_MSG_SIZE_KEY, maxMsgSize())
+					.put(MAX_CREDENTIAL_COUNT_IN_LIST_KEY, maxCredentialCountInList())
+					.put(MAX_CREDENTIAL_ID_LENGTH_KEY, maxCredentialIdLength())
 				.end()
 				.build();
 	}
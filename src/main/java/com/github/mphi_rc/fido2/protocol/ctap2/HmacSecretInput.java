@@ -0,0 +1,83 @@
+package com.github.mphi_rc.fido2.protocol.ctap2;
+
+import java.nio.charset.StandardCharsets;
+
+import org.immutables.value.Value;
+
+import com.github.mphi_rc.fido2.authenticator.crypto.CoseKeyConstants;
+
+import co.nstant.in.cbor.CborException;
+
+/**
+ * The hmac-secret extension input of a getAssertion request: the host's key agreement key and
+ * one or two salts encrypted under the secret it shares with the authenticator.
+ */
+@Value.Immutable
+public abstract class HmacSecretInput {
+
+	public static final String EXTENSION_ID = "hmac-secret";
+
+	static final byte[] EXTENSION_KEY = EXTENSION_ID.getBytes(StandardCharsets.US_ASCII);
+
+	private static final byte KEY_AGREEMENT_KEY = 0x01;
+	private static final byte SALT_ENC_KEY = 0x02;
+	private static final byte SALT_AUTH_KEY = 0x03;
+
+	static HmacSecretInput read(CborReader reader) throws CborException {
+		ImmutableHmacSecretInput.Builder builder = ImmutableHmacSecretInput.builder();
+		boolean hasX = false;
+		boolean hasY = false;
+		boolean hasSaltEnc = false;
+		boolean hasSaltAuth = false;
+		for (int entries = reader.readMapLength(); entries > 0; entries--) {
+			switch (reader.readIntegerKey()) {
+			case KEY_AGREEMENT_KEY:
+				for (int fields = reader.readMapLength(); fields > 0; fields--) {
+					if (reader.peekMajorType() != CborReader.NEGATIVE_INTEGER) {
+						reader.skip();
+						reader.skip();
+						continue;
+					}
+					switch ((int) reader.readInteger()) {
+					case CoseKeyConstants.X_COORDINATE:
+						builder.keyAgreementX(reader.readByteString());
+						hasX = true;
+						break;
+					case CoseKeyConstants.Y_COORDINATE:
+						builder.keyAgreementY(reader.readByteString());
+						hasY = true;
+						break;
+					default:
+						reader.skip();
+						break;
+					}
+				}
+				break;
+			case SALT_ENC_KEY:
+				builder.saltEnc(reader.readByteString());
+				hasSaltEnc = true;
+				break;
+			case SALT_AUTH_KEY:
+				builder.saltAuth(reader.readByteString());
+				hasSaltAuth = true;
+				break;
+			default:
+				reader.skip();
+				break;
+			}
+		}
+
+		if (!hasX || !hasY) {
+			throw new CborException("The hmac-secret key agreement key is missing");
+		}
+		if (!hasSaltEnc || !hasSaltAuth) {
+			throw new CborException("The hmac-secret salts are missing");
+		}
+		return builder.build();
+	}
+
+	public abstract byte[] keyAgreementX();
+	public abstract byte[] keyAgreementY();
+	public abstract byte[] saltEnc();
+	public abstract byte[] saltAuth();
+}
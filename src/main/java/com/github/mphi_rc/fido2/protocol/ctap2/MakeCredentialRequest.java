@@ -1,25 +1,12 @@
 package com.github.mphi_rc.fido2.protocol.ctap2;
 
-import java.math.BigInteger;
-import java.util.List;
-import java.util.Objects;
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import org.immutables.value.Value;
 
-import com.google.common.collect.Iterables;
-
-import co.nstant.in.cbor.CborDecoder;
 import co.nstant.in.cbor.CborException;
-import co.nstant.in.cbor.model.Array;
-import co.nstant.in.cbor.model.ByteString;
-import co.nstant.in.cbor.model.DataItem;
-import co.nstant.in.cbor.model.Map;
-import co.nstant.in.cbor.model.NegativeInteger;
-import co.nstant.in.cbor.model.UnicodeString;
-import co.nstant.in.cbor.model.UnsignedInteger;
 
 @Value.Immutable
 public abstract class MakeCredentialRequest {
@@ -28,71 +15,152 @@ public abstract class MakeCredentialRequest {
 	private static final byte RELAYING_PARTY_ID_KEY = 0x02;
 	private static final byte USER_ID_KEY = 0x03;
 	private static final byte SUPPORTED_ALGORITHMS_KEY = 0x04;
+	private static final byte EXTENSIONS_KEY = 0x06;
+	private static final byte OPTIONS_KEY = 0x07;
 	private static final byte PIN_AUTH_KEY = 0x08;
 	private static final byte PIN_PROTOCOL_VERSION_KEY = 0x09;
+	private static final byte[] ID = "id".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] ALG = "alg".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] NAME = "name".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] DISPLAY_NAME = "displayName".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] RK = "rk".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] UV = "uv".getBytes(StandardCharsets.US_ASCII);
 	
 	public static MakeCredentialRequest fromBytes(byte[] bytes) throws CborException {
-		List<DataItem> values = CborDecoder.decode(bytes);
+		return fromBytes(bytes, 0, bytes.length);
+	}
 
-		Map map = (Map) Iterables.getFirst(values, null);
-		if (Objects.isNull(map)) {
+	public static MakeCredentialRequest fromBytes(byte[] bytes, int offset, int length) throws CborException {
+		CborReader reader = new CborReader(bytes, offset, length);
+		if (!reader.hasRemaining()) {
 			throw new CborException("Empty CBOR request");
 		}
-		ByteString clientDataHash = (ByteString) map.get(new UnsignedInteger(CLIENT_DATA_HASH_KEY));
-		if (Objects.isNull(clientDataHash)) {
-			throw new CborException("The client data hash is missing");
+
+		ImmutableMakeCredentialRequest.Builder builder = ImmutableMakeCredentialRequest.builder();
+		boolean hasClientDataHash = false;
+		boolean hasRelayingPartyId = false;
+		boolean hasUserId = false;
+		boolean hasSupportedAlgs = false;
+		for (int entries = reader.readMapLength(); entries > 0; entries--) {
+			switch (reader.readIntegerKey()) {
+			case CLIENT_DATA_HASH_KEY:
+				builder.clientDataHash(reader.readByteString());
+				hasClientDataHash = true;
+				break;
+			case RELAYING_PARTY_ID_KEY:
+				for (int fields = reader.readMapLength(); fields > 0; fields--) {
+					if (reader.readTextKey(ID) == 0) {
+						builder.relayingPartyId(reader.readTextString());
+						hasRelayingPartyId = true;
+					} else {
+						reader.skip();
+					}
+				}
+				break;
+			case USER_ID_KEY:
+				for (int fields = reader.readMapLength(); fields > 0; fields--) {
+					switch (reader.readTextKey(ID, NAME, DISPLAY_NAME)) {
+					case 0:
+						builder.userId(reader.readByteString());
+						hasUserId = true;
+						break;
+					case 1:
+						builder.userName(reader.readTextString());
+						break;
+					case 2:
+						builder.userDisplayName(reader.readTextString());
+						break;
+					default:
+						reader.skip();
+						break;
+					}
+				}
+				break;
+			case SUPPORTED_ALGORITHMS_KEY:
+				for (int algs = reader.readArrayLength(); algs > 0; algs--) {
+					for (int fields = reader.readMapLength(); fields > 0; fields--) {
+						if (reader.readTextKey(ALG) == 0) {
+							builder.addSupportedAlgorithmIds((int) reader.readInteger());
+						} else {
+							reader.skip();
+						}
+					}
+				}
+				hasSupportedAlgs = true;
+				break;
+			case EXTENSIONS_KEY:
+				for (int extensions = reader.readMapLength(); extensions > 0; extensions--) {
+					if (reader.readTextKey(HmacSecretInput.EXTENSION_KEY) == 0) {
+						builder.hmacSecret(reader.readBoolean());
+					} else {
+						reader.skip();
+					}
+				}
+				break;
+			case OPTIONS_KEY:
+				for (int options = reader.readMapLength(); options > 0; options--) {
+					switch (reader.readTextKey(RK, UV)) {
+					case 0:
+						builder.residentKey(reader.readBoolean());
+						break;
+					case 1:
+						builder.userVerification(reader.readBoolean());
+						break;
+					default:
+						reader.skip();
+						break;
+					}
+				}
+				break;
+			case PIN_AUTH_KEY:
+				builder.pinAuth(reader.readByteString());
+				break;
+			case PIN_PROTOCOL_VERSION_KEY:
+				builder.pinProtocolVersion((int) reader.readUnsignedInteger());
+				break;
+			default:
+				reader.skip();
+				break;
+			}
 		}
+		reader.requireEnd();
 
-		Map relayingParty = (Map) map.get(new UnsignedInteger(RELAYING_PARTY_ID_KEY));
-		if (Objects.isNull(relayingParty)) {
-			throw new CborException("The relaying party is missing");
+		if (!hasClientDataHash) {
+			throw new CborException("The client data hash is missing");
 		}
-		UnicodeString relayingPartyId = (UnicodeString) relayingParty.get(new UnicodeString("id"));
-		if (Objects.isNull(relayingPartyId)) {
+		if (!hasRelayingPartyId) {
 			throw new CborException("The relaying party ID is missing");
 		}
-
-		Map user = (Map) map.get(new UnsignedInteger(USER_ID_KEY));
-		if (Objects.isNull(user)) {
-			throw new CborException("The user data is missing");
-		}
-		ByteString userId = (ByteString) user.get(new UnicodeString("id"));
-		if (Objects.isNull(userId)) {
+		if (!hasUserId) {
 			throw new CborException("The user ID is missing");
 		}
-
-		Array supportedAlgs = (Array) map.get(new UnsignedInteger(SUPPORTED_ALGORITHMS_KEY));
-		if (Objects.isNull(supportedAlgs)) {
+		if (!hasSupportedAlgs) {
 			throw new CborException("The supported algorithms field is missing");
 		}
-		Set<Integer> supportedAlgIds = supportedAlgs.getDataItems().stream()
-				.map(item -> ((Map) item).get(new UnicodeString("alg")))
-				.map(item -> ((NegativeInteger) item).getValue())
-				.map(BigInteger::intValue)
-				.collect(Collectors.toSet());
-
-		ImmutableMakeCredentialRequest.Builder builder = ImmutableMakeCredentialRequest.builder()
-				.clientDataHash(clientDataHash.getBytes())
-				.relayingPartyId(relayingPartyId.getString())
-				.userId(userId.getBytes())
-				.addAllSupportedAlgorithmIds(supportedAlgIds);
-		
-		ByteString pinAuth = (ByteString) map.get(new UnsignedInteger(PIN_AUTH_KEY));
-		if (!Objects.isNull(pinAuth)) {
-			builder.pinAuth(pinAuth.getBytes());
-		}
-
-		UnsignedInteger pinProtocolVersion = (UnsignedInteger) map.get(new UnsignedInteger(PIN_PROTOCOL_VERSION_KEY));
-		if (!Objects.isNull(pinProtocolVersion)) {
-			builder.pinProtocolVersion(pinProtocolVersion.getValue().intValue());
-		}
 		return builder.build();
 	}
 	
 	public abstract byte[] clientDataHash();
 	public abstract String relayingPartyId();
 	public abstract byte[] userId();
+	public abstract Optional<String> userName();
+	public abstract Optional<String> userDisplayName();
 	public abstract Set<Integer> supportedAlgorithmIds();
 	public abstract Optional<byte[]> pinAuth();
 	public abstract Optional<Integer> pinProtocolVersion();
+
+	@Value.Default
+	public boolean residentKey() {
+		return false;
+	}
+
+	@Value.Default
+	public boolean userVerification() {
+		return false;
+	}
+
+	@Value.Default
+	public boolean hmacSecret() {
+		return false;
+	}
 }
@@ -8,7 +8,7 @@ import co.nstant.in.cbor.CborBuilder;
 import co.nstant.in.cbor.model.DataItem;
 
 @Value.Immutable
-public abstract class MakeCredentialResponse {
+public abstract class MakeCredentialResponse implements CborEncodable {
 
 	private static final byte FORMAT_KEY = 0x01;
 	private static final byte AUTH_DATA_KEY = 0x02;
@@ -19,6 +19,19 @@ public abstract class MakeCredentialResponse {
 	public abstract byte[] signature();
 	public abstract int algorithm();
 
+	@Override
+	public void encode(CborWriter writer) {
+		writer.writeMapHeader(3)
+				.writeInteger(FORMAT_KEY)
+				.writeTextString(format())
+				.writeInteger(AUTH_DATA_KEY)
+				.writeByteString(authData())
+				.writeInteger(ATTESTATION_STATEMENT_KEY)
+				.writeMapHeader(2)
+				.writeTextString("alg").writeInteger(algorithm())
+				.writeTextString("sig").writeByteString(signature());
+	}
+
 	public List<DataItem> asCborMap() {
 		return new CborBuilder()
 				.addMap()
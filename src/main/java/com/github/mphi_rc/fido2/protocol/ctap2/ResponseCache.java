@@ -0,0 +1,45 @@
+package com.github.mphi_rc.fido2.protocol.ctap2;
+
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Holds the GetInfo payload, which only changes with the authenticator's settings. It is encoded
+ * once and reused until the settings version moves on. The returned array is shared and must not
+ * be modified.
+ */
+public class ResponseCache {
+
+	private final Supplier<GetInfoResponse> getInfo;
+	private final IntSupplier settingsVersion;
+	private volatile CachedPayload info;
+
+	public ResponseCache(Supplier<GetInfoResponse> getInfo, IntSupplier settingsVersion) {
+		this.getInfo = getInfo;
+		this.settingsVersion = settingsVersion;
+	}
+
+	public byte[] getInfo() {
+		CachedPayload cached = info;
+		// read the version before encoding so a change made meanwhile invalidates this entry
+		int version = settingsVersion.getAsInt();
+		if (cached == null || cached.version != version) {
+			CborWriter writer = new CborWriter(128);
+			writer.writeStatus(Ctap2ResponseCode.OK);
+			getInfo.get().encode(writer);
+			cached = new CachedPayload(version, writer.toByteArray());
+			info = cached;
+		}
+		return cached.payload;
+	}
+
+	private static class CachedPayload {
+		final int version;
+		final byte[] payload;
+
+		CachedPayload(int version, byte[] payload) {
+			this.version = version;
+			this.payload = payload;
+		}
+	}
+}
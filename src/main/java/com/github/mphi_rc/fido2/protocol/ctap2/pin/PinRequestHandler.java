@@ -1,18 +1,10 @@
 package com.github.mphi_rc.fido2.protocol.ctap2.pin;
 
-import java.math.BigInteger;
-import java.security.KeyFactory;
 import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECPoint;
 import java.util.List;
 
-import org.bouncycastle.crypto.params.ECPublicKeyParameters;
-import org.bouncycastle.jcajce.provider.asymmetric.util.ECUtil;
-import org.bouncycastle.jce.ECNamedCurveTable;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.bouncycastle.jce.spec.ECNamedCurveParameterSpec;
-import org.bouncycastle.jce.spec.ECPublicKeySpec;
-import org.bouncycastle.math.ec.ECFieldElement;
-import org.bouncycastle.math.ec.ECPoint;
 import org.bouncycastle.util.BigIntegers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,6 +12,7 @@ import org.slf4j.LoggerFactory;
 import com.github.mphi_rc.fido2.authenticator.PinState;
 import com.github.mphi_rc.fido2.authenticator.Result;
 import com.github.mphi_rc.fido2.authenticator.crypto.CoseKeyConstants;
+import com.github.mphi_rc.fido2.authenticator.crypto.CryptoBackends;
 import com.github.mphi_rc.fido2.protocol.ctap2.Ctap2ResponseCode;
 
 import co.nstant.in.cbor.CborBuilder;
@@ -51,17 +44,14 @@ public class PinRequestHandler {
 
 	public List<DataItem> getKeyAgreementKey() {
 		try {
-			PublicKey key = pinState.getKeyAgreementKey();
-			ECPublicKeyParameters params = (ECPublicKeyParameters) ECUtil.generatePublicKeyParameter(key);
-			ECFieldElement x = params.getQ().getXCoord();
-			ECFieldElement y = params.getQ().getYCoord();
+			ECPoint w = ((ECPublicKey) pinState.getKeyAgreementKey()).getW();
 			List<DataItem> coseKey = new CborBuilder()
 					.addMap()
 					.put(CoseKeyConstants.KEY_TYPE, CoseKeyConstants.ELLIPTIC_CURVE_X_Y_COORDS)
 					.put(CoseKeyConstants.ALGORITHM, CoseKeyConstants.ECDH_ES_HKDF_256)
 					.put(CoseKeyConstants.CURVE, CoseKeyConstants.P256)
-					.put(CoseKeyConstants.X_COORDINATE, x.getEncoded())
-					.put(CoseKeyConstants.Y_COORDINATE, y.getEncoded())
+					.put(CoseKeyConstants.X_COORDINATE, BigIntegers.asUnsignedByteArray(32, w.getAffineX()))
+					.put(CoseKeyConstants.Y_COORDINATE, BigIntegers.asUnsignedByteArray(32, w.getAffineY()))
 					.end()
 					.build();
 			log.trace("P-256 public key serialized to COSE key {}", coseKey);
@@ -114,14 +104,7 @@ public class PinRequestHandler {
 		try {
 			ByteString x = (ByteString) coseKey.get(new NegativeInteger(CoseKeyConstants.X_COORDINATE));
 			ByteString y = (ByteString) coseKey.get(new NegativeInteger(CoseKeyConstants.Y_COORDINATE));
-			BigInteger xInt = BigIntegers.fromUnsignedByteArray(x.getBytes());
-			BigInteger yInt = BigIntegers.fromUnsignedByteArray(y.getBytes());
-
-			KeyFactory kf = KeyFactory.getInstance("EC", new BouncyCastleProvider());
-			ECNamedCurveParameterSpec spec = ECNamedCurveTable.getParameterSpec("prime256v1");
-			ECPoint point = spec.getCurve().createPoint(xInt, yInt);
-			ECPublicKeySpec keySpec = new ECPublicKeySpec(point, spec);
-			return kf.generatePublic(keySpec);
+			return CryptoBackends.current().decodeKeyAgreementKey(x.getBytes(), y.getBytes());
 		} catch (Exception e) {
 			log.error("Error parsing key", e);
 			throw new RuntimeException(e);
@@ -0,0 +1,47 @@
+package com.github.mphi_rc.fido2.protocol.usbhid;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Allocates channel IDs from a single DRBG and remembers a bounded number of them. When the
+ * limit is reached, the channel that was least recently used is forgotten.
+ */
+public class ChannelAllocator {
+
+	private static final int RESERVED = 0;
+	private static final int BROADCAST = 0xFFFFFFFF;
+
+	private final SecureRandom random;
+	private final IntLruSet channels;
+
+	public ChannelAllocator(int maxActiveChannels) {
+		this.random = drbg();
+		this.channels = new IntLruSet(maxActiveChannels);
+	}
+
+	public synchronized ChannelId allocate() {
+		int id;
+		do {
+			id = random.nextInt();
+		} while (id == RESERVED || id == BROADCAST || channels.contains(id));
+		channels.add(id);
+		return ChannelId.from(id);
+	}
+
+	/**
+	 * Returns whether the channel is active, marking it as recently used if so.
+	 */
+	public synchronized boolean isActive(ChannelId channelId) {
+		return channels.touch(channelId.value());
+	}
+
+	private static SecureRandom drbg() {
+		try {
+			return SecureRandom.getInstance("DRBG");
+		} catch (NoSuchAlgorithmException e) {
+			// DRBG is only available from Java 9
+			return new SecureRandom();
+		}
+	}
+}
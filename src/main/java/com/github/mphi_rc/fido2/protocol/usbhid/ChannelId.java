@@ -1,31 +1,37 @@
 package com.github.mphi_rc.fido2.protocol.usbhid;
 
-import java.security.SecureRandom;
-
 import org.immutables.value.Value;
 import org.immutables.value.Value.Parameter;
 
 import com.google.common.base.Preconditions;
+import com.google.common.primitives.Ints;
 
 @Value.Immutable
 public abstract class ChannelId {
-	
+
+	private static final int BROADCAST = 0xFFFFFFFF;
+
 	public static ChannelId broadcast() {
-		return ImmutableChannelId.of(new byte[] {(byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF});
+		return ImmutableChannelId.of(BROADCAST);
 	}
-	
-	public static ChannelId random() {
-		SecureRandom r = new SecureRandom();
-		byte[] id = new byte[4];
-		r.nextBytes(id);
+
+	public static ChannelId from(int id) {
 		return ImmutableChannelId.of(id);
 	}
-	
+
+	public static ChannelId from(byte[] id) {
+		Preconditions.checkArgument(id.length == 4, "id must be a 4-byte array");
+		return ImmutableChannelId.of(Ints.fromByteArray(id));
+	}
+
 	@Parameter
-	public abstract byte[] id();
-	
-	@Value.Check
-	protected void check() {
-		Preconditions.checkArgument(id().length == 4, "id must be a 4-byte array");
+	public abstract int value();
+
+	public byte[] id() {
+		return Ints.toByteArray(value());
+	}
+
+	public boolean isBroadcast() {
+		return value() == BROADCAST;
 	}
 }
@@ -1,6 +1,5 @@
 package com.github.mphi_rc.fido2.protocol.usbhid;
 
-import java.util.EnumSet;
 import java.util.Objects;
 
 public enum HidCommand {
@@ -13,8 +12,19 @@ public enum HidCommand {
 	ERROR(0x3F),
 	WINK(0x08),
 	LOCK(0x04),
+	KEEPALIVE(0x3B),
 	UNKNOWN;
 
+	private static final HidCommand[] BY_ID = new HidCommand[128];
+
+	static {
+		for (HidCommand c : values()) {
+			if (!Objects.isNull(c.id)) {
+				BY_ID[c.id] = c;
+			}
+		}
+	}
+
 	private Byte id;
 	
 	private HidCommand() {}
@@ -24,10 +34,8 @@ public enum HidCommand {
 	}
 	
 	static HidCommand from(byte b) {
-		return EnumSet.allOf(HidCommand.class).stream()
-				.filter(c -> !Objects.isNull(c.id) && c.id.byteValue() == b)
-				.findFirst()
-				.orElse(UNKNOWN);
+		HidCommand command = b < 0 ? null : BY_ID[b];
+		return Objects.isNull(command) ? UNKNOWN : command;
 	}
 	
 	public byte asByte() {
@@ -1,8 +1,6 @@
 package com.github.mphi_rc.fido2.protocol.usbhid;
 
-import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.BitSet;
 
 import org.immutables.value.Value;
 
@@ -14,7 +12,7 @@ public abstract class InitializationPacket {
 
 	private static final int HEADER_SIZE_INIT = 7;
 	private static final int HEADER_SIZE_CONT = 5;
-	private static final int PACKET_TYPE_FLAG_BIT = 7;
+	private static final int PACKET_TYPE_FLAG = 0x80;
 	
 	static final InitializationPacket from(Packet p) {
 		byte[] rawBytes = p.rawPayload();
@@ -24,9 +22,7 @@ public abstract class InitializationPacket {
 		int low = UnsignedBytes.toInt(rawBytes[6]);
 		int messageLength = high | low;
 		
-		BitSet commandBits = BitSet.valueOf(ByteBuffer.wrap(rawBytes, 4, 1));
-		commandBits.clear(PACKET_TYPE_FLAG_BIT);
-		HidCommand command = HidCommand.from(commandBits.toByteArray()[0]);
+		HidCommand command = HidCommand.from((byte) (rawBytes[4] & ~PACKET_TYPE_FLAG));
 		
 		byte[] data = Arrays.copyOfRange(rawBytes, 7, rawBytes.length);
 
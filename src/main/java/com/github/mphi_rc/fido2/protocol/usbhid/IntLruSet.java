@@ -0,0 +1,132 @@
+package com.github.mphi_rc.fido2.protocol.usbhid;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A fixed-capacity set of ints that evicts its least recently used member when full. Members are
+ * found through an open-addressing table of entry indices, and recency is a doubly linked list
+ * threaded through the entries, so nothing is allocated after construction.
+ */
+public class IntLruSet {
+
+	private static final int NONE = -1;
+
+	private final int[] table;
+	private final int mask;
+	private final int[] keys;
+	private final int[] prev;
+	private final int[] next;
+	private int mostRecent;
+	private int leastRecent;
+	private int size;
+
+	public IntLruSet(int capacity) {
+		Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+		int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+		this.table = new int[tableSize];
+		this.mask = tableSize - 1;
+		Arrays.fill(table, NONE);
+		this.keys = new int[capacity];
+		this.prev = new int[capacity];
+		this.next = new int[capacity];
+		this.mostRecent = NONE;
+		this.leastRecent = NONE;
+		this.size = 0;
+	}
+
+	public boolean contains(int key) {
+		return table[slotOf(key)] != NONE;
+	}
+
+	/**
+	 * Marks the key as most recently used, returning false if it isn't a member.
+	 */
+	public boolean touch(int key) {
+		int entry = table[slotOf(key)];
+		if (entry == NONE) {
+			return false;
+		}
+		unlink(entry);
+		pushFront(entry);
+		return true;
+	}
+
+	/**
+	 * Adds a key that isn't yet a member, evicting the least recently used member if the set is full.
+	 */
+	public void add(int key) {
+		Preconditions.checkArgument(!contains(key), "key is already a member");
+		int entry;
+		if (size == keys.length) {
+			entry = leastRecent;
+			unlink(entry);
+			removeFromTable(keys[entry]);
+		} else {
+			entry = size++;
+		}
+		keys[entry] = key;
+		table[slotOf(key)] = entry;
+		pushFront(entry);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private int slotOf(int key) {
+		int slot = hash(key) & mask;
+		while (table[slot] != NONE && keys[table[slot]] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void removeFromTable(int key) {
+		int hole = slotOf(key);
+		table[hole] = NONE;
+		// shift later members of the probe run back so lookups never stop early at the hole
+		int slot = (hole + 1) & mask;
+		while (table[slot] != NONE) {
+			int home = hash(keys[table[slot]]) & mask;
+			boolean canMove = hole <= slot ? (home <= hole || home > slot) : (home <= hole && home > slot);
+			if (canMove) {
+				table[hole] = table[slot];
+				table[slot] = NONE;
+				hole = slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void pushFront(int entry) {
+		prev[entry] = NONE;
+		next[entry] = mostRecent;
+		if (mostRecent != NONE) {
+			prev[mostRecent] = entry;
+		}
+		mostRecent = entry;
+		if (leastRecent == NONE) {
+			leastRecent = entry;
+		}
+	}
+
+	private void unlink(int entry) {
+		if (prev[entry] == NONE) {
+			mostRecent = next[entry];
+		} else {
+			next[prev[entry]] = next[entry];
+		}
+		if (next[entry] == NONE) {
+			leastRecent = prev[entry];
+		} else {
+			prev[next[entry]] = prev[entry];
+		}
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,74 @@
+package com.github.mphi_rc.fido2.protocol.usbhid;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.github.mphi_rc.fido2.authenticator.Transaction;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+public class KeepAliveEmitter {
+
+	private static final long INTERVAL_MILLIS = 100;
+	private static final byte STATUS_PROCESSING = 0x01;
+	private static final byte STATUS_UPNEEDED = 0x02;
+
+	private final ScheduledExecutorService timer;
+
+	public KeepAliveEmitter() {
+		this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("ctaphid-keepalive-%d")
+				.setDaemon(true)
+				.build());
+	}
+
+	public KeepAlive start(ChannelId channelId, Transaction transaction, Consumer<RawMessage> responses) {
+		KeepAlive keepAlive = new KeepAlive(channelId, transaction, responses);
+		keepAlive.future = timer.scheduleAtFixedRate(keepAlive::emit, INTERVAL_MILLIS, INTERVAL_MILLIS,
+				TimeUnit.MILLISECONDS);
+		return keepAlive;
+	}
+
+	public static final class KeepAlive {
+
+		private final ChannelId channelId;
+		private final Transaction transaction;
+		private final Consumer<RawMessage> responses;
+		private ScheduledFuture<?> future;
+		private boolean stopped;
+
+		private KeepAlive(ChannelId channelId, Transaction transaction, Consumer<RawMessage> responses) {
+			this.channelId = channelId;
+			this.transaction = transaction;
+			this.responses = responses;
+			this.stopped = false;
+		}
+
+		private synchronized void emit() {
+			if (stopped) {
+				return;
+			}
+			byte status = STATUS_PROCESSING;
+			switch (transaction.phase()) {
+			case USER_PRESENCE_NEEDED:
+				status = STATUS_UPNEEDED;
+				break;
+			case PROCESSING:
+			default:
+				break;
+			}
+			responses.accept(ImmutableRawMessage.of(channelId, HidCommand.KEEPALIVE, new byte[] { status }));
+		}
+
+		/**
+		 * Stops emission. Once this returns no further keep-alive is handed to the response
+		 * consumer, so the final response can't be overtaken.
+		 */
+		public synchronized void stop() {
+			stopped = true;
+			future.cancel(false);
+		}
+	}
+}
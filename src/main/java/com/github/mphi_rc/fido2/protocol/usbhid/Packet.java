@@ -1,7 +1,6 @@
 package com.github.mphi_rc.fido2.protocol.usbhid;
 
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Optional;
 
 import org.immutables.value.Value;
@@ -15,7 +14,7 @@ public abstract class Packet {
 	@Value.Derived
 	public ChannelId channelId() {
 		byte[] bytes = Arrays.copyOfRange(rawPayload(), 0, 4);
-		return ImmutableChannelId.of(bytes);
+		return ChannelId.from(bytes);
 	}
 	
 	public Optional<InitializationPacket> asInitializationPacket() {
@@ -27,8 +26,6 @@ public abstract class Packet {
 	}
 
 	private boolean isInitializationPacket() {
-		byte[] distinguishing = Arrays.copyOfRange(rawPayload(), 4, 5);
-		BitSet flags = BitSet.valueOf(distinguishing);
-		return flags.get(7);
+		return (rawPayload()[4] & 0x80) != 0;
 	}
 }
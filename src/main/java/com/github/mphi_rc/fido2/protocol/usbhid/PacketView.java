@@ -0,0 +1,75 @@
+package com.github.mphi_rc.fido2.protocol.usbhid;
+
+import java.util.Arrays;
+
+/**
+ * A reusable, mutable view over a single 64-byte HID report held in a shared
+ * frame array. Header fields are decoded in place, so reading a report never
+ * allocates. A view is only valid until its backing slot is refilled.
+ */
+public final class PacketView {
+
+	public static final int PACKET_SIZE = 64;
+	private static final int HEADER_SIZE_INIT = 7;
+	private static final int HEADER_SIZE_CONT = 5;
+	private static final int PACKET_TYPE_FLAG = 0x80;
+	private static final int MAX_SEQUENCE_NUMBER = 0x7F;
+
+	public static final int MAX_MESSAGE_LENGTH = (PACKET_SIZE - HEADER_SIZE_INIT)
+			+ (MAX_SEQUENCE_NUMBER + 1) * (PACKET_SIZE - HEADER_SIZE_CONT);
+
+	private final byte[] frames;
+	private final int offset;
+
+	public PacketView(byte[] frames, int offset) {
+		this.frames = frames;
+		this.offset = offset;
+	}
+
+	public int channel() {
+		return ((frames[offset] & 0xFF) << 24)
+				| ((frames[offset + 1] & 0xFF) << 16)
+				| ((frames[offset + 2] & 0xFF) << 8)
+				| (frames[offset + 3] & 0xFF);
+	}
+
+	public ChannelId channelId() {
+		return ChannelId.from(channel());
+	}
+
+	public boolean isInitializationPacket() {
+		return (frames[offset + 4] & PACKET_TYPE_FLAG) != 0;
+	}
+
+	public HidCommand command() {
+		return HidCommand.from((byte) (frames[offset + 4] & ~PACKET_TYPE_FLAG));
+	}
+
+	public int messageLength() {
+		return ((frames[offset + 5] & 0xFF) << 8) | (frames[offset + 6] & 0xFF);
+	}
+
+	public int sequenceNumber() {
+		return frames[offset + 4] & 0xFF;
+	}
+
+	public boolean isFragmented() {
+		return messageLength() > dataLength();
+	}
+
+	public int dataLength() {
+		return PACKET_SIZE - headerSize();
+	}
+
+	public void copyData(int from, byte[] dest, int destOffset, int length) {
+		System.arraycopy(frames, offset + headerSize() + from, dest, destOffset, length);
+	}
+
+	public Packet toPacket() {
+		return ImmutablePacket.of(Arrays.copyOfRange(frames, offset, offset + PACKET_SIZE));
+	}
+
+	private int headerSize() {
+		return isInitializationPacket() ? HEADER_SIZE_INIT : HEADER_SIZE_CONT;
+	}
+}
@@ -11,13 +11,17 @@ import com.google.common.collect.ImmutableSet;
 public abstract class RawMessage {
 
 	public static RawMessage error(ChannelId channelId, HidError error) {
-		return ImmutableRawMessage.builder()
-				.channelId(channelId)
-				.command(HidCommand.ERROR)
-				.payload(error.asBytes())
-				.build();
+		return ImmutableRawMessage.of(channelId, HidCommand.ERROR, error.asBytes());
 	}
 	
+	public static RawMessage from(PacketView unfragmented) {
+		Preconditions.checkArgument(unfragmented.isInitializationPacket(), "Message must start with an initialization packet");
+		Preconditions.checkArgument(!unfragmented.isFragmented(), "Message must fit in a single packet");
+		byte[] payload = new byte[unfragmented.messageLength()];
+		unfragmented.copyData(0, payload, 0, payload.length);
+		return ImmutableRawMessage.of(unfragmented.channelId(), unfragmented.command(), payload);
+	}
+
 	public static RawMessage from(InitializationPacket initial, ContinuationPacket... rest) {
 		ImmutableSet.Builder<ChannelId> channelIds = ImmutableSet.<ChannelId>builder().add(initial.channelId());
 		int availableBytes = initial.data().length;
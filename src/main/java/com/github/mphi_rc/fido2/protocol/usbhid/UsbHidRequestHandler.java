@@ -1,36 +1,112 @@
 package com.github.mphi_rc.fido2.protocol.usbhid;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.mphi_rc.fido2.authenticator.Transaction;
 import com.github.mphi_rc.fido2.protocol.ctap2.AuthenticatorRequestHandler;
+import com.github.mphi_rc.fido2.protocol.usbhid.KeepAliveEmitter.KeepAlive;
 import com.github.mphi_rc.fido2.protocol.usbhid.command.ImmutableInitResponsePayload;
 import com.github.mphi_rc.fido2.protocol.usbhid.command.InitRequestPayload;
 import com.github.mphi_rc.fido2.protocol.usbhid.command.InitResponsePayload;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class UsbHidRequestHandler {
 
 	private static final Logger log = LoggerFactory.getLogger(UsbHidRequestHandler.class);
 
 	private final AuthenticatorRequestHandler authenticator;
-	private final Set<ChannelId> activeChannels;
+	private final ChannelAllocator channels;
+	private final ExecutorService transactions;
+	private final AtomicReference<ActiveTransaction> activeTransaction;
+	private final KeepAliveEmitter keepAlives;
 
-	public UsbHidRequestHandler(AuthenticatorRequestHandler authenticator) {
+	public UsbHidRequestHandler(AuthenticatorRequestHandler authenticator, int maxActiveChannels) {
 		this.authenticator = authenticator;
-		this.activeChannels = new HashSet<>();
+		this.channels = new ChannelAllocator(maxActiveChannels);
+		this.transactions = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("ctap-transaction-%d")
+				.setDaemon(true)
+				.build());
+		this.activeTransaction = new AtomicReference<>();
+		this.keepAlives = new KeepAliveEmitter();
+	}
+
+	/**
+	 * Handles CTAPHID-level commands on the calling thread and hands CBOR requests to a
+	 * transaction thread, so INIT and PING keep being answered while, for example, a user
+	 * presence check is in progress. Only one CBOR transaction runs at a time; requests
+	 * arriving meanwhile are answered with CHANNEL_BUSY. A CANCEL on the busy channel aborts
+	 * the transaction, which then answers with KEEPALIVE_CANCEL; CANCEL never gets a reply itself.
+	 * An INIT on the busy channel resynchronises it: the transaction is cancelled as well, but
+	 * nothing it still sends, neither keep-alives nor its reply, reaches the host.
+	 */
+	public void dispatch(RawMessage message, Consumer<RawMessage> responses) {
+		if (message.command().equals(HidCommand.INIT) && !message.channelId().isBroadcast()) {
+			ActiveTransaction active = activeTransaction.get();
+			if (Objects.nonNull(active) && active.channelId.equals(message.channelId())) {
+				log.debug("Abandoning transaction on {} after INIT", message.channelId());
+				active.abandon();
+				activeTransaction.compareAndSet(active, null);
+			}
+		}
+
+		if (message.command().equals(HidCommand.CANCEL)) {
+			ActiveTransaction active = activeTransaction.get();
+			if (Objects.nonNull(active) && active.channelId.equals(message.channelId())) {
+				log.debug("Cancelling transaction on {}", message.channelId());
+				active.transaction.cancel();
+			}
+			return;
+		}
+
+		boolean isCborTransaction = message.command().equals(HidCommand.CBOR)
+				&& !message.channelId().isBroadcast()
+				&& channels.isActive(message.channelId());
+		if (!isCborTransaction) {
+			responses.accept(handle(message));
+			return;
+		}
+
+		ChannelId channelId = message.channelId();
+		Transaction transaction = new Transaction();
+		ActiveTransaction active = new ActiveTransaction(channelId, transaction);
+		if (!activeTransaction.compareAndSet(null, active)) {
+			log.debug("Channel {} is busy, rejecting request on {}", activeTransaction.get().channelId, channelId);
+			responses.accept(RawMessage.error(channelId, HidError.CHANNEL_BUSY));
+			return;
+		}
+		transactions.execute(() -> {
+			Consumer<RawMessage> replies = reply -> active.reply(reply, responses);
+			KeepAlive keepAlive = keepAlives.start(channelId, transaction, replies);
+			RawMessage response;
+			try {
+				response = authenticator.handleCborRequest(channelId, message.payload(), transaction);
+			} catch (RuntimeException e) {
+				log.error("Unable to handle CBOR request", e);
+				response = RawMessage.error(channelId, HidError.OTHER);
+			} finally {
+				keepAlive.stop();
+				activeTransaction.compareAndSet(active, null);
+			}
+			replies.accept(response);
+		});
 	}
 
 	public RawMessage handle(RawMessage message) {
 		log.trace("Received message {}", message);
 
-		if (message.channelId().equals(ChannelId.broadcast())) {
+		if (message.channelId().isBroadcast()) {
 			return handleBroadcast(message);
 		}
 
-		if (!activeChannels.contains(message.channelId())) {
+		if (!channels.isActive(message.channelId())) {
 			return RawMessage.error(message.channelId(), HidError.INVALID_CHANNEL);
 		}
 
@@ -55,26 +131,40 @@ public class UsbHidRequestHandler {
 		}
 	}
 
-	private ChannelId allocateChannel() {
-		ChannelId id;
-		do {
-			id = ChannelId.random();
-		} while (activeChannels.contains(id));
-		activeChannels.add(id);
-		return id;
-	}
-
 	private RawMessage handleBroadcast(RawMessage message) {
 		switch (message.command()) {
 		case INIT:
 			InitRequestPayload initRequest = InitRequestPayload.from(message);
 			InitResponsePayload initResponse = ImmutableInitResponsePayload.builder()
 					.nonce(initRequest.nonce())
-					.channel(allocateChannel())
+					.channel(channels.allocate())
 					.build();
 			return ImmutableRawMessage.of(message.channelId(), HidCommand.INIT, initResponse.asBytes());
 		default:
 			return RawMessage.error(message.channelId(), HidError.INVALID_CMD);
 		}
 	}
+
+	private static final class ActiveTransaction {
+
+		private final ChannelId channelId;
+		private final Transaction transaction;
+		private boolean isAbandoned;
+
+		private ActiveTransaction(ChannelId channelId, Transaction transaction) {
+			this.channelId = channelId;
+			this.transaction = transaction;
+		}
+
+		private synchronized void abandon() {
+			isAbandoned = true;
+			transaction.cancel();
+		}
+
+		private synchronized void reply(RawMessage message, Consumer<RawMessage> responses) {
+			if (!isAbandoned) {
+				responses.accept(message);
+			}
+		}
+	}
 }
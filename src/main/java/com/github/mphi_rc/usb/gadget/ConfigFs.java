@@ -7,6 +7,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
+import com.google.common.base.Preconditions;
 import com.google.common.io.BaseEncoding;
 
 public class ConfigFs {
@@ -75,6 +76,9 @@ public class ConfigFs {
 	}
 
 	public void attach(UsbHidGadget gadget, UsbDeviceController driver) throws IOException {
+		Path udcPath = Paths.get("/sys/class/udc/", driver.name());
+		Preconditions.checkState(Files.isDirectory(udcPath), "Chosen USB device controller is unavailable");
+
 		Path gadgetRoot = getGadgetRoot(gadget.name());
 		byte[] udcConfig = readConfig(gadgetRoot, "UDC");
 
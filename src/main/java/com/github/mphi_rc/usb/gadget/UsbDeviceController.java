@@ -1,14 +1,8 @@
 package com.github.mphi_rc.usb.gadget;
 
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-
 import org.immutables.gson.Gson;
 import org.immutables.value.Value;
 
-import com.google.common.base.Preconditions;
-
 @Gson.TypeAdapters
 @Value.Immutable
 public interface UsbDeviceController {
@@ -24,10 +18,4 @@ public interface UsbDeviceController {
 	@Value.Parameter
 	String name();
 
-	@Value.Check
-	default void check() {
-		Path udcPath = Paths.get("/sys/class/udc/", name());
-		Preconditions.checkState(Files.isDirectory(udcPath), "Chosen USB device controller is unavailable");
-	}
-
 }
\ No newline at end of file
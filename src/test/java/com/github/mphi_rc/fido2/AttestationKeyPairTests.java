@@ -0,0 +1,88 @@
+package com.github.mphi_rc.fido2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.github.mphi_rc.fido2.authenticator.ImmutableCredential;
+import com.github.mphi_rc.fido2.authenticator.crypto.AttestationKeyPair;
+import com.github.mphi_rc.fido2.authenticator.crypto.Ed25519AttestationKeyPair;
+import com.github.mphi_rc.fido2.authenticator.crypto.ImmutableEd25519AttestationKeyPair;
+import com.github.mphi_rc.fido2.authenticator.crypto.P256AttestationKeyPair;
+import com.google.common.primitives.Bytes;
+
+import co.nstant.in.cbor.CborEncoder;
+import co.nstant.in.cbor.CborException;
+
+public class AttestationKeyPairTests {
+
+	@Test
+	public void storedCoseKeyMatchesDecodedPublicKey() throws CborException {
+		for (AttestationKeyPair keyPair : new AttestationKeyPair[] {P256AttestationKeyPair.generate(), Ed25519AttestationKeyPair.generate()}) {
+			assertTrue(keyPair.coseKey().isPresent());
+			ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+			new CborEncoder(decoded).encode(keyPair.getCborEncodedPublicKey());
+			assertArrayEquals(decoded.toByteArray(), keyPair.coseKey().get());
+		}
+	}
+
+	@Test
+	public void attestedCredentialDataLayout() {
+		AttestationKeyPair keyPair = P256AttestationKeyPair.generate();
+		byte[] aaguid = new byte[16];
+		Arrays.fill(aaguid, (byte) 0xAA);
+		byte[] credentialId = new byte[300];
+		byte[] expected = Bytes.concat(aaguid, new byte[] { 0x01, 0x2C }, credentialId, keyPair.coseKey().get());
+		assertArrayEquals(expected, keyPair.encodeAttestedCredentialData(aaguid, credentialId));
+	}
+
+	@Test
+	public void encodedCoseKeyIsACopy() {
+		AttestationKeyPair keyPair = P256AttestationKeyPair.generate();
+		byte[] encoded = keyPair.encodeCosePublicKey();
+		encoded[0] ^= 0x01;
+		assertArrayEquals(keyPair.coseKey().get(), keyPair.encodeCosePublicKey());
+		assertNotSame(keyPair.coseKey().get(), keyPair.encodeCosePublicKey());
+	}
+
+	@Test
+	public void coseKeyIsRecordedWhenTheConfigurationLoads() throws IOException, InterruptedException {
+		Path path = Files.createTempDirectory("fido2").resolve("config.json");
+		AttestationKeyPair generated = Ed25519AttestationKeyPair.generate();
+		AttestationKeyPair legacy = ImmutableEd25519AttestationKeyPair.builder()
+				.privateKey(generated.privateKey())
+				.publicKey(generated.publicKey())
+				.build();
+		new ConfigurationFile(path).addCredential(ImmutableCredential.of("example.com", Instant.now(), new byte[] { 1 }, legacy, 0));
+		awaitWritten(path, "publicKey");
+		assertFalse(new String(Files.readAllBytes(path), StandardCharsets.UTF_8).contains("coseKey"));
+
+		ConfigurationFile loaded = new ConfigurationFile(path);
+		assertArrayEquals(generated.coseKey().get(), loaded.credentials().get(0).keyPair().coseKey().get());
+		awaitWritten(path, "coseKey");
+	}
+
+	private static void awaitWritten(Path path, String text) throws IOException, InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (!Files.exists(path) || !isWritten(new String(Files.readAllBytes(path), StandardCharsets.UTF_8), text)) {
+			assertTrue("configuration wasn't written in time", System.nanoTime() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	private static boolean isWritten(String json, String text) {
+		return json.contains(text) && json.trim().endsWith("}");
+	}
+}
@@ -0,0 +1,172 @@
+package com.github.mphi_rc.fido2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.mphi_rc.fido2.authenticator.Transaction;
+import com.github.mphi_rc.fido2.authenticator.crypto.CoseKeyConstants;
+import com.github.mphi_rc.fido2.authenticator.user.UserVerifier;
+import com.github.mphi_rc.fido2.protocol.ctap2.Ctap2Method;
+import com.github.mphi_rc.fido2.protocol.ctap2.Ctap2ResponseCode;
+import com.github.mphi_rc.fido2.protocol.usbhid.ChannelId;
+import com.github.mphi_rc.fido2.protocol.usbhid.HidCommand;
+import com.github.mphi_rc.fido2.protocol.usbhid.ImmutableRawMessage;
+import com.github.mphi_rc.fido2.protocol.usbhid.RawMessage;
+import com.github.mphi_rc.fido2.protocol.usbhid.UsbHidRequestHandler;
+
+import co.nstant.in.cbor.CborBuilder;
+import co.nstant.in.cbor.CborEncoder;
+import co.nstant.in.cbor.CborException;
+
+public class CancelTests {
+
+	private static final byte STATUS_UPNEEDED = 0x02;
+
+	/**
+	 * Waits for the user until the transaction is cancelled, like a touch that never comes.
+	 */
+	private static final UserVerifier NEVER_TOUCHED = new UserVerifier() {
+		@Override
+		public boolean isRegistrationApproved(String relayingPartyId, Transaction transaction) {
+			return awaitCancellation(transaction);
+		}
+
+		@Override
+		public boolean isAuthenticationApproved(String relayingPartyId, Transaction transaction) {
+			return awaitCancellation(transaction);
+		}
+
+		private boolean awaitCancellation(Transaction transaction) {
+			try {
+				transaction.awaitCancellation(TimeUnit.SECONDS.toMillis(10));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return false;
+		}
+	};
+
+	private TestAuthenticator fixture;
+	private UsbHidRequestHandler handler;
+	private BlockingQueue<RawMessage> responses;
+	private ChannelId channel;
+
+	@Before
+	public void setUp() throws IOException, InterruptedException {
+		fixture = new TestAuthenticator(path -> new ConfigurationFile(path) {
+			@Override
+			public UserVerifier userVerifier() {
+				return NEVER_TOUCHED;
+			}
+		});
+		handler = new UsbHidRequestHandler(fixture.handler(), fixture.config().maxActiveChannels());
+		responses = new LinkedBlockingQueue<>();
+
+		handler.dispatch(ImmutableRawMessage.of(ChannelId.broadcast(), HidCommand.INIT, new byte[8]), responses::add);
+		RawMessage init = responses.poll(5, TimeUnit.SECONDS);
+		assertNotNull(init);
+		channel = ChannelId.from(Arrays.copyOfRange(init.payload(), 8, 12));
+	}
+
+	@After
+	public void tearDown() {
+		fixture.close();
+	}
+
+	@Test
+	public void cancelDuringUserPresenceCheck() throws CborException, InterruptedException {
+		handler.dispatch(cbor(Ctap2Method.MAKE_CREDENTIAL, makeCredentialParameters()), responses::add);
+		awaitUserPresenceNeeded();
+
+		handler.dispatch(ImmutableRawMessage.of(channel, HidCommand.CANCEL, new byte[0]), responses::add);
+		RawMessage response = nextResponse();
+		assertEquals(HidCommand.CBOR, response.command());
+		assertArrayEquals(Ctap2ResponseCode.KEEPALIVE_CANCEL.asBytes(), response.payload());
+
+		// the channel is free again, so the next request isn't answered with CHANNEL_BUSY
+		handler.dispatch(cbor(Ctap2Method.GET_INFO, null), responses::add);
+		response = nextResponse();
+		assertEquals(HidCommand.CBOR, response.command());
+		assertEquals(Ctap2ResponseCode.OK.asBytes()[0], response.payload()[0]);
+	}
+
+	@Test
+	public void initDuringUserPresenceCheckAbandonsTransaction() throws CborException, InterruptedException {
+		handler.dispatch(cbor(Ctap2Method.MAKE_CREDENTIAL, makeCredentialParameters()), responses::add);
+		awaitUserPresenceNeeded();
+
+		byte[] nonce = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 };
+		handler.dispatch(ImmutableRawMessage.of(channel, HidCommand.INIT, nonce), responses::add);
+		RawMessage response = responses.poll(5, TimeUnit.SECONDS);
+		assertNotNull(response);
+		assertEquals(HidCommand.INIT, response.command());
+		assertArrayEquals(nonce, Arrays.copyOf(response.payload(), 8));
+
+		// neither keep-alives nor the cancelled reply of the abandoned transaction follow
+		assertNull(responses.poll(1, TimeUnit.SECONDS));
+
+		handler.dispatch(cbor(Ctap2Method.GET_INFO, null), responses::add);
+		response = nextResponse();
+		assertEquals(HidCommand.CBOR, response.command());
+		assertEquals(Ctap2ResponseCode.OK.asBytes()[0], response.payload()[0]);
+	}
+
+	private void awaitUserPresenceNeeded() throws InterruptedException {
+		RawMessage keepAlive;
+		do {
+			keepAlive = responses.poll(5, TimeUnit.SECONDS);
+			assertNotNull("no keep-alive reported that user presence is needed", keepAlive);
+			assertEquals(HidCommand.KEEPALIVE, keepAlive.command());
+		} while (keepAlive.payload()[0] != STATUS_UPNEEDED);
+	}
+
+	private RawMessage nextResponse() throws InterruptedException {
+		RawMessage response;
+		do {
+			response = responses.poll(5, TimeUnit.SECONDS);
+			assertNotNull(response);
+		} while (response.command() == HidCommand.KEEPALIVE);
+		return response;
+	}
+
+	private RawMessage cbor(Ctap2Method method, CborBuilder parameters) throws CborException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(method.asBytes()[0]);
+		if (parameters != null) {
+			new CborEncoder(out).encode(parameters.build());
+		}
+		return ImmutableRawMessage.of(channel, HidCommand.CBOR, out.toByteArray());
+	}
+
+	private static CborBuilder makeCredentialParameters() {
+		return new CborBuilder()
+				.addMap()
+					.put(1, new byte[32])
+					.putMap(2)
+						.put("id", "example.com")
+					.end()
+					.putMap(3)
+						.put("id", new byte[] { 1 })
+					.end()
+					.putArray(4)
+						.addMap()
+							.put("alg", CoseKeyConstants.ES256)
+							.put("type", "public-key")
+						.end()
+					.end()
+				.end();
+	}
+}
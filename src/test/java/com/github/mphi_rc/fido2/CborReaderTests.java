@@ -0,0 +1,109 @@
+package com.github.mphi_rc.fido2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.github.mphi_rc.fido2.protocol.ctap2.CborReader;
+import com.github.mphi_rc.fido2.protocol.ctap2.GetAssertionRequest;
+import com.github.mphi_rc.fido2.protocol.ctap2.MakeCredentialRequest;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.BaseEncoding;
+
+import co.nstant.in.cbor.CborException;
+
+public class CborReaderTests {
+
+	private static byte[] hex(String hex) {
+		return BaseEncoding.base16().decode(hex);
+	}
+
+	@Test
+	public void readsKnownKeysAndSkipsTheRest() throws CborException {
+		// {1: h'0102', 2: {"id": "a", "name": [1, {"x": -2}]}, 3: true}
+		byte[] cbor = hex("A301420102" + "02A2626964616164" + "6E616D65" + "8201A1617821" + "03F5");
+		CborReader reader = new CborReader(cbor, 0, cbor.length);
+
+		assertEquals(3, reader.readMapLength());
+		assertEquals(1, reader.readIntegerKey());
+		assertArrayEquals(new byte[] { 1, 2 }, reader.readByteString());
+		assertEquals(2, reader.readIntegerKey());
+		assertEquals(2, reader.readMapLength());
+		assertEquals(0, reader.readTextKey("id".getBytes(StandardCharsets.US_ASCII)));
+		assertEquals("a", reader.readTextString());
+		assertEquals(-1, reader.readTextKey("id".getBytes(StandardCharsets.US_ASCII)));
+		reader.skip();
+		assertEquals(3, reader.readIntegerKey());
+		assertTrue(reader.readBoolean());
+		assertFalse(reader.hasRemaining());
+	}
+
+	@Test
+	public void readsNegativeIntegers() throws CborException {
+		byte[] cbor = hex("26390100");
+		CborReader reader = new CborReader(cbor, 0, cbor.length);
+		assertEquals(-7, reader.readInteger());
+		assertEquals(-257, reader.readInteger());
+	}
+
+	@Test(expected = CborException.class)
+	public void rejectsLengthBeyondInput() throws CborException {
+		byte[] cbor = hex("5820AABB");
+		new CborReader(cbor, 0, cbor.length).readByteString();
+	}
+
+	@Test(expected = CborException.class)
+	public void rejectsIndefiniteLengths() throws CborException {
+		byte[] cbor = hex("BF0102FF");
+		new CborReader(cbor, 0, cbor.length).skip();
+	}
+
+	@Test(expected = CborException.class)
+	public void rejectsDeepNesting() throws CborException {
+		byte[] cbor = new byte[64];
+		Arrays.fill(cbor, (byte) 0x81);
+		new CborReader(cbor, 0, cbor.length).skip();
+	}
+
+	@Test(expected = CborException.class)
+	public void rejectsTruncatedInput() throws CborException {
+		byte[] cbor = hex("A201");
+		MakeCredentialRequest.fromBytes(cbor);
+	}
+
+	@Test(expected = CborException.class)
+	public void rejectsTrailingBytes() throws CborException {
+		byte[] message = Arrays.copyOf(RegistrationMessages.ONLY_ES256, RegistrationMessages.ONLY_ES256.length + 1);
+		MakeCredentialRequest.fromBytes(message, 6, message.length - 6);
+	}
+
+	@Test
+	public void parsesCapturedMakeCredentialRequests() throws CborException {
+		byte[][] messages = { RegistrationMessages.ONLY_ES256, RegistrationMessages.RSA_AND_ES256,
+				RegistrationMessages.REQUIRE_RESIDENT_KEY, RegistrationMessages.DIRECT_ATTESTATION };
+		for (byte[] message : messages) {
+			MakeCredentialRequest request = MakeCredentialRequest.fromBytes(message, 6, message.length - 6);
+			assertEquals(32, request.clientDataHash().length);
+			assertTrue(request.supportedAlgorithmIds().contains(-7));
+		}
+		MakeCredentialRequest both = MakeCredentialRequest.fromBytes(RegistrationMessages.RSA_AND_ES256, 6,
+				RegistrationMessages.RSA_AND_ES256.length - 6);
+		assertEquals("webauthn.me", both.relayingPartyId());
+		assertEquals(ImmutableSet.of(-7, -257), both.supportedAlgorithmIds());
+	}
+
+	@Test
+	public void allowListIsOptional() throws CborException {
+		// {1: "a", 2: h'00'}
+		byte[] cbor = hex("A2016161024100");
+		GetAssertionRequest request = GetAssertionRequest.fromBytes(cbor);
+		assertEquals("a", request.relayingPartyId());
+		assertTrue(request.publicKeyIds().isEmpty());
+	}
+}
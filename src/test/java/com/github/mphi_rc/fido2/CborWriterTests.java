@@ -0,0 +1,86 @@
+package com.github.mphi_rc.fido2;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.mphi_rc.fido2.protocol.ctap2.CborEncodable;
+import com.github.mphi_rc.fido2.protocol.ctap2.CborWriter;
+import com.github.mphi_rc.fido2.protocol.ctap2.Ctap2ResponseCode;
+import com.github.mphi_rc.fido2.protocol.ctap2.GetAssertionResponse;
+import com.github.mphi_rc.fido2.protocol.ctap2.GetInfoResponse;
+import com.github.mphi_rc.fido2.protocol.ctap2.ImmutableGetAssertionResponse;
+import com.github.mphi_rc.fido2.protocol.ctap2.ImmutableGetInfoResponse;
+import com.github.mphi_rc.fido2.protocol.ctap2.ImmutableMakeCredentialResponse;
+import com.github.mphi_rc.fido2.protocol.ctap2.MakeCredentialResponse;
+import com.google.common.io.BaseEncoding;
+
+import co.nstant.in.cbor.CborBuilder;
+import co.nstant.in.cbor.CborEncoder;
+import co.nstant.in.cbor.CborException;
+import co.nstant.in.cbor.model.DataItem;
+
+public class CborWriterTests {
+
+	private static byte[] encoded(List<DataItem> items) throws CborException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new CborEncoder(out).encode(items);
+		return out.toByteArray();
+	}
+
+	private static byte[] written(CborEncodable value) {
+		CborWriter writer = new CborWriter(16);
+		value.encode(writer);
+		return writer.toByteArray();
+	}
+
+	@Test
+	public void writesMinimalLengthIntegers() throws CborException {
+		long[] values = { 0, 23, 24, 255, 256, 65535, 65536, 0xFFFFFFFFL, 0x100000000L, -1, -24, -25, -257, -65537 };
+		CborBuilder builder = new CborBuilder();
+		CborWriter writer = new CborWriter(4);
+		for (long v : values) {
+			builder.add(v);
+			writer.writeInteger(v);
+		}
+		assertArrayEquals(encoded(builder.build()), writer.toByteArray());
+	}
+
+	@Test
+	public void getInfoMatchesTreeEncoder() throws CborException {
+		GetInfoResponse info = ImmutableGetInfoResponse.of(GetInfoResponse.Version.FIDO_2_0, new byte[16], true);
+		assertArrayEquals(encoded(info.asCborMap()), written(info));
+	}
+
+	@Test
+	public void makeCredentialMatchesTreeEncoder() throws CborException {
+		MakeCredentialResponse response = ImmutableMakeCredentialResponse.builder()
+				.format("packed")
+				.authData(new byte[300])
+				.signature(new byte[71])
+				.algorithm(-7)
+				.build();
+		assertArrayEquals(encoded(response.asCborMap()), written(response));
+	}
+
+	@Test
+	public void getAssertionMatchesTreeEncoder() throws CborException {
+		GetAssertionResponse response = ImmutableGetAssertionResponse.builder()
+				.credentialId(new byte[64])
+				.authData(new byte[37])
+				.signature(new byte[72])
+				.userId(new byte[0])
+				.build();
+		assertArrayEquals(encoded(response.asCborMap()), written(response));
+	}
+
+	@Test
+	public void statusByteIsWrittenRaw() {
+		CborWriter writer = new CborWriter();
+		writer.writeStatus(Ctap2ResponseCode.NO_CREDENTIALS);
+		assertArrayEquals(BaseEncoding.base16().decode("2E"), writer.toByteArray());
+	}
+}
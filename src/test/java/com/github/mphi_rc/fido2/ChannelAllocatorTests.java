@@ -0,0 +1,66 @@
+package com.github.mphi_rc.fido2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.mphi_rc.fido2.protocol.usbhid.ChannelAllocator;
+import com.github.mphi_rc.fido2.protocol.usbhid.ChannelId;
+import com.github.mphi_rc.fido2.protocol.usbhid.IntLruSet;
+
+public class ChannelAllocatorTests {
+
+	@Test
+	public void leastRecentlyUsedChannelIsEvicted() {
+		ChannelAllocator allocator = new ChannelAllocator(2);
+		ChannelId first = allocator.allocate();
+		ChannelId second = allocator.allocate();
+		assertTrue(allocator.isActive(first));
+
+		ChannelId third = allocator.allocate();
+		assertTrue(allocator.isActive(first));
+		assertFalse(allocator.isActive(second));
+		assertTrue(allocator.isActive(third));
+	}
+
+	@Test
+	public void broadcastChannelIsNeverActive() {
+		ChannelAllocator allocator = new ChannelAllocator(4);
+		allocator.allocate();
+		assertFalse(allocator.isActive(ChannelId.broadcast()));
+	}
+
+	@Test
+	public void lruSetMatchesAccessOrderedMap() {
+		int capacity = 16;
+		IntLruSet set = new IntLruSet(capacity);
+		Map<Integer, Boolean> reference = new LinkedHashMap<Integer, Boolean>(capacity, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+				return size() > capacity;
+			}
+		};
+
+		Random random = new Random(42);
+		for (int i = 0; i < 100_000; i++) {
+			// a small key space forces probe collisions, touches and evictions
+			int key = random.nextInt(64) * 1024;
+			boolean wasMember = set.touch(key);
+			assertEquals(reference.get(key) != null, wasMember);
+			if (!wasMember) {
+				set.add(key);
+				reference.put(key, true);
+			}
+			assertEquals(reference.size(), set.size());
+		}
+		for (int key = 0; key < 64 * 1024; key += 1024) {
+			assertEquals(reference.containsKey(key), set.contains(key));
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package com.github.mphi_rc.fido2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.util.BigIntegers;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.mphi_rc.fido2.authenticator.Authenticator;
+import com.github.mphi_rc.fido2.authenticator.ConfigurationCredentialStore;
+import com.github.mphi_rc.fido2.authenticator.Credential;
+import com.github.mphi_rc.fido2.authenticator.Transaction;
+import com.github.mphi_rc.fido2.authenticator.crypto.Algorithm;
+import com.github.mphi_rc.fido2.authenticator.crypto.CoseKeyConstants;
+import com.github.mphi_rc.fido2.protocol.ctap2.AuthenticatorRequestHandler;
+import com.github.mphi_rc.fido2.protocol.ctap2.CredentialManagementRequest;
+import com.github.mphi_rc.fido2.protocol.ctap2.Ctap2Method;
+import com.github.mphi_rc.fido2.protocol.ctap2.Ctap2ResponseCode;
+import com.github.mphi_rc.fido2.protocol.ctap2.ImmutableMakeCredentialRequest;
+import com.github.mphi_rc.fido2.protocol.usbhid.ChannelId;
+import com.google.common.hash.Hashing;
+
+import co.nstant.in.cbor.CborBuilder;
+import co.nstant.in.cbor.CborDecoder;
+import co.nstant.in.cbor.CborEncoder;
+import co.nstant.in.cbor.CborException;
+import co.nstant.in.cbor.model.ByteString;
+import co.nstant.in.cbor.model.DataItem;
+import co.nstant.in.cbor.model.Map;
+import co.nstant.in.cbor.model.UnicodeString;
+import co.nstant.in.cbor.model.UnsignedInteger;
+
+public class CredentialManagementTests {
+
+	private static final String RP_A = "a.example.com";
+	private static final String RP_B = "b.example.com";
+	private static final ChannelId CHANNEL = ChannelId.from(0x01020304);
+	private static final BouncyCastleProvider PROVIDER = new BouncyCastleProvider();
+
+	private TestAuthenticator fixture;
+	private ConfigurationFile config;
+	private ConfigurationCredentialStore store;
+	private AuthenticatorRequestHandler handler;
+	private byte[] pinToken;
+
+	@Before
+	public void setUp() throws IOException, GeneralSecurityException, CborException {
+		fixture = TestAuthenticator.withPin("1234");
+		config = fixture.config();
+		store = fixture.store();
+		Authenticator authenticator = fixture.authenticator();
+		makeCredential(authenticator, RP_A, 1, true);
+		makeCredential(authenticator, RP_A, 2, true);
+		makeCredential(authenticator, RP_B, 3, true);
+		makeCredential(authenticator, RP_A, 4, false);
+		handler = fixture.handler();
+
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("EC", PROVIDER);
+		generator.initialize(new ECGenParameterSpec("P-256"));
+		KeyPair hostKeyPair = generator.generateKeyPair();
+		ECPublicKey hostKey = (ECPublicKey) hostKeyPair.getPublic();
+		KeyAgreement ka = KeyAgreement.getInstance("ECDH", PROVIDER);
+		ka.init(hostKeyPair.getPrivate());
+		ka.doPhase(fixture.pinState().getKeyAgreementKey(), true);
+		SecretKeySpec sharedSecret = new SecretKeySpec(Hashing.sha256().hashBytes(ka.generateSecret()).asBytes(), "AES");
+
+		Cipher aes = Cipher.getInstance("AES/CBC/NoPadding");
+		aes.init(Cipher.ENCRYPT_MODE, sharedSecret, new IvParameterSpec(new byte[16]));
+		byte[] response = send(Ctap2Method.CLIENT_PIN, new CborBuilder()
+				.addMap()
+					.put(1, 1)
+					.put(2, 5)
+					.putMap(3)
+						.put(CoseKeyConstants.KEY_TYPE, CoseKeyConstants.ELLIPTIC_CURVE_X_Y_COORDS)
+						.put(CoseKeyConstants.ALGORITHM, CoseKeyConstants.ECDH_ES_HKDF_256)
+						.put(CoseKeyConstants.CURVE, CoseKeyConstants.P256)
+						.put(CoseKeyConstants.X_COORDINATE, BigIntegers.asUnsignedByteArray(32, hostKey.getW().getAffineX()))
+						.put(CoseKeyConstants.Y_COORDINATE, BigIntegers.asUnsignedByteArray(32, hostKey.getW().getAffineY()))
+					.end()
+					.put(6, aes.doFinal(TestAuthenticator.pinHash("1234")))
+				.end()
+				.build());
+		assertEquals(Ctap2ResponseCode.OK.asBytes()[0], response[0]);
+		aes.init(Cipher.DECRYPT_MODE, sharedSecret, new IvParameterSpec(new byte[16]));
+		pinToken = aes.doFinal(((ByteString) responseMap(response).get(new UnsignedInteger(2))).getBytes());
+	}
+
+	@After
+	public void tearDown() {
+		fixture.close();
+	}
+
+	private static void makeCredential(Authenticator authenticator, String relayingPartyId, int user, boolean residentKey) {
+		authenticator.makeCredential(ImmutableMakeCredentialRequest.builder()
+				.clientDataHash(new byte[32])
+				.relayingPartyId(relayingPartyId)
+				.userId(new byte[] { (byte) user })
+				.addSupportedAlgorithmIds(Algorithm.P256_ECDSA.getCoseAlgorithmId())
+				.residentKey(residentKey)
+				.build(), new Transaction());
+	}
+
+	private byte[] send(Ctap2Method method, List<DataItem> parameters) throws CborException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(method.asBytes()[0]);
+		new CborEncoder(out).encode(parameters);
+		return handler.handleCborRequest(CHANNEL, out.toByteArray()).payload();
+	}
+
+	private static Map responseMap(byte[] payload) throws CborException {
+		return (Map) CborDecoder.decode(Arrays.copyOfRange(payload, 1, payload.length)).get(0);
+	}
+
+	private static int intValue(Map response, int key) {
+		return ((UnsignedInteger) response.get(new UnsignedInteger(key))).getValue().intValue();
+	}
+
+	/**
+	 * Sends a sub-command with its pinAuth computed over the parameters as they are encoded.
+	 */
+	private byte[] manage(int subCommand, DataItem params, byte[] pinToken) throws CborException, GeneralSecurityException {
+		ByteArrayOutputStream message = new ByteArrayOutputStream();
+		message.write(subCommand);
+		if (params != null) {
+			new CborEncoder(message).encode(params);
+		}
+		Mac hmac = Mac.getInstance("HmacSHA256");
+		hmac.init(new SecretKeySpec(pinToken, "HmacSHA256"));
+		byte[] pinAuth = Arrays.copyOf(hmac.doFinal(message.toByteArray()), 16);
+
+		Map request = new Map();
+		request.put(new UnsignedInteger(1), new UnsignedInteger(subCommand));
+		if (params != null) {
+			request.put(new UnsignedInteger(2), params);
+		}
+		request.put(new UnsignedInteger(3), new UnsignedInteger(1));
+		request.put(new UnsignedInteger(4), new ByteString(pinAuth));
+		return send(Ctap2Method.CREDENTIAL_MANAGEMENT, Arrays.asList(request));
+	}
+
+	private byte[] getNext(int subCommand) throws CborException {
+		return send(Ctap2Method.CREDENTIAL_MANAGEMENT, new CborBuilder()
+				.addMap()
+					.put(1, subCommand)
+				.end()
+				.build());
+	}
+
+	private static DataItem relayingPartyParams(String relayingPartyId) {
+		Map params = new Map();
+		params.put(new UnsignedInteger(1),
+				new ByteString(Hashing.sha256().hashString(relayingPartyId, StandardCharsets.UTF_8).asBytes()));
+		return params;
+	}
+
+	private static DataItem credentialParams(byte[] credentialId) {
+		Map descriptor = new Map();
+		descriptor.put(new UnicodeString("id"), new ByteString(credentialId));
+		descriptor.put(new UnicodeString("type"), new UnicodeString("public-key"));
+		Map params = new Map();
+		params.put(new UnsignedInteger(2), descriptor);
+		return params;
+	}
+
+	@Test
+	public void reportsResidentCredentialMetadata() throws CborException, GeneralSecurityException {
+		byte[] response = manage(CredentialManagementRequest.GET_CREDS_METADATA, null, pinToken);
+		assertEquals(Ctap2ResponseCode.OK.asBytes()[0], response[0]);
+		assertEquals(3, intValue(responseMap(response), 1));
+		assertEquals(config.maxResidentCredentials() - 3, intValue(responseMap(response), 2));
+	}
+
+	@Test
+	public void checksPinAuth() throws CborException, GeneralSecurityException {
+		byte[] response = manage(CredentialManagementRequest.GET_CREDS_METADATA, null, new byte[pinToken.length]);
+		assertArrayEquals(Ctap2ResponseCode.PIN_AUTH_INVALID.asBytes(), response);
+
+		response = getNext(CredentialManagementRequest.GET_CREDS_METADATA);
+		assertArrayEquals(Ctap2ResponseCode.PIN_REQUIRED.asBytes(), response);
+	}
+
+	@Test
+	public void enumeratesRelyingPartiesAndTheirCredentials() throws CborException, GeneralSecurityException {
+		byte[] first = manage(CredentialManagementRequest.ENUMERATE_RPS_BEGIN, null, pinToken);
+		assertEquals(Ctap2ResponseCode.OK.asBytes()[0], first[0]);
+		assertEquals(2, intValue(responseMap(first), 5));
+		byte[] second = getNext(CredentialManagementRequest.ENUMERATE_RPS_GET_NEXT_RP);
+		assertEquals(Ctap2ResponseCode.OK.asBytes()[0], second[0]);
+		assertNotEquals(responseMap(first).get(new UnsignedInteger(3)), responseMap(second).get(new UnsignedInteger(3)));
+		assertArrayEquals(Ctap2ResponseCode.NOT_ALLOWED.asBytes(), getNext(CredentialManagementRequest.ENUMERATE_RPS_GET_NEXT_RP));
+
+		first = manage(CredentialManagementRequest.ENUMERATE_CREDENTIALS_BEGIN, relayingPartyParams(RP_A), pinToken);
+		assertEquals(Ctap2ResponseCode.OK.asBytes()[0], first[0]);
+		assertEquals(2, intValue(responseMap(first), 9));
+		second = getNext(CredentialManagementRequest.ENUMERATE_CREDENTIALS_GET_NEXT_CREDENTIAL);
+		assertEquals(Ctap2ResponseCode.OK.asBytes()[0], second[0]);
+		assertNotEquals(responseMap(first).get(new UnsignedInteger(7)), responseMap(second).get(new UnsignedInteger(7)));
+		assertArrayEquals(Ctap2ResponseCode.NOT_ALLOWED.asBytes(),
+				getNext(CredentialManagementRequest.ENUMERATE_CREDENTIALS_GET_NEXT_CREDENTIAL));
+	}
+
+	@Test
+	public void deletesOnlyResidentCredentials() throws CborException, GeneralSecurityException {
+		Credential resident = store.getResidentCredentials(RP_B).get(0);
+		byte[] response = manage(CredentialManagementRequest.DELETE_CREDENTIAL, credentialParams(resident.id()), pinToken);
+		assertArrayEquals(Ctap2ResponseCode.OK.asBytes(), response);
+		assertEquals(2, store.residentCredentialCount());
+
+		Credential stored = store.getCredentials(RP_A).stream()
+				.filter(c -> !c.isResident())
+				.findFirst()
+				.get();
+		response = manage(CredentialManagementRequest.DELETE_CREDENTIAL, credentialParams(stored.id()), pinToken);
+		assertArrayEquals(Ctap2ResponseCode.NO_CREDENTIALS.asBytes(), response);
+		assertEquals(3, store.getCredentials(RP_A).size());
+	}
+
+	@Test
+	public void rejectsUnknownSubCommands() throws CborException, GeneralSecurityException {
+		byte[] response = manage(0x7F, null, pinToken);
+		assertArrayEquals(Ctap2ResponseCode.INVALID_SUBCOMMAND.asBytes(), response);
+	}
+}
@@ -0,0 +1,62 @@
+package com.github.mphi_rc.fido2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import com.github.mphi_rc.fido2.authenticator.Credential;
+import com.github.mphi_rc.fido2.authenticator.CredentialWrapper;
+import com.github.mphi_rc.fido2.authenticator.crypto.AttestationKeyPair;
+import com.github.mphi_rc.fido2.authenticator.crypto.Ed25519AttestationKeyPair;
+import com.github.mphi_rc.fido2.authenticator.crypto.P256AttestationKeyPair;
+
+public class CredentialWrapperTests {
+
+	private static final String RELAYING_PARTY = "example.com";
+
+	private final CredentialWrapper wrapper = new CredentialWrapper(new byte[32]);
+
+	@Test
+	public void wrappedKeyPairsUnwrap() {
+		for (AttestationKeyPair keyPair : new AttestationKeyPair[] {P256AttestationKeyPair.generate(), Ed25519AttestationKeyPair.generate()}) {
+			Credential wrapped = wrapper.wrap(RELAYING_PARTY, keyPair, false);
+			assertTrue(wrapped.isWrapped());
+			assertTrue(wrapped.id().length <= CredentialWrapper.MAX_ID_LENGTH);
+
+			Optional<Credential> unwrapped = wrapper.unwrap(RELAYING_PARTY, wrapped.id());
+			assertTrue(unwrapped.isPresent());
+			assertEquals(keyPair, unwrapped.get().keyPair());
+			assertArrayEquals(wrapped.id(), unwrapped.get().id());
+		}
+	}
+
+	@Test
+	public void credRandomIsRecoveredFromTheId() {
+		Credential wrapped = wrapper.wrap(RELAYING_PARTY, Ed25519AttestationKeyPair.generate(), true);
+		assertTrue(wrapped.credRandom().isPresent());
+		assertArrayEquals(wrapped.credRandom().get(), wrapper.unwrap(RELAYING_PARTY, wrapped.id()).get().credRandom().get());
+
+		Credential other = wrapper.wrap(RELAYING_PARTY, wrapped.keyPair(), true);
+		assertFalse(Arrays.equals(wrapped.credRandom().get(), other.credRandom().get()));
+	}
+
+	@Test
+	public void idsOnlyUnwrapForTheirRelayingPartyAndKey() {
+		byte[] id = wrapper.wrap(RELAYING_PARTY, P256AttestationKeyPair.generate(), false).id();
+		assertFalse(wrapper.unwrap("example.org", id).isPresent());
+
+		byte[] otherKey = new byte[32];
+		otherKey[0] = 1;
+		assertFalse(new CredentialWrapper(otherKey).unwrap(RELAYING_PARTY, id).isPresent());
+
+		id[id.length - 1] ^= 1;
+		assertFalse(wrapper.unwrap(RELAYING_PARTY, id).isPresent());
+		assertFalse(wrapper.unwrap(RELAYING_PARTY, new byte[Credential.ID_LENGTH]).isPresent());
+	}
+}
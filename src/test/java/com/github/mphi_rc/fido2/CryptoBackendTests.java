@@ -0,0 +1,116 @@
+package com.github.mphi_rc.fido2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.KeyAgreement;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.util.BigIntegers;
+import org.junit.Test;
+
+import com.github.mphi_rc.fido2.authenticator.crypto.Algorithm;
+import com.github.mphi_rc.fido2.authenticator.crypto.CryptoBackend;
+import com.github.mphi_rc.fido2.authenticator.crypto.CryptoBackendType;
+import com.github.mphi_rc.fido2.authenticator.crypto.CryptoBackends;
+
+import net.i2p.crypto.eddsa.EdDSAEngine;
+import net.i2p.crypto.eddsa.EdDSAPublicKey;
+
+public class CryptoBackendTests {
+
+	@Test
+	public void keyAgreementMatchesAcrossBackends() throws GeneralSecurityException {
+		CryptoBackend reference = CryptoBackends.create(CryptoBackendType.I2P);
+		KeyPair host = reference.generateKeyAgreementKeyPair();
+		ECPublicKey hostKey = (ECPublicKey) host.getPublic();
+		for (CryptoBackendType type : CryptoBackendType.values()) {
+			CryptoBackend backend = CryptoBackends.create(type);
+			KeyPair authenticator = backend.generateKeyAgreementKeyPair();
+
+			KeyAgreement ka = backend.newKeyAgreement();
+			ka.init(authenticator.getPrivate());
+			ka.doPhase(backend.decodeKeyAgreementKey(
+					BigIntegers.asUnsignedByteArray(32, hostKey.getW().getAffineX()),
+					BigIntegers.asUnsignedByteArray(32, hostKey.getW().getAffineY())), true);
+
+			KeyAgreement hostKa = reference.newKeyAgreement();
+			hostKa.init(host.getPrivate());
+			hostKa.doPhase(authenticator.getPublic(), true);
+			assertArrayEquals(type.name(), hostKa.generateSecret(), ka.generateSecret());
+		}
+	}
+
+	@Test
+	public void p256SignaturesVerify() throws GeneralSecurityException {
+		BouncyCastleProvider provider = new BouncyCastleProvider();
+		byte[] message = new byte[69];
+		for (CryptoBackendType type : CryptoBackendType.values()) {
+			CryptoBackend backend = CryptoBackends.create(type);
+			KeyPair keyPair = backend.generateKeyPair(Algorithm.P256_ECDSA);
+			Signature signature = backend.signature(Algorithm.P256_ECDSA);
+			signature.initSign(backend.decodePrivateKey(Algorithm.P256_ECDSA, keyPair.getPrivate().getEncoded()));
+			signature.update(message);
+
+			Signature verifier = Signature.getInstance("SHA256withECDSA", provider);
+			verifier.initVerify(KeyFactory.getInstance("EC", provider).generatePublic(new X509EncodedKeySpec(keyPair.getPublic().getEncoded())));
+			verifier.update(message);
+			assertTrue(type.name(), verifier.verify(signature.sign()));
+		}
+	}
+
+	@Test
+	public void ed25519KeysMoveBetweenBackends() throws GeneralSecurityException {
+		byte[] message = new byte[69];
+		for (CryptoBackendType generatorType : ed25519Backends()) {
+			KeyPair keyPair = CryptoBackends.create(generatorType).generateKeyPair(Algorithm.Ed25519);
+
+			EdDSAEngine verifier = new EdDSAEngine(MessageDigest.getInstance("SHA-512"));
+			verifier.initVerify(new EdDSAPublicKey(new X509EncodedKeySpec(keyPair.getPublic().getEncoded())));
+			byte[] expected = null;
+			for (CryptoBackendType signerType : ed25519Backends()) {
+				CryptoBackend signer = CryptoBackends.create(signerType);
+				Signature signature = signer.signature(Algorithm.Ed25519);
+				signature.initSign(signer.decodePrivateKey(Algorithm.Ed25519, keyPair.getPrivate().getEncoded()));
+				signature.update(message);
+				byte[] signed = signature.sign();
+
+				String keys = generatorType + " key signed by " + signerType;
+				verifier.update(message);
+				assertTrue(keys, verifier.verify(signed));
+				// Ed25519 is deterministic, so every backend must produce the same signature
+				if (expected == null) {
+					expected = signed;
+				}
+				assertArrayEquals(keys, expected, signed);
+			}
+		}
+	}
+
+	/**
+	 * The JDK only has Ed25519 from Java 15, so it's left out on older runtimes.
+	 */
+	private static List<CryptoBackendType> ed25519Backends() {
+		List<CryptoBackendType> types = new ArrayList<>();
+		for (CryptoBackendType type : CryptoBackendType.values()) {
+			try {
+				CryptoBackends.create(type).generateKeyPair(Algorithm.Ed25519);
+				types.add(type);
+			} catch (RuntimeException e) {
+				assertEquals(CryptoBackendType.JDK, type);
+			}
+		}
+		return types;
+	}
+}
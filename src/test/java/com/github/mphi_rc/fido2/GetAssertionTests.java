@@ -0,0 +1,176 @@
+package com.github.mphi_rc.fido2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.mphi_rc.fido2.authenticator.Credential;
+import com.github.mphi_rc.fido2.authenticator.Transaction;
+import com.github.mphi_rc.fido2.authenticator.crypto.Algorithm;
+import com.github.mphi_rc.fido2.protocol.ctap2.AuthenticatorRequestHandler;
+import com.github.mphi_rc.fido2.protocol.ctap2.Ctap2Method;
+import com.github.mphi_rc.fido2.protocol.ctap2.Ctap2ResponseCode;
+import com.github.mphi_rc.fido2.protocol.ctap2.GetAssertionRequest;
+import com.github.mphi_rc.fido2.protocol.ctap2.ImmutableMakeCredentialRequest;
+import com.github.mphi_rc.fido2.protocol.ctap2.MakeCredentialRequest;
+import com.github.mphi_rc.fido2.protocol.usbhid.ChannelId;
+
+import co.nstant.in.cbor.CborBuilder;
+import co.nstant.in.cbor.CborDecoder;
+import co.nstant.in.cbor.CborEncoder;
+import co.nstant.in.cbor.CborException;
+import co.nstant.in.cbor.builder.ArrayBuilder;
+import co.nstant.in.cbor.builder.MapBuilder;
+import co.nstant.in.cbor.model.ByteString;
+import co.nstant.in.cbor.model.DataItem;
+import co.nstant.in.cbor.model.Map;
+import co.nstant.in.cbor.model.UnsignedInteger;
+
+public class GetAssertionTests {
+
+	private static final String RP_ID = "example.com";
+	private static final ChannelId CHANNEL = ChannelId.from(0x01020304);
+	private static final ChannelId OTHER_CHANNEL = ChannelId.from(0x05060708);
+
+	private TestAuthenticator fixture;
+	private AuthenticatorRequestHandler handler;
+
+	@Before
+	public void setUp() throws IOException {
+		fixture = new TestAuthenticator();
+		for (byte user = 1; user <= 3; user++) {
+			MakeCredentialRequest request = ImmutableMakeCredentialRequest.builder()
+					.clientDataHash(new byte[32])
+					.relayingPartyId(RP_ID)
+					.userId(new byte[] { user })
+					.addSupportedAlgorithmIds(Algorithm.P256_ECDSA.getCoseAlgorithmId())
+					.residentKey(true)
+					.build();
+			fixture.authenticator().makeCredential(request, new Transaction());
+		}
+		handler = fixture.handler();
+	}
+
+	@After
+	public void tearDown() {
+		fixture.close();
+	}
+
+	private static byte[] getAssertionRequest() throws CborException {
+		return encode(new CborBuilder()
+				.addMap()
+					.put(1, RP_ID)
+					.put(2, new byte[32])
+				.end()
+				.build());
+	}
+
+	private static byte[] encode(List<DataItem> parameters) throws CborException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(Ctap2Method.GET_ASSERTION.asBytes()[0]);
+		new CborEncoder(out).encode(parameters);
+		return out.toByteArray();
+	}
+
+	private static Map responseMap(byte[] payload) throws CborException {
+		List<DataItem> body = CborDecoder.decode(Arrays.copyOfRange(payload, 1, payload.length));
+		return (Map) body.get(0);
+	}
+
+	private byte[] send(ChannelId channel, byte[] request) {
+		return handler.handleCborRequest(channel, request).payload();
+	}
+
+	@Test
+	public void iteratesOverMatchingCredentials() throws CborException {
+		byte[] first = send(CHANNEL, getAssertionRequest());
+		assertEquals(Ctap2ResponseCode.OK.asBytes()[0], first[0]);
+		assertEquals(new UnsignedInteger(3), responseMap(first).get(new UnsignedInteger(5)));
+
+		byte[] next = Ctap2Method.GET_NEXT_ASSERTION.asBytes();
+		assertEquals(Ctap2ResponseCode.OK.asBytes()[0], send(CHANNEL, next)[0]);
+		assertEquals(Ctap2ResponseCode.OK.asBytes()[0], send(CHANNEL, next)[0]);
+		assertEquals(Ctap2ResponseCode.NOT_ALLOWED.asBytes()[0], send(CHANNEL, next)[0]);
+	}
+
+	@Test
+	public void everyResponseNamesTheResidentUser() throws CborException {
+		Set<DataItem> users = new HashSet<>();
+		users.add(responseMap(send(CHANNEL, getAssertionRequest())).get(new UnsignedInteger(4)));
+		byte[] next = Ctap2Method.GET_NEXT_ASSERTION.asBytes();
+		users.add(responseMap(send(CHANNEL, next)).get(new UnsignedInteger(4)));
+		Map last = responseMap(send(CHANNEL, next));
+		users.add(last.get(new UnsignedInteger(4)));
+
+		assertNull(last.get(new UnsignedInteger(5)));
+		assertFalse(users.contains(null));
+		assertEquals(3, users.size());
+	}
+
+	@Test
+	public void sessionBelongsToTheRequestingChannel() throws CborException {
+		send(CHANNEL, getAssertionRequest());
+		byte[] next = Ctap2Method.GET_NEXT_ASSERTION.asBytes();
+		assertEquals(Ctap2ResponseCode.NOT_ALLOWED.asBytes()[0], send(OTHER_CHANNEL, next)[0]);
+		assertEquals(Ctap2ResponseCode.NOT_ALLOWED.asBytes()[0], send(CHANNEL, next)[0]);
+	}
+
+	@Test
+	public void silentProbeIsSignedWithoutUserPresence() throws CborException {
+		byte[] probe = send(CHANNEL, encode(new CborBuilder()
+				.addMap()
+					.put(1, RP_ID)
+					.put(2, new byte[32])
+					.putMap(5)
+						.put("up", false)
+					.end()
+				.end()
+				.build()));
+		assertEquals(Ctap2ResponseCode.OK.asBytes()[0], probe[0]);
+		byte[] authData = ((ByteString) responseMap(probe).get(new UnsignedInteger(2))).getBytes();
+		assertEquals(0, authData[32] & 0x01);
+	}
+
+	@Test
+	public void userVerificationIsUnsupported() throws CborException {
+		byte[] response = send(CHANNEL, encode(new CborBuilder()
+				.addMap()
+					.put(1, RP_ID)
+					.put(2, new byte[32])
+					.putMap(5)
+						.put("uv", true)
+					.end()
+				.end()
+				.build()));
+		assertArrayEquals(Ctap2ResponseCode.UNSUPPORTED_OPTION.asBytes(), response);
+	}
+
+	@Test
+	public void oversizedAllowListIsRejected() throws CborException {
+		ArrayBuilder<MapBuilder<CborBuilder>> allowList = new CborBuilder()
+				.addMap()
+					.put(1, RP_ID)
+					.put(2, new byte[32])
+					.putArray(3);
+		for (int i = 0; i <= GetAssertionRequest.MAX_ALLOW_LIST_LENGTH; i++) {
+			allowList = allowList.addMap()
+					.put("id", new byte[Credential.ID_LENGTH])
+					.put("type", "public-key")
+				.end();
+		}
+		byte[] response = send(CHANNEL, encode(allowList.end().end().build()));
+		assertArrayEquals(Ctap2ResponseCode.LIMIT_EXCEEDED.asBytes(), response);
+	}
+}
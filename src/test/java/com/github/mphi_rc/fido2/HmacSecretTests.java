@@ -0,0 +1,208 @@
+package com.github.mphi_rc.fido2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.util.BigIntegers;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.mphi_rc.fido2.authenticator.crypto.CoseKeyConstants;
+import com.github.mphi_rc.fido2.protocol.ctap2.AuthenticatorRequestHandler;
+import com.github.mphi_rc.fido2.protocol.ctap2.Ctap2Method;
+import com.github.mphi_rc.fido2.protocol.ctap2.Ctap2ResponseCode;
+import com.github.mphi_rc.fido2.protocol.usbhid.ChannelId;
+import com.google.common.hash.Hashing;
+
+import co.nstant.in.cbor.CborBuilder;
+import co.nstant.in.cbor.CborDecoder;
+import co.nstant.in.cbor.CborEncoder;
+import co.nstant.in.cbor.CborException;
+import co.nstant.in.cbor.model.ByteString;
+import co.nstant.in.cbor.model.DataItem;
+import co.nstant.in.cbor.model.Map;
+import co.nstant.in.cbor.model.UnicodeString;
+import co.nstant.in.cbor.model.UnsignedInteger;
+
+public class HmacSecretTests {
+
+	private static final String RP_ID = "example.com";
+	private static final ChannelId CHANNEL = ChannelId.from(0x01020304);
+	private static final BouncyCastleProvider PROVIDER = new BouncyCastleProvider();
+
+	private TestAuthenticator fixture;
+	private AuthenticatorRequestHandler handler;
+	private byte[] hostX;
+	private byte[] hostY;
+	private byte[] sharedSecret;
+
+	@Before
+	public void setUp() throws IOException, GeneralSecurityException, CborException {
+		fixture = new TestAuthenticator();
+		handler = fixture.handler();
+
+		byte[] registration = send(Ctap2Method.MAKE_CREDENTIAL, new CborBuilder()
+				.addMap()
+					.put(1, new byte[32])
+					.putMap(2)
+						.put("id", RP_ID)
+					.end()
+					.putMap(3)
+						.put("id", new byte[] { 1 })
+					.end()
+					.putArray(4)
+						.addMap()
+							.put("alg", CoseKeyConstants.ES256)
+							.put("type", "public-key")
+						.end()
+					.end()
+					.putMap(6)
+						.put("hmac-secret", true)
+					.end()
+					.putMap(7)
+						.put("rk", true)
+					.end()
+				.end()
+				.build());
+		assertEquals(Ctap2ResponseCode.OK.asBytes()[0], registration[0]);
+		byte[] authData = ((ByteString) responseMap(registration).get(new UnsignedInteger(2))).getBytes();
+		assertTrue((authData[32] & 0x80) != 0);
+
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("EC", PROVIDER);
+		generator.initialize(new ECGenParameterSpec("P-256"));
+		KeyPair hostKeyPair = generator.generateKeyPair();
+		ECPublicKey hostKey = (ECPublicKey) hostKeyPair.getPublic();
+		hostX = BigIntegers.asUnsignedByteArray(32, hostKey.getW().getAffineX());
+		hostY = BigIntegers.asUnsignedByteArray(32, hostKey.getW().getAffineY());
+
+		KeyAgreement ka = KeyAgreement.getInstance("ECDH", PROVIDER);
+		ka.init(hostKeyPair.getPrivate());
+		ka.doPhase(fixture.pinState().getKeyAgreementKey(), true);
+		sharedSecret = Hashing.sha256().hashBytes(ka.generateSecret()).asBytes();
+	}
+
+	@After
+	public void tearDown() {
+		fixture.close();
+	}
+
+	private byte[] send(Ctap2Method method, List<DataItem> parameters) throws CborException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(method.asBytes()[0]);
+		new CborEncoder(out).encode(parameters);
+		return handler.handleCborRequest(CHANNEL, out.toByteArray()).payload();
+	}
+
+	private static Map responseMap(byte[] payload) throws CborException {
+		return (Map) CborDecoder.decode(Arrays.copyOfRange(payload, 1, payload.length)).get(0);
+	}
+
+	private byte[] getAssertion(byte[] saltEnc, byte[] saltAuth) throws CborException {
+		return getAssertion(saltEnc, saltAuth, true);
+	}
+
+	private byte[] getAssertion(byte[] saltEnc, byte[] saltAuth, boolean userPresence) throws CborException {
+		return send(Ctap2Method.GET_ASSERTION, new CborBuilder()
+				.addMap()
+					.put(1, RP_ID)
+					.put(2, new byte[32])
+					.putMap(5)
+						.put("up", userPresence)
+					.end()
+					.putMap(4)
+						.putMap("hmac-secret")
+							.putMap(1)
+								.put(CoseKeyConstants.KEY_TYPE, CoseKeyConstants.ELLIPTIC_CURVE_X_Y_COORDS)
+								.put(CoseKeyConstants.ALGORITHM, CoseKeyConstants.ECDH_ES_HKDF_256)
+								.put(CoseKeyConstants.CURVE, CoseKeyConstants.P256)
+								.put(CoseKeyConstants.X_COORDINATE, hostX)
+								.put(CoseKeyConstants.Y_COORDINATE, hostY)
+							.end()
+							.put(2, saltEnc)
+							.put(3, saltAuth)
+						.end()
+					.end()
+				.end()
+				.build());
+	}
+
+	private byte[] evaluate(byte[] salts) throws GeneralSecurityException, CborException {
+		byte[] saltEnc = aes(Cipher.ENCRYPT_MODE, salts);
+		Mac hmac = Mac.getInstance("HmacSHA256");
+		hmac.init(new SecretKeySpec(sharedSecret, "HmacSHA256"));
+		byte[] saltAuth = Arrays.copyOf(hmac.doFinal(saltEnc), 16);
+
+		byte[] response = getAssertion(saltEnc, saltAuth);
+		assertEquals(Ctap2ResponseCode.OK.asBytes()[0], response[0]);
+		byte[] authData = ((ByteString) responseMap(response).get(new UnsignedInteger(2))).getBytes();
+		assertTrue((authData[32] & 0x80) != 0);
+		Map extensions = (Map) CborDecoder.decode(Arrays.copyOfRange(authData, 37, authData.length)).get(0);
+		byte[] output = ((ByteString) extensions.get(new UnicodeString("hmac-secret"))).getBytes();
+		return aes(Cipher.DECRYPT_MODE, output);
+	}
+
+	private byte[] aes(int mode, byte[] input) throws GeneralSecurityException {
+		Cipher aes = Cipher.getInstance("AES/CBC/NoPadding");
+		aes.init(mode, new SecretKeySpec(sharedSecret, "AES"), new IvParameterSpec(new byte[16]));
+		return aes.doFinal(input);
+	}
+
+	@Test
+	public void outputsAreStablePerSalt() throws GeneralSecurityException, CborException {
+		byte[] salt1 = new byte[32];
+		byte[] salt2 = new byte[32];
+		Arrays.fill(salt2, (byte) 2);
+
+		byte[] first = evaluate(salt1);
+		assertEquals(32, first.length);
+		assertArrayEquals(first, evaluate(salt1));
+		assertFalse(Arrays.equals(first, evaluate(salt2)));
+
+		byte[] both = new byte[64];
+		System.arraycopy(salt2, 0, both, 32, 32);
+		byte[] outputs = evaluate(both);
+		assertArrayEquals(first, Arrays.copyOf(outputs, 32));
+		assertArrayEquals(evaluate(salt2), Arrays.copyOfRange(outputs, 32, 64));
+	}
+
+	@Test
+	public void saltAuthIsChecked() throws GeneralSecurityException, CborException {
+		byte[] saltEnc = aes(Cipher.ENCRYPT_MODE, new byte[32]);
+		byte[] response = getAssertion(saltEnc, new byte[16]);
+		assertEquals(Ctap2ResponseCode.PIN_AUTH_INVALID.asBytes()[0], response[0]);
+
+		response = getAssertion(new byte[48], new byte[16]);
+		assertEquals(Ctap2ResponseCode.INVALID_LENGTH.asBytes()[0], response[0]);
+	}
+
+	@Test
+	public void silentProbeGetsNoOutput() throws GeneralSecurityException, CborException {
+		byte[] saltEnc = aes(Cipher.ENCRYPT_MODE, new byte[32]);
+		Mac hmac = Mac.getInstance("HmacSHA256");
+		hmac.init(new SecretKeySpec(sharedSecret, "HmacSHA256"));
+		byte[] saltAuth = Arrays.copyOf(hmac.doFinal(saltEnc), 16);
+
+		byte[] response = getAssertion(saltEnc, saltAuth, false);
+		assertArrayEquals(Ctap2ResponseCode.UNSUPPORTED_OPTION.asBytes(), response);
+	}
+}
@@ -0,0 +1,57 @@
+package com.github.mphi_rc.fido2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.github.mphi_rc.fido2.authenticator.crypto.Algorithm;
+import com.github.mphi_rc.fido2.authenticator.crypto.KeyPairPool;
+
+public class KeyPairPoolTests {
+
+	@Test
+	public void emptyPoolFallsBackToInlineGeneration() {
+		KeyPairPool pool = new KeyPairPool(Arrays.asList(Algorithm.P256_ECDSA, Algorithm.Ed25519), 0);
+		assertEquals(Algorithm.P256_ECDSA, pool.take(Algorithm.P256_ECDSA).namedCurve());
+		assertEquals(Algorithm.Ed25519, pool.take(Algorithm.Ed25519).namedCurve());
+		assertEquals(2, pool.inlineGenerations());
+	}
+
+	@Test
+	public void filledPoolHandsOutPregeneratedKeys() throws InterruptedException {
+		try (KeyPairPool pool = new KeyPairPool(Arrays.asList(Algorithm.Ed25519), 2)) {
+			awaitAvailable(pool, Algorithm.Ed25519, 2);
+			assertEquals(Algorithm.Ed25519, pool.take(Algorithm.Ed25519).namedCurve());
+			assertEquals(Algorithm.Ed25519, pool.take(Algorithm.Ed25519).namedCurve());
+			assertEquals(0, pool.inlineGenerations());
+
+			// algorithms that aren't enabled have no pool
+			pool.take(Algorithm.P256_ECDSA);
+			assertEquals(1, pool.inlineGenerations());
+
+			// the pool refills once keys stop being taken
+			awaitAvailable(pool, Algorithm.Ed25519, 2);
+		}
+	}
+
+	@Test
+	public void closedPoolStillGeneratesInline() {
+		KeyPairPool pool = new KeyPairPool(Arrays.asList(Algorithm.Ed25519), 1);
+		pool.close();
+		pool.take(Algorithm.Ed25519);
+		pool.take(Algorithm.Ed25519);
+		assertTrue(pool.inlineGenerations() >= 1);
+	}
+
+	private static void awaitAvailable(KeyPairPool pool, Algorithm algorithm, int count) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+		while (pool.available(algorithm) < count) {
+			assertTrue("pool wasn't filled in time", System.nanoTime() < deadline);
+			Thread.sleep(10);
+		}
+	}
+}
@@ -25,7 +25,6 @@ import org.junit.Test;
 import com.github.mphi_rc.fido2.protocol.usbhid.ChannelId;
 import com.github.mphi_rc.fido2.protocol.usbhid.ContinuationPacket;
 import com.github.mphi_rc.fido2.protocol.usbhid.HidCommand;
-import com.github.mphi_rc.fido2.protocol.usbhid.ImmutableChannelId;
 import com.github.mphi_rc.fido2.protocol.usbhid.ImmutableContinuationPacket;
 import com.github.mphi_rc.fido2.protocol.usbhid.ImmutableInitializationPacket;
 import com.github.mphi_rc.fido2.protocol.usbhid.ImmutablePacket;
@@ -44,7 +43,7 @@ import co.nstant.in.cbor.model.UnsignedInteger;
 
 public class PacketTests {
 
-	static final ChannelId CHANNEL_EXPECTED = ImmutableChannelId.of(new byte[] {0x00, 0x08, 0x00, 0x01});
+	static final ChannelId CHANNEL_EXPECTED = ChannelId.from(new byte[] {0x00, 0x08, 0x00, 0x01});
 
 	private static byte[] hexToBytes(String hex) {
 		return BaseEncoding.base16().lowerCase().decode(hex);
@@ -0,0 +1,119 @@
+package com.github.mphi_rc.fido2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.util.BigIntegers;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.mphi_rc.fido2.authenticator.PinState;
+import com.github.mphi_rc.fido2.authenticator.Result;
+import com.github.mphi_rc.fido2.protocol.ctap2.Ctap2ResponseCode;
+import com.github.mphi_rc.fido2.protocol.ctap2.HmacSecretInput;
+import com.github.mphi_rc.fido2.protocol.ctap2.ImmutableHmacSecretInput;
+import com.google.common.hash.Hashing;
+
+public class PinStateTests {
+
+	private static final BouncyCastleProvider PROVIDER = new BouncyCastleProvider();
+
+	private TestAuthenticator fixture;
+	private PinState pinState;
+	private KeyPair hostKeyPair;
+
+	@Before
+	public void setUp() throws IOException, GeneralSecurityException {
+		fixture = TestAuthenticator.withPin("1234");
+		pinState = fixture.pinState();
+
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("EC", PROVIDER);
+		generator.initialize(new ECGenParameterSpec("P-256"));
+		hostKeyPair = generator.generateKeyPair();
+	}
+
+	@After
+	public void tearDown() {
+		fixture.close();
+	}
+
+	@Test
+	public void wrongPinReplacesTheKeyAndForgetsSharedSecrets() throws GeneralSecurityException, InterruptedException {
+		HmacSecretInput input = hmacSecretInput(pinState.getKeyAgreementKey());
+		assertEquals(Ctap2ResponseCode.OK, status(pinState.decryptHmacSecretSalts(input)));
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+		while (!pinState.isNextKeyAgreementKeyReady()) {
+			assertTrue("next key agreement key wasn't generated in time", System.nanoTime() < deadline);
+			Thread.sleep(10);
+		}
+		PublicKey previous = pinState.getKeyAgreementKey();
+		enterWrongPin();
+		assertNotEquals(previous, pinState.getKeyAgreementKey());
+		assertEquals(0, pinState.inlineGenerations());
+
+		// the secret cached for the host belonged to the old key
+		assertEquals(Ctap2ResponseCode.PIN_AUTH_INVALID, status(pinState.decryptHmacSecretSalts(input)));
+	}
+
+	@Test
+	public void keysAreGeneratedInlineOnceClosed() {
+		pinState.close();
+		PublicKey previous = pinState.getKeyAgreementKey();
+		for (int attempt = 0; attempt < 2; attempt++) {
+			enterWrongPin();
+			assertNotEquals(previous, pinState.getKeyAgreementKey());
+			previous = pinState.getKeyAgreementKey();
+		}
+		// the first replacement may still have been generated before closing
+		assertTrue(pinState.inlineGenerations() >= 1);
+	}
+
+	private void enterWrongPin() {
+		assertEquals(Ctap2ResponseCode.PIN_INVALID, status(pinState.getPinTokenEncrypted(hostKeyPair.getPublic(), new byte[16])));
+	}
+
+	private static <T> Ctap2ResponseCode status(Result<T, Ctap2ResponseCode> result) {
+		return result.<Ctap2ResponseCode>handleError(error -> error).elseGet(value -> Ctap2ResponseCode.OK);
+	}
+
+	private HmacSecretInput hmacSecretInput(PublicKey authenticatorKey) throws GeneralSecurityException {
+		KeyAgreement ka = KeyAgreement.getInstance("ECDH", PROVIDER);
+		ka.init(hostKeyPair.getPrivate());
+		ka.doPhase(authenticatorKey, true);
+		byte[] sharedSecret = Hashing.sha256().hashBytes(ka.generateSecret()).asBytes();
+
+		Cipher aes = Cipher.getInstance("AES/CBC/NoPadding");
+		aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(sharedSecret, "AES"), new IvParameterSpec(new byte[16]));
+		byte[] saltEnc = aes.doFinal(new byte[32]);
+		Mac hmac = Mac.getInstance("HmacSHA256");
+		hmac.init(new SecretKeySpec(sharedSecret, "HmacSHA256"));
+
+		ECPublicKey hostKey = (ECPublicKey) hostKeyPair.getPublic();
+		return ImmutableHmacSecretInput.builder()
+				.keyAgreementX(BigIntegers.asUnsignedByteArray(32, hostKey.getW().getAffineX()))
+				.keyAgreementY(BigIntegers.asUnsignedByteArray(32, hostKey.getW().getAffineY()))
+				.saltEnc(saltEnc)
+				.saltAuth(Arrays.copyOf(hmac.doFinal(saltEnc), 16))
+				.build();
+	}
+}
@@ -0,0 +1,62 @@
+package com.github.mphi_rc.fido2;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Test;
+
+import com.github.mphi_rc.fido2.authenticator.crypto.AttestationKeyPair;
+import com.github.mphi_rc.fido2.authenticator.crypto.P256AttestationKeyPair;
+import com.github.mphi_rc.fido2.authenticator.crypto.PrivateKeyCache;
+import com.github.mphi_rc.fido2.protocol.ctap2.AuthenticatorData;
+import com.github.mphi_rc.fido2.protocol.ctap2.ImmutableAuthenticatorData;
+
+public class PrivateKeyCacheTests {
+
+	@Test
+	public void leastRecentlyUsedKeyIsEvicted() {
+		PrivateKeyCache cache = new PrivateKeyCache(2);
+		AttestationKeyPair keyPair = P256AttestationKeyPair.generate();
+		PrivateKey first = cache.get(new byte[] { 1 }, keyPair);
+		cache.get(new byte[] { 2 }, keyPair);
+		assertSame(first, cache.get(new byte[] { 1 }, keyPair));
+
+		PrivateKey third = cache.get(new byte[] { 3 }, keyPair);
+		assertSame(third, cache.get(new byte[] { 3 }, keyPair));
+		assertSame(first, cache.get(new byte[] { 1 }, keyPair));
+
+		cache.invalidate(new byte[] { 3 });
+		assertNotSame(third, cache.get(new byte[] { 3 }, keyPair));
+	}
+
+	@Test
+	public void cachedKeysProduceValidSignatures() throws GeneralSecurityException {
+		PrivateKeyCache cache = new PrivateKeyCache();
+		AttestationKeyPair keyPair = P256AttestationKeyPair.generate();
+		AuthenticatorData authData = ImmutableAuthenticatorData.builder()
+				.relayingPartyId("example.com")
+				.isUserPresent(true)
+				.isUserVerified(false)
+				.signatureCount(1)
+				.build();
+		byte[] clientDataHash = new byte[32];
+
+		BouncyCastleProvider provider = new BouncyCastleProvider();
+		Signature verifier = Signature.getInstance("SHA256withECDSA", provider);
+		verifier.initVerify(KeyFactory.getInstance("EC", provider).generatePublic(new X509EncodedKeySpec(keyPair.publicKey())));
+		for (int i = 0; i < 2; i++) {
+			byte[] signature = keyPair.sign(cache.get(new byte[] { 1 }, keyPair), authData, clientDataHash);
+			verifier.update(authData.asBytes());
+			verifier.update(clientDataHash);
+			assertTrue(verifier.verify(signature));
+		}
+	}
+}
@@ -31,13 +31,24 @@ public class RegistrationMessageDeserializationTests {
 		System.out.println(makeCredentialRequest);
 	}
 	
+	@Test
+	public void parsesParametersInPlace() throws CborException {
+		byte[] requestCborPayload = rawMakeCredentialRequest(RegistrationMessages.REQUIRE_RESIDENT_KEY2);
+		byte[] withMethod = new byte[requestCborPayload.length + 1];
+		withMethod[0] = Ctap2Method.MAKE_CREDENTIAL.asBytes()[0];
+		System.arraycopy(requestCborPayload, 0, withMethod, 1, requestCborPayload.length);
+
+		Assert.assertEquals(MakeCredentialRequest.fromBytes(requestCborPayload),
+				MakeCredentialRequest.fromBytes(withMethod, 1, requestCborPayload.length));
+	}
+
 	private UsbHidRequestHandler getTestHandler() {
 		ConfigurationFile config = ConfigurationFile.defaultPath();
 		PinState pinState = new PinState(config);
 		PinRequestHandler pin = new PinRequestHandler(pinState);
 		Authenticator auth = new Authenticator(config, new ConfigurationCredentialStore(config), pinState);
 		AuthenticatorRequestHandler authHandler = new AuthenticatorRequestHandler(auth, pin);
-		return new UsbHidRequestHandler(authHandler);
+		return new UsbHidRequestHandler(authHandler, config.maxActiveChannels());
 	}
 	
 	private byte[] rawMakeCredentialRequest(byte[] rawMessage) {
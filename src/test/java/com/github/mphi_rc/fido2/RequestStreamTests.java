@@ -15,17 +15,26 @@ import static com.github.mphi_rc.fido2.LoginPackets.HOST_2;
 import static com.github.mphi_rc.fido2.LoginPackets.HOST_3;
 import static com.github.mphi_rc.fido2.LoginPackets.HOST_4;
 import static com.github.mphi_rc.fido2.LoginPackets.HOST_5;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
 import java.security.KeyFactory;
 import java.security.Signature;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.bouncycastle.jce.ECNamedCurveTable;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
@@ -43,7 +52,7 @@ import com.github.mphi_rc.fido2.protocol.ctap2.Ctap2Method;
 import com.github.mphi_rc.fido2.protocol.ctap2.GetAssertionRequest;
 import com.github.mphi_rc.fido2.protocol.usbhid.ChannelId;
 import com.github.mphi_rc.fido2.protocol.usbhid.HidCommand;
-import com.github.mphi_rc.fido2.protocol.usbhid.ImmutableChannelId;
+import com.github.mphi_rc.fido2.protocol.usbhid.HidError;
 import com.github.mphi_rc.fido2.protocol.usbhid.ImmutableRawMessage;
 import com.github.mphi_rc.fido2.protocol.usbhid.RawMessage;
 import com.github.mphi_rc.fido2.protocol.usbhid.command.ImmutableInitResponsePayload;
@@ -60,7 +69,7 @@ import co.nstant.in.cbor.model.UnsignedInteger;
 
 public class RequestStreamTests {
 	
-	private ChannelId expectedChannelId = ImmutableChannelId.of(new byte[] {0, 8, 0, 2});
+	private ChannelId expectedChannelId = ChannelId.from(new byte[] {0, 8, 0, 2});
 	private byte[] expectedNonce = {4, 36, 26, -91, 23, -115, 87, 0};
 	
 	@Test
@@ -176,7 +185,118 @@ public class RequestStreamTests {
 		
 	}
 	
+	@Test
+	public void channelBackedStreamMatchesDataInputStream() throws Exception {
+		RequestStream fromStream = stream(HOST_1, HOST_2, HOST_3, HOST_4, HOST_5);
+		RequestStream fromChannel = channel(HOST_1, HOST_2, HOST_3, HOST_4, HOST_5);
+		for (int message = 0; message < 3; message++) {
+			assertEquals(fromStream.readMessage(), fromChannel.readMessage());
+		}
+	}
+
+	@Test
+	public void initializationPacketAbortsPartialMessage() throws Exception {
+		RequestStream requests = stream(
+				initFrame(0x01020304, HidCommand.CBOR, 100),
+				initFrame(0x01020304, HidCommand.PING, 3, (byte) 1, (byte) 2, (byte) 3),
+				continuationFrame(0x01020304, 0),
+				initFrame(0x01020304, HidCommand.PING, 1, (byte) 4));
+
+		assertArrayEquals(new byte[] { 1, 2, 3 }, requests.readMessage().payload());
+		assertArrayEquals(new byte[] { 4 }, requests.readMessage().payload());
+	}
+
+	@Test
+	public void messageEndingOnAPacketBoundaryIsReturned() throws Exception {
+		byte[] payload = new byte[57 + 59];
+		Arrays.fill(payload, (byte) 7);
+		RequestStream requests = stream(
+				initFrame(0x01020304, HidCommand.CBOR, payload.length, Arrays.copyOfRange(payload, 0, 57)),
+				continuationFrame(0x01020304, 0, Arrays.copyOfRange(payload, 57, payload.length)));
+
+		assertArrayEquals(payload, requests.readMessage().payload());
+	}
+
+	@Test
+	public void outOfSequenceContinuationIsRejected() throws Exception {
+		List<RawMessage> errors = new ArrayList<>();
+		RequestStream requests = new RequestStream(new PacketInputStream(new DataInputStream(new ByteArrayInputStream(concat(
+				initFrame(0x01020304, HidCommand.CBOR, 100),
+				continuationFrame(0x01020304, 1),
+				continuationFrame(0x01020304, 0),
+				initFrame(0x01020304, HidCommand.PING, 0))))), errors::add);
+
+		assertEquals(HidCommand.PING, requests.readMessage().command());
+		assertEquals(1, errors.size());
+		assertEquals(RawMessage.error(ChannelId.from(0x01020304), HidError.INVALID_SEQ), errors.get(0));
+	}
+
+	@Test
+	public void fullReassemblyTableAnswersChannelBusy() throws Exception {
+		// the stream's timer reports timeouts for the unfinished messages from another thread
+		BlockingQueue<RawMessage> errors = new LinkedBlockingQueue<>();
+		byte[][] frames = new byte[10][];
+		for (int channel = 0; channel < 9; channel++) {
+			frames[channel] = initFrame(channel + 1, HidCommand.CBOR, 100);
+		}
+		frames[9] = initFrame(0xCAFE, HidCommand.PING, 0);
+		RequestStream requests = new RequestStream(new PacketInputStream(new DataInputStream(new ByteArrayInputStream(concat(frames)))), errors::add);
+
+		assertEquals(HidCommand.PING, requests.readMessage().command());
+		assertEquals(RawMessage.error(ChannelId.from(9), HidError.CHANNEL_BUSY), errors.poll());
+		requests.close();
+	}
+
+	@Test
+	public void incompleteMessageTimesOut() throws Exception {
+		BlockingQueue<RawMessage> errors = new LinkedBlockingQueue<>();
+		PipedOutputStream host = new PipedOutputStream();
+		RequestStream requests = new RequestStream(new PacketInputStream(new DataInputStream(new PipedInputStream(host, 4096))), errors::add);
+		host.write(initFrame(0x01020304, HidCommand.CBOR, 100));
+		host.flush();
+
+		Thread reader = new Thread(() -> {
+			try {
+				requests.readMessage();
+			} catch (IOException e) {
+				// the pipe is closed once the test finishes
+			}
+		});
+		reader.setDaemon(true);
+		reader.start();
+
+		RawMessage error = errors.poll(2, TimeUnit.SECONDS);
+		assertEquals(RawMessage.error(ChannelId.from(0x01020304), HidError.MSG_TIMEOUT), error);
+		host.close();
+		requests.close();
+	}
+
+	private byte[] initFrame(int channel, HidCommand command, int messageLength, byte... data) {
+		ByteBuffer frame = ByteBuffer.allocate(64);
+		frame.putInt(channel);
+		frame.put((byte) (command.asByte() | 0x80));
+		frame.putShort((short) messageLength);
+		frame.put(data);
+		return frame.array();
+	}
+
+	private byte[] continuationFrame(int channel, int sequence, byte... data) {
+		ByteBuffer frame = ByteBuffer.allocate(64);
+		frame.putInt(channel);
+		frame.put((byte) sequence);
+		frame.put(data);
+		return frame.array();
+	}
+
 	private RequestStream stream(byte[]... packets) {
+		return new RequestStream(new PacketInputStream(new DataInputStream(new ByteArrayInputStream(concat(packets)))));
+	}
+
+	private RequestStream channel(byte[]... packets) {
+		return new RequestStream(new PacketInputStream(Channels.newChannel(new ByteArrayInputStream(concat(packets)))));
+	}
+
+	private byte[] concat(byte[]... packets) {
 		int bufferSize = Arrays.stream(packets)
 				.mapToInt(arr -> arr.length)
 				.sum();
@@ -184,6 +304,6 @@ public class RequestStreamTests {
 		for (byte[] packet : packets) {
 			buf.put(packet);
 		}
-		return new RequestStream(new PacketInputStream(new DataInputStream(new ByteArrayInputStream(buf.array()))));
+		return buf.array();
 	}
 }
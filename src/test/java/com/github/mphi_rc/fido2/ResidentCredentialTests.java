@@ -0,0 +1,104 @@
+package com.github.mphi_rc.fido2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.mphi_rc.fido2.authenticator.ConfigurationCredentialStore;
+import com.github.mphi_rc.fido2.authenticator.Credential;
+import com.github.mphi_rc.fido2.authenticator.crypto.AttestationKeyPair;
+import com.github.mphi_rc.fido2.authenticator.crypto.Ed25519AttestationKeyPair;
+import com.google.common.hash.Hashing;
+
+public class ResidentCredentialTests {
+
+	private static final int CREDENTIALS = 10000;
+	private static final int RELAYING_PARTIES = 100;
+
+	private TestAuthenticator fixture;
+	private ConfigurationFile config;
+	private ConfigurationCredentialStore store;
+	private AttestationKeyPair keyPair;
+
+	@Before
+	public void setUp() throws IOException {
+		fixture = new TestAuthenticator();
+		config = fixture.config();
+		store = fixture.store();
+		keyPair = Ed25519AttestationKeyPair.generate();
+		for (int i = 0; i < CREDENTIALS; i++) {
+			store.saveResidentCredential(relayingParty(i % RELAYING_PARTIES), userId(i), Optional.of("user" + i),
+					Optional.empty(), keyPair, Optional.empty());
+		}
+	}
+
+	@After
+	public void tearDown() {
+		fixture.close();
+	}
+
+	private static String relayingParty(int n) {
+		return "rp" + n + ".example.com";
+	}
+
+	private static byte[] userId(int n) {
+		return ByteBuffer.allocate(4).putInt(n).array();
+	}
+
+	@Test
+	public void indexesResidentCredentialsByRelayingParty() {
+		assertEquals(CREDENTIALS, store.residentCredentialCount());
+		assertEquals(config.maxResidentCredentials() - CREDENTIALS, store.remainingResidentCapacity());
+		assertEquals(RELAYING_PARTIES, store.residentRelayingParties().size());
+
+		byte[] hash = Hashing.sha256().hashString(relayingParty(42), StandardCharsets.UTF_8).asBytes();
+		assertEquals(Optional.of(relayingParty(42)), store.relayingPartyForHash(hash));
+		List<Credential> credentials = store.getResidentCredentials(relayingParty(42));
+		assertEquals(CREDENTIALS / RELAYING_PARTIES, credentials.size());
+		assertEquals(CREDENTIALS / RELAYING_PARTIES, store.getCredentials(relayingParty(42)).size());
+	}
+
+	@Test
+	public void savingForTheSameUserReplacesTheCredential() {
+		store.saveResidentCredential(relayingParty(7), userId(7), Optional.of("renamed"), Optional.empty(), keyPair, Optional.empty());
+
+		assertEquals(CREDENTIALS, store.residentCredentialCount());
+		assertEquals(CREDENTIALS, config.credentials().size());
+		assertTrue(store.getResidentCredentials(relayingParty(7)).stream()
+				.anyMatch(c -> c.userName().equals(Optional.of("renamed"))));
+	}
+
+	@Test
+	public void fullStoreOnlyTakesReplacements() {
+		assertEquals(0, store.remainingResidentCapacity());
+		assertFalse(store.saveResidentCredential(relayingParty(7), userId(CREDENTIALS), Optional.empty(), Optional.empty(),
+				keyPair, Optional.empty()).isPresent());
+		assertTrue(store.saveResidentCredential(relayingParty(7), userId(7), Optional.empty(), Optional.empty(),
+				keyPair, Optional.empty()).isPresent());
+		assertEquals(CREDENTIALS, store.residentCredentialCount());
+	}
+
+	@Test
+	public void deletingTheLastCredentialRemovesTheRelyingParty() {
+		for (Credential credential : store.getResidentCredentials(relayingParty(3))) {
+			assertTrue(store.deleteResidentCredential(credential.id()));
+		}
+
+		assertEquals(CREDENTIALS - CREDENTIALS / RELAYING_PARTIES, store.residentCredentialCount());
+		assertEquals(RELAYING_PARTIES - 1, store.residentRelayingParties().size());
+		assertFalse(store.residentRelayingParties().contains(relayingParty(3)));
+		byte[] hash = Hashing.sha256().hashString(relayingParty(3), StandardCharsets.UTF_8).asBytes();
+		assertFalse(store.relayingPartyForHash(hash).isPresent());
+		assertFalse(store.deleteResidentCredential(new byte[Credential.ID_LENGTH]));
+	}
+}
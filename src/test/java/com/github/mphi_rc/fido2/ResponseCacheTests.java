@@ -0,0 +1,62 @@
+package com.github.mphi_rc.fido2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.github.mphi_rc.fido2.protocol.ctap2.CborWriter;
+import com.github.mphi_rc.fido2.protocol.ctap2.Ctap2ResponseCode;
+import com.github.mphi_rc.fido2.protocol.ctap2.GetInfoResponse;
+import com.github.mphi_rc.fido2.protocol.ctap2.ImmutableGetInfoResponse;
+import com.github.mphi_rc.fido2.protocol.ctap2.ResponseCache;
+
+public class ResponseCacheTests {
+
+	@Test
+	public void getInfoIsEncodedOncePerSettingsVersion() {
+		AtomicInteger version = new AtomicInteger();
+		AtomicInteger builds = new AtomicInteger();
+		AtomicBoolean pinSet = new AtomicBoolean(false);
+		ResponseCache cache = new ResponseCache(() -> {
+			builds.incrementAndGet();
+			return ImmutableGetInfoResponse.of(GetInfoResponse.Version.FIDO_2_0, new byte[16], pinSet.get());
+		}, version::get);
+
+		byte[] first = cache.getInfo();
+		assertSame(first, cache.getInfo());
+		assertEquals(1, builds.get());
+
+		pinSet.set(true);
+		version.incrementAndGet();
+		byte[] second = cache.getInfo();
+		assertNotSame(first, second);
+		assertEquals(2, builds.get());
+
+		CborWriter expected = new CborWriter();
+		expected.writeStatus(Ctap2ResponseCode.OK);
+		ImmutableGetInfoResponse.of(GetInfoResponse.Version.FIDO_2_0, new byte[16], true).encode(expected);
+		assertArrayEquals(expected.toByteArray(), second);
+	}
+
+	@Test
+	public void settingsVersionFollowsAdvertisedSettings() throws IOException {
+		ConfigurationFile config = new ConfigurationFile(Files.createTempDirectory("fido2").resolve("config.json"));
+		int initial = config.settingsVersion();
+
+		config.incrementWrappedSignatureCount();
+		config.getOrCreateCredentialWrappingKey();
+		assertEquals(initial, config.settingsVersion());
+
+		config.updatePinHash(new byte[16]);
+		assertNotEquals(initial, config.settingsVersion());
+	}
+}
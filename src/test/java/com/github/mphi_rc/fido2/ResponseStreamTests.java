@@ -0,0 +1,71 @@
+package com.github.mphi_rc.fido2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.mphi_rc.fido2.protocol.PacketOutputStream;
+import com.github.mphi_rc.fido2.protocol.ResponseStream;
+import com.github.mphi_rc.fido2.protocol.ResponseStream.Framing;
+import com.github.mphi_rc.fido2.protocol.usbhid.ChannelId;
+import com.github.mphi_rc.fido2.protocol.usbhid.HidCommand;
+import com.github.mphi_rc.fido2.protocol.usbhid.ImmutableRawMessage;
+import com.github.mphi_rc.fido2.protocol.usbhid.RawMessage;
+
+public class ResponseStreamTests {
+
+	private static final ChannelId CHANNEL = ChannelId.from(new byte[] {0x00, 0x08, 0x00, 0x02});
+	private static final int[] PAYLOAD_SIZES = {0, 1, 17, 56, 57, 58, 115, 116, 117, 255, 256, 1024, 7609};
+
+	@Test
+	public void directFramingMatchesPacketFraming() {
+		Random random = new Random(42);
+		for (int size : PAYLOAD_SIZES) {
+			byte[] payload = new byte[size];
+			random.nextBytes(payload);
+			RawMessage message = ImmutableRawMessage.of(CHANNEL, HidCommand.CBOR, payload);
+
+			byte[] expected = serialize(message, Framing.PACKETS);
+			byte[] actual = serialize(message, Framing.DIRECT);
+			assertArrayEquals("payload of " + size + " bytes", expected, actual);
+		}
+	}
+
+	@Test
+	public void directFramingPadsEveryReport() {
+		RawMessage message = ImmutableRawMessage.of(CHANNEL, HidCommand.CBOR, new byte[300]);
+		byte[] frames = serialize(message, Framing.DIRECT);
+		assertEquals(6 * 64, frames.length);
+		assertEquals(0x01, frames[5]);
+		assertEquals(0x2C, frames[6]);
+	}
+
+	@Test
+	public void onlyInitializationPacketsSetTheTypeBit() {
+		RawMessage message = ImmutableRawMessage.of(CHANNEL, HidCommand.CBOR, new byte[100]);
+		for (Framing framing : Framing.values()) {
+			byte[] frames = serialize(message, framing);
+			assertEquals(framing.name(), (byte) 0x90, frames[4]);
+			assertEquals(framing.name(), 0x00, frames[64 + 4]);
+		}
+	}
+
+	private byte[] serialize(RawMessage message, Framing framing) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ResponseStream responses = new ResponseStream(new PacketOutputStream(new DataOutputStream(bytes)), framing);
+		responses.accept(message);
+		responses.accept(message);
+		byte[] twice = bytes.toByteArray();
+		byte[] once = new byte[twice.length / 2];
+		System.arraycopy(twice, 0, once, 0, once.length);
+		assertArrayEquals("framing must not depend on the previous message", once,
+				Arrays.copyOfRange(twice, once.length, twice.length));
+		return once;
+	}
+}
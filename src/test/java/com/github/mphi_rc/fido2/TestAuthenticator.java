@@ -0,0 +1,101 @@
+package com.github.mphi_rc.fido2;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.Function;
+
+import com.github.mphi_rc.fido2.authenticator.Authenticator;
+import com.github.mphi_rc.fido2.authenticator.ConfigurationCredentialStore;
+import com.github.mphi_rc.fido2.authenticator.PinState;
+import com.github.mphi_rc.fido2.protocol.ctap2.AuthenticatorRequestHandler;
+import com.github.mphi_rc.fido2.protocol.ctap2.pin.PinRequestHandler;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+
+/**
+ * An authenticator whose configuration lives in its own temporary directory, for tests and
+ * benchmarks. Closing it stops the background key generation and deletes the directory.
+ */
+public class TestAuthenticator implements AutoCloseable {
+
+	private final Path directory;
+	private final ConfigurationFile config;
+	private final ConfigurationCredentialStore store;
+	private final PinState pinState;
+	private final Authenticator authenticator;
+	private final AuthenticatorRequestHandler handler;
+
+	public TestAuthenticator() throws IOException {
+		this(ConfigurationFile::new);
+	}
+
+	/**
+	 * @param configs creates the configuration file at the given path, for example to override
+	 * the user verifier
+	 */
+	public TestAuthenticator(Function<Path, ConfigurationFile> configs) throws IOException {
+		this.directory = Files.createTempDirectory("fido2");
+		this.config = configs.apply(directory.resolve("config.json"));
+		this.store = new ConfigurationCredentialStore(config);
+		this.pinState = new PinState(config);
+		this.authenticator = new Authenticator(config, store, pinState);
+		this.handler = new AuthenticatorRequestHandler(authenticator, new PinRequestHandler(pinState));
+	}
+
+	/**
+	 * Creates an authenticator that already has the given PIN set.
+	 */
+	public static TestAuthenticator withPin(String pin) throws IOException {
+		return new TestAuthenticator(path -> {
+			ConfigurationFile config = new ConfigurationFile(path);
+			config.updatePinHash(pinHash(pin));
+			return config;
+		});
+	}
+
+	public static byte[] pinHash(String pin) {
+		return Arrays.copyOf(Hashing.sha256().hashBytes(pin.getBytes()).asBytes(), 16);
+	}
+
+	public ConfigurationFile config() {
+		return config;
+	}
+
+	public ConfigurationCredentialStore store() {
+		return store;
+	}
+
+	public PinState pinState() {
+		return pinState;
+	}
+
+	public Authenticator authenticator() {
+		return authenticator;
+	}
+
+	public AuthenticatorRequestHandler handler() {
+		return handler;
+	}
+
+	@Override
+	public void close() {
+		authenticator.close();
+		pinState.close();
+		deleteDirectory(directory);
+	}
+
+	/**
+	 * Deletes a temporary directory on a best-effort basis: a configuration write that is still
+	 * in flight may recreate the file, which only leaves the directory behind.
+	 */
+	static void deleteDirectory(Path directory) {
+		try {
+			MoreFiles.deleteRecursively(directory, RecursiveDeleteOption.ALLOW_INSECURE);
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+}
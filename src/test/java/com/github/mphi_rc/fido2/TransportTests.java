@@ -0,0 +1,108 @@
+package com.github.mphi_rc.fido2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.github.mphi_rc.fido2.protocol.HidTransport;
+import com.github.mphi_rc.fido2.protocol.InMemoryTransport;
+import com.github.mphi_rc.fido2.protocol.PacketInputStream;
+import com.github.mphi_rc.fido2.protocol.PacketOutputStream;
+import com.github.mphi_rc.fido2.protocol.RequestStream;
+import com.github.mphi_rc.fido2.protocol.ResponseStream;
+import com.github.mphi_rc.fido2.protocol.SocketTransport;
+import com.github.mphi_rc.fido2.protocol.ctap2.Ctap2Method;
+import com.github.mphi_rc.fido2.protocol.usbhid.ChannelId;
+import com.github.mphi_rc.fido2.protocol.usbhid.HidCommand;
+import com.github.mphi_rc.fido2.protocol.usbhid.ImmutableRawMessage;
+import com.github.mphi_rc.fido2.protocol.usbhid.RawMessage;
+
+public class TransportTests {
+
+	private Path configDirectory;
+	private HidTransport device;
+	private HidTransport hostSide;
+	private ResponseStream host;
+	private RequestStream replies;
+
+	private void startAuthenticator(HidTransport device, HidTransport hostSide) throws IOException {
+		this.device = device;
+		this.hostSide = hostSide;
+		configDirectory = Files.createTempDirectory("fido2");
+		ConfigurationFile config = new ConfigurationFile(configDirectory.resolve("config.json"));
+		Fido2Authenticator authenticator = new Fido2Authenticator(config, device);
+		Thread reader = new Thread(() -> {
+			try {
+				authenticator.start();
+			} catch (IOException e) {
+				// the transport was closed
+			}
+		});
+		reader.setDaemon(true);
+		reader.start();
+
+		host = new ResponseStream(new PacketOutputStream(hostSide.output()));
+		replies = new RequestStream(new PacketInputStream(hostSide.input()));
+	}
+
+	@After
+	public void stopAuthenticator() {
+		if (device != null) {
+			device.close();
+			hostSide.close();
+			TestAuthenticator.deleteDirectory(configDirectory);
+		}
+	}
+
+	@Test
+	public void fullStackOverInMemoryTransport() throws IOException {
+		InMemoryTransport transport = new InMemoryTransport();
+		startAuthenticator(transport, transport.peer());
+		exchangeMessages();
+	}
+
+	@Test
+	public void fullStackOverSocketTransport() throws IOException {
+		try (ServerSocketChannel server = ServerSocketChannel.open()) {
+			server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			// the connection is queued in the backlog until it's accepted
+			SocketTransport hostSide = SocketTransport.connect(server.socket().getLocalPort());
+			startAuthenticator(SocketTransport.accept(server), hostSide);
+		}
+		exchangeMessages();
+	}
+
+	private void exchangeMessages() throws IOException {
+		byte[] nonce = { 1, 2, 3, 4, 5, 6, 7, 8 };
+		host.accept(ImmutableRawMessage.of(ChannelId.broadcast(), HidCommand.INIT, nonce));
+		RawMessage init = replies.readMessage();
+		assertEquals(HidCommand.INIT, init.command());
+		assertArrayEquals(nonce, Arrays.copyOfRange(init.payload(), 0, 8));
+		ChannelId channel = ChannelId.from(Arrays.copyOfRange(init.payload(), 8, 12));
+
+		byte[] ping = new byte[1000];
+		Arrays.fill(ping, (byte) 0x5A);
+		host.accept(ImmutableRawMessage.of(channel, HidCommand.PING, ping));
+		RawMessage pong = replies.readMessage();
+		assertEquals(channel, pong.channelId());
+		assertArrayEquals(ping, pong.payload());
+
+		host.accept(ImmutableRawMessage.of(channel, HidCommand.CBOR, Ctap2Method.GET_INFO.asBytes()));
+		RawMessage info;
+		do {
+			info = replies.readMessage();
+		} while (info.command() == HidCommand.KEEPALIVE);
+		assertEquals(HidCommand.CBOR, info.command());
+		assertEquals(0, info.payload()[0]);
+	}
+}